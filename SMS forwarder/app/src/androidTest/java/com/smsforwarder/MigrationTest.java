@@ -0,0 +1,111 @@
+package com.smsforwarder;
+
+import android.database.Cursor;
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Upgrades databases created from the exported schemas in app/schemas; Room
+// checks the result against the schema of AppDatabase.VERSION
+@RunWith(AndroidJUnit4.class)
+public class MigrationTest {
+    
+    private static final String TEST_DB = "migration-test";
+    
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(), AppDatabase.class);
+    
+    @Test
+    public void migratesEveryVersionToTheLatest() throws IOException {
+        for (int version = 1; version < AppDatabase.VERSION; version++) {
+            String name = TEST_DB + "-" + version;
+            helper.createDatabase(name, version).close();
+            helper.runMigrationsAndValidate(name, AppDatabase.VERSION, true, AppDatabase.ALL_MIGRATIONS).close();
+        }
+    }
+    
+    @Test
+    public void migratesVersion1RulesAndAddsTheirIndex() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            db.execSQL("INSERT INTO forwarding_rules " +
+                    "(senderNumber, senderExactMatch, messageContent, forwardToNumber, isEnabled) " +
+                    "VALUES ('010-1234-5678', 1, 'Verification CODE', '01099998888', 1)");
+        }
+        
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, AppDatabase.VERSION, true,
+                AppDatabase.ALL_MIGRATIONS)) {
+            Set<String> indexes = new HashSet<>();
+            try (Cursor cursor = db.query("PRAGMA index_list('forwarding_rules')")) {
+                while (cursor.moveToNext()) {
+                    indexes.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+                }
+            }
+            assertTrue(indexes.toString(), indexes.contains("index_forwarding_rules_isEnabled"));
+            assertFalse(indexes.toString(), indexes.contains("index_forwarding_rules_normalizedSender"));
+            
+            // The rule survives, later columns take their defaults
+            try (Cursor cursor = db.query("SELECT senderNumber, messageContent, matchMode, compaction, " +
+                    "simSlot, targetType FROM forwarding_rules")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("010-1234-5678", cursor.getString(0));
+                assertEquals("Verification CODE", cursor.getString(1));
+                assertEquals(ForwardingRule.MATCH_MODE_KEYWORD, cursor.getInt(2));
+                assertEquals(0, cursor.getInt(3));
+                assertEquals(SendLanes.ANY_SLOT, cursor.getInt(4));
+                assertEquals(ForwardingRule.TARGET_SMS, cursor.getInt(5));
+            }
+        }
+    }
+    
+    @Test
+    public void droppingTheDerivedColumnsKeepsRuleIds() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 10)) {
+            db.execSQL("INSERT INTO forwarding_rules (id, senderNumber, senderExactMatch, messageContent, " +
+                    "forwardToNumber, isEnabled, matchMode, template, compaction, simSlot, targetType, " +
+                    "webhookUrl, normalizedSender, contentLower) " +
+                    "VALUES (7, '1588', 0, 'code\\d+', NULL, 0, 1, '{body}', 2, 1, 1, " +
+                    "'https://example.com/hook', NULL, NULL)");
+        }
+        
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 11, true,
+                AppDatabase.MIGRATION_10_11)) {
+            try (Cursor cursor = db.query("SELECT id, senderNumber, senderExactMatch, messageContent, " +
+                    "isEnabled, matchMode, template, compaction, simSlot, targetType, webhookUrl " +
+                    "FROM forwarding_rules")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(7, cursor.getInt(0));
+                assertEquals("1588", cursor.getString(1));
+                assertEquals(0, cursor.getInt(2));
+                assertEquals("code\\d+", cursor.getString(3));
+                assertEquals(0, cursor.getInt(4));
+                assertEquals(ForwardingRule.MATCH_MODE_REGEX, cursor.getInt(5));
+                assertEquals("{body}", cursor.getString(6));
+                assertEquals(2, cursor.getInt(7));
+                assertEquals(1, cursor.getInt(8));
+                assertEquals(ForwardingRule.TARGET_WEBHOOK, cursor.getInt(9));
+                assertEquals("https://example.com/hook", cursor.getString(10));
+            }
+            // New rules continue after the copied ids
+            db.execSQL("INSERT INTO forwarding_rules (senderNumber, senderExactMatch, messageContent, " +
+                    "forwardToNumber, isEnabled) VALUES ('', 0, 'x', '01000000001', 1)");
+            try (Cursor cursor = db.query("SELECT MAX(id) FROM forwarding_rules")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(8, cursor.getInt(0));
+            }
+        }
+    }
+}
\ No newline at end of file
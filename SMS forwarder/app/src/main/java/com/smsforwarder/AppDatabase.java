@@ -1,25 +1,165 @@
 package com.smsforwarder;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {ForwardingRule.class}, version = 1, exportSchema = false)
+@Database(entities = {ForwardingRule.class, OutboundMessage.class, ForwardingHistory.class},
+        version = AppDatabase.VERSION, exportSchema = true)
 public abstract class AppDatabase extends RoomDatabase {
     
+    // Also stamped into the rule snapshot file, bump together with a migration
+    static final int VERSION = 11;
     private static final String DATABASE_NAME = "sms_forwarder_db";
     private static AppDatabase instance;
     
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `outbound_messages` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`destination` TEXT, `body` TEXT, " +
+                    "`status` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, " +
+                    "`createdAt` INTEGER NOT NULL, `nextAttemptAt` INTEGER NOT NULL, " +
+                    "`updatedAt` INTEGER NOT NULL, `lastResultCode` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_outbound_messages_status_nextAttemptAt` " +
+                    "ON `outbound_messages` (`status`, `nextAttemptAt`)");
+        }
+    };
+    
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `forwarding_history` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`ruleId` INTEGER NOT NULL, `sender` TEXT, `destination` TEXT, " +
+                    "`body` TEXT, `forwardedAt` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_history_ruleId_forwardedAt` " +
+                    "ON `forwarding_history` (`ruleId`, `forwardedAt`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_history_sender_forwardedAt` " +
+                    "ON `forwarding_history` (`sender`, `forwardedAt`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_history_forwardedAt` " +
+                    "ON `forwarding_history` (`forwardedAt`)");
+        }
+    };
+    
+    // The derived columns are left empty, nothing reads them and
+    // MIGRATION_10_11 drops them again
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `normalizedSender` TEXT");
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `contentLower` TEXT");
+            
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_rules_isEnabled` " +
+                    "ON `forwarding_rules` (`isEnabled`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_rules_normalizedSender` " +
+                    "ON `forwarding_rules` (`normalizedSender`)");
+        }
+    };
+    
+    // No schema change; this version only recomputed the derived columns
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+        }
+    };
+    
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // Existing rules keep keyword matching
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `matchMode` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // Existing rules keep the default forward header, uncompacted
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `template` TEXT");
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `compaction` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // Existing rules and queued messages may go out on any SIM
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `simSlot` INTEGER NOT NULL DEFAULT -1");
+            db.execSQL("ALTER TABLE `outbound_messages` ADD COLUMN `simSlot` INTEGER NOT NULL DEFAULT -1");
+        }
+    };
+    
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // Existing rules forward by SMS
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `targetType` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `forwarding_rules` ADD COLUMN `webhookUrl` TEXT");
+        }
+    };
+    
+    // Multi-part acknowledgements are counted in the row so a process restart
+    // between the parts does not lose the ones already reported
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `outbound_messages` ADD COLUMN `partsAcked` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+    
+    // Drops normalizedSender, contentLower and the normalizedSender index:
+    // RuleMatcher canonicalizes and folds the rules in memory, with the
+    // configured country, and never read them. SQLite before 3.35 cannot drop
+    // a column, so the table is copied; ids are kept so history still refers
+    // to the same rules.
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `forwarding_rules_new` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`senderNumber` TEXT, `senderExactMatch` INTEGER NOT NULL, " +
+                    "`messageContent` TEXT, `forwardToNumber` TEXT, `isEnabled` INTEGER NOT NULL, " +
+                    "`matchMode` INTEGER NOT NULL DEFAULT 0, `template` TEXT, " +
+                    "`compaction` INTEGER NOT NULL DEFAULT 0, `simSlot` INTEGER NOT NULL DEFAULT -1, " +
+                    "`targetType` INTEGER NOT NULL DEFAULT 0, `webhookUrl` TEXT)");
+            db.execSQL("INSERT INTO `forwarding_rules_new` (`id`, `senderNumber`, `senderExactMatch`, " +
+                    "`messageContent`, `forwardToNumber`, `isEnabled`, `matchMode`, `template`, " +
+                    "`compaction`, `simSlot`, `targetType`, `webhookUrl`) " +
+                    "SELECT `id`, `senderNumber`, `senderExactMatch`, `messageContent`, `forwardToNumber`, " +
+                    "`isEnabled`, `matchMode`, `template`, `compaction`, `simSlot`, `targetType`, `webhookUrl` " +
+                    "FROM `forwarding_rules`");
+            db.execSQL("DROP TABLE `forwarding_rules`");
+            db.execSQL("ALTER TABLE `forwarding_rules_new` RENAME TO `forwarding_rules`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_forwarding_rules_isEnabled` " +
+                    "ON `forwarding_rules` (`isEnabled`)");
+        }
+    };
+    
+    // Every migration in order, also run by MigrationTest
+    static final Migration[] ALL_MIGRATIONS = {
+            MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6,
+            MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11
+    };
+    
     public abstract ForwardingRuleDao forwardingRuleDao();
     
+    public abstract OutboundMessageDao outboundMessageDao();
+    
+    public abstract ForwardingHistoryDao forwardingHistoryDao();
+    
     public static synchronized AppDatabase getInstance(Context context) {
         if (instance == null) {
             instance = Room.databaseBuilder(
                     context.getApplicationContext(),
                     AppDatabase.class,
                     DATABASE_NAME
-            ).allowMainThreadQueries().build();
+            ).addMigrations(ALL_MIGRATIONS).build();
         }
         return instance;
     }
@@ -0,0 +1,39 @@
+package com.smsforwarder;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Shared executors for database work started from the UI. Writes go through a
+// single thread so they are applied in the order the user made them.
+public final class AppExecutors {
+    
+    private static AppExecutors instance;
+    
+    private final ExecutorService diskIO;
+    private final Executor mainThread;
+    
+    private AppExecutors() {
+        this.diskIO = Executors.newSingleThreadExecutor(r -> new Thread(r, "db-io"));
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.mainThread = mainHandler::post;
+    }
+    
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+    
+    public Executor diskIO() {
+        return diskIO;
+    }
+    
+    public Executor mainThread() {
+        return mainThread;
+    }
+}
\ No newline at end of file
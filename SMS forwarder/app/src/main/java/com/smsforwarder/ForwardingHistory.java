@@ -0,0 +1,36 @@
+package com.smsforwarder;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+// One row per forwarded message and destination, append-only
+@Entity(tableName = "forwarding_history",
+        indices = {
+                @Index(value = {"ruleId", "forwardedAt"}),
+                @Index(value = {"sender", "forwardedAt"}),
+                @Index(value = {"forwardedAt"})
+        })
+public class ForwardingHistory {
+    
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+    
+    public int ruleId;
+    public String sender;
+    public String destination;
+    public String body;
+    public long forwardedAt;
+    
+    public ForwardingHistory() {
+    }
+    
+    @androidx.room.Ignore
+    public ForwardingHistory(int ruleId, String sender, String destination, String body, long forwardedAt) {
+        this.ruleId = ruleId;
+        this.sender = sender;
+        this.destination = destination;
+        this.body = body;
+        this.forwardedAt = forwardedAt;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.smsforwarder;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+// Pages are read newest first with keyset pagination: pass the forwardedAt and
+// id of the last row of the previous page (Long.MAX_VALUE for the first page).
+@Dao
+public interface ForwardingHistoryDao {
+    
+    @Insert
+    void insertAll(List<ForwardingHistory> entries);
+    
+    @Query("SELECT * FROM forwarding_history WHERE forwardedAt BETWEEN :fromTime AND :toTime " +
+            "AND (forwardedAt < :beforeTime OR (forwardedAt = :beforeTime AND id < :beforeId)) " +
+            "ORDER BY forwardedAt DESC, id DESC LIMIT :limit")
+    List<ForwardingHistory> getPage(long fromTime, long toTime, long beforeTime, long beforeId, int limit);
+    
+    @Query("SELECT * FROM forwarding_history WHERE ruleId = :ruleId " +
+            "AND forwardedAt BETWEEN :fromTime AND :toTime " +
+            "AND (forwardedAt < :beforeTime OR (forwardedAt = :beforeTime AND id < :beforeId)) " +
+            "ORDER BY forwardedAt DESC, id DESC LIMIT :limit")
+    List<ForwardingHistory> getPageByRule(int ruleId, long fromTime, long toTime,
+                                          long beforeTime, long beforeId, int limit);
+    
+    @Query("SELECT * FROM forwarding_history WHERE sender = :sender " +
+            "AND forwardedAt BETWEEN :fromTime AND :toTime " +
+            "AND (forwardedAt < :beforeTime OR (forwardedAt = :beforeTime AND id < :beforeId)) " +
+            "ORDER BY forwardedAt DESC, id DESC LIMIT :limit")
+    List<ForwardingHistory> getPageBySender(String sender, long fromTime, long toTime,
+                                            long beforeTime, long beforeId, int limit);
+    
+    @Query("SELECT COUNT(*) FROM forwarding_history")
+    int getCount();
+    
+    @Query("DELETE FROM forwarding_history WHERE forwardedAt < :cutoff")
+    int deleteOlderThan(long cutoff);
+    
+    // Keeps the newest maxRows rows
+    @Query("DELETE FROM forwarding_history WHERE id <= " +
+            "(SELECT id FROM forwarding_history ORDER BY id DESC LIMIT 1 OFFSET :maxRows)")
+    int trimToSize(int maxRows);
+}
\ No newline at end of file
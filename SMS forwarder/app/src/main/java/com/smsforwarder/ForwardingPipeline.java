@@ -0,0 +1,207 @@
+package com.smsforwarder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Process-wide forwarding pipeline. SmsReceiver hands every parsed message
+// straight to it, so a broadcast costs no service start; the lanes live as
+// long as the process, which the monitoring service keeps in the foreground.
+public final class ForwardingPipeline {
+    
+    private static final String TAG = "ForwardingPipeline";
+    
+    // Messages from one sender stay in order on one lane; lanes run in parallel
+    private static final int LANE_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int LANE_CAPACITY = 256;
+    private static final long ENQUEUE_TIMEOUT_MS = 500;
+    // How long flushPending waits for messages still queued on the lanes
+    private static final long DRAIN_TIMEOUT_MS = 2000;
+    
+    private static final String PREFS_NAME = "SmsForwarderPrefs";
+    private static final String KEY_COALESCE_ENABLED = "coalesce_enabled";
+    private static final String KEY_COALESCE_WINDOW_MS = "coalesce_window_ms";
+    private static final String KEY_COALESCE_MAX_BYTES = "coalesce_max_bytes";
+    private static final long DEFAULT_COALESCE_WINDOW_MS = 5000;
+    private static final int DEFAULT_COALESCE_MAX_BYTES = 600;
+    private static final String KEY_WEBHOOK_WINDOW_MS = "webhook_window_ms";
+    private static final String KEY_WEBHOOK_MAX_MESSAGES = "webhook_max_messages";
+    private static final String KEY_WEBHOOK_MAX_BYTES = "webhook_max_bytes";
+    private static final String KEY_WEBHOOK_MAX_IN_FLIGHT = "webhook_max_in_flight";
+    private static final long DEFAULT_WEBHOOK_WINDOW_MS = 2000;
+    private static final int DEFAULT_WEBHOOK_MAX_MESSAGES = 50;
+    private static final int DEFAULT_WEBHOOK_MAX_BYTES = 64 * 1024;
+    private static final int DEFAULT_WEBHOOK_MAX_IN_FLIGHT = 2;
+    private static final int WEBHOOK_CONNECT_TIMEOUT_MS = 10000;
+    private static final int WEBHOOK_READ_TIMEOUT_MS = 15000;
+    
+    // flushPending waits for the lanes and writes the flushed forwards to the
+    // database, so it runs here rather than on the caller's thread
+    private static final ExecutorService FLUSH_EXECUTOR = Executors.newSingleThreadExecutor(
+            r -> new Thread(r, "sms-flush"));
+    
+    private static ForwardingPipeline instance;
+    
+    private final Context context;
+    private final RuleSnapshotCache ruleCache;
+    private final HistoryRecorder history;
+    private final ForwardingStatus status;
+    private final ForwardingEngine engine;
+    private final SharedPreferences prefs;
+    private final ForwardCoalescer coalescer;
+    private final WebhookBatcher webhooks;
+    private final ForwardingMetrics metrics = ForwardingMetrics.global();
+    
+    private ForwardingPipeline(Context context) {
+        this.context = context;
+        ruleCache = RuleSnapshotCache.getInstance(context);
+        history = HistoryRecorder.getInstance(context);
+        status = ForwardingStatus.getInstance();
+        engine = new ForwardingEngine(() -> ruleCache.get().getMatcher(), new PipelineOutbox(), metrics,
+                LANE_COUNT, LANE_CAPACITY, ENQUEUE_TIMEOUT_MS);
+        
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        ScheduledExecutorService coalesceScheduler = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "sms-coalesce"));
+        coalescer = new ForwardCoalescer(
+                prefs.getLong(KEY_COALESCE_WINDOW_MS, DEFAULT_COALESCE_WINDOW_MS),
+                prefs.getInt(KEY_COALESCE_MAX_BYTES, DEFAULT_COALESCE_MAX_BYTES),
+                (number, text) -> sendSms(number, text, SendLanes.ANY_SLOT), coalesceScheduler);
+        
+        int webhookMaxInFlight = Math.max(1, prefs.getInt(KEY_WEBHOOK_MAX_IN_FLIGHT, DEFAULT_WEBHOOK_MAX_IN_FLIGHT));
+        ScheduledExecutorService webhookScheduler = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "webhook-batch"));
+        ExecutorService webhookPosters = Executors.newFixedThreadPool(webhookMaxInFlight,
+                r -> new Thread(r, "webhook-post"));
+        webhooks = new WebhookBatcher(
+                prefs.getLong(KEY_WEBHOOK_WINDOW_MS, DEFAULT_WEBHOOK_WINDOW_MS),
+                Math.max(1, prefs.getInt(KEY_WEBHOOK_MAX_MESSAGES, DEFAULT_WEBHOOK_MAX_MESSAGES)),
+                prefs.getInt(KEY_WEBHOOK_MAX_BYTES, DEFAULT_WEBHOOK_MAX_BYTES),
+                webhookMaxInFlight,
+                new HttpWebhookTransport(WEBHOOK_CONNECT_TIMEOUT_MS, WEBHOOK_READ_TIMEOUT_MS),
+                new WebhookStatus(), webhookScheduler, webhookPosters, metrics);
+    }
+    
+    public static synchronized ForwardingPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new ForwardingPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    // See ForwardingEngine.submit; returns false if the message was dropped
+    public boolean submit(String sender, String message, long receivedAtNanos, Runnable onProcessed) {
+        boolean queued = engine.submit(sender, message, receivedAtNanos, onProcessed);
+        if (!queued) {
+            Log.w(TAG, "Forwarding queue full, dropped SMS from: " + sender + " (" + engine.getStats() + ")");
+        }
+        return queued;
+    }
+    
+    // Lets the lanes finish the messages already queued, then sends whatever
+    // is buffered for coalescing or webhook batching, e.g. before monitoring
+    // stops; does nothing if no message has been received in this process.
+    // The lanes keep running, a broadcast arriving meanwhile is still handled.
+    // Blocks for up to DRAIN_TIMEOUT_MS; never call it on the main thread.
+    public static void flushPending() {
+        ForwardingPipeline pipeline;
+        synchronized (ForwardingPipeline.class) {
+            pipeline = instance;
+        }
+        if (pipeline == null) {
+            return;
+        }
+        try {
+            if (!pipeline.engine.drain(DRAIN_TIMEOUT_MS)) {
+                Log.w(TAG, "Forwarding lanes did not drain in time: " + pipeline.engine.getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pipeline.coalescer.flushAll();
+        pipeline.webhooks.flushAll();
+    }
+    
+    // Returns at once, for the main thread, e.g. Service.onDestroy
+    public static void flushPendingAsync() {
+        FLUSH_EXECUTOR.execute(ForwardingPipeline::flushPending);
+    }
+    
+    // Messages waiting on the lanes, not yet matched
+    int getQueueDepth() {
+        return engine.getQueueDepth();
+    }
+    
+    long getCompletedCount() {
+        return engine.getCompletedCount();
+    }
+    
+    public String getStats() {
+        return engine.getStats() + ", coalescing: " + coalescer.getStats() + ", webhooks: " + webhooks.getStats();
+    }
+    
+    private void sendSms(String forwardToNumber, String forwardedMessage, int simSlot) {
+        try {
+            // Stored before sending, OutboundQueue sends and retries it
+            OutboundQueue.getInstance(context).enqueue(forwardToNumber, forwardedMessage, simSlot);
+            metrics.increment(ForwardingMetrics.Counter.FORWARDS_QUEUED);
+            metrics.add(ForwardingMetrics.Counter.SEGMENTS_QUEUED, SmsSegments.count(forwardedMessage));
+            // Shown in the monitoring notification, throttled
+            status.onQueued();
+            
+            Log.d(TAG, "SMS queued for: " + forwardToNumber);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to queue SMS to: " + forwardToNumber, e);
+            status.onFailed();
+        }
+    }
+    
+    // Receives the forwards ForwardingEngine decides on, on its lane threads
+    private final class PipelineOutbox implements ForwardingEngine.Outbox {
+        @Override
+        public void forward(ForwardingRule rule, String sender, String message, String forwardedText) {
+            Log.d(TAG, "Rule matched: " + rule.toString());
+            if (rule.isWebhook()) {
+                webhooks.submit(rule.webhookUrl, rule.id, sender, message, forwardedText, System.currentTimeMillis());
+                metrics.increment(ForwardingMetrics.Counter.FORWARDS_QUEUED);
+                status.onQueued();
+                history.record(rule.id, sender, rule.webhookUrl, message);
+                return;
+            }
+            // A batch can mix rules, so rules that pick a SIM are not coalesced
+            if (rule.simSlot == SendLanes.ANY_SLOT && prefs.getBoolean(KEY_COALESCE_ENABLED, false)) {
+                coalescer.submit(rule.forwardToNumber, forwardedText);
+            } else {
+                sendSms(rule.forwardToNumber, forwardedText, rule.simSlot);
+            }
+            history.record(rule.id, sender, rule.forwardToNumber, message);
+        }
+        
+        @Override
+        public void onError(String sender, RuntimeException e) {
+            Log.e(TAG, "Error processing SMS forwarding from: " + sender, e);
+        }
+    }
+    
+    // Webhook results, on the webhook-post threads
+    private final class WebhookStatus implements WebhookBatcher.Listener {
+        @Override
+        public void onDelivered(String url, int messages) {
+            for (int i = 0; i < messages; i++) {
+                status.onForwarded();
+            }
+        }
+        
+        @Override
+        public void onFailed(String url, int messages, String reason) {
+            Log.w(TAG, "Gave up posting " + messages + " messages to " + url + ": " + reason);
+            for (int i = 0; i < messages; i++) {
+                status.onFailed();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -6,13 +6,39 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.List;
+import java.util.Objects;
 
-public class ForwardingRuleAdapter extends RecyclerView.Adapter<ForwardingRuleAdapter.RuleViewHolder> {
+// Rules arrive as PagingData from Room; diffs between pages are computed off the
+// main thread. PagingDataAdapter does not allow stable ids, item identity comes
+// from ForwardingRule.id in DIFF_CALLBACK instead.
+public class ForwardingRuleAdapter extends PagingDataAdapter<ForwardingRule, ForwardingRuleAdapter.RuleViewHolder> {
+    
+    private static final DiffUtil.ItemCallback<ForwardingRule> DIFF_CALLBACK = new DiffUtil.ItemCallback<ForwardingRule>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ForwardingRule oldRule, @NonNull ForwardingRule newRule) {
+            return oldRule.id == newRule.id;
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull ForwardingRule oldRule, @NonNull ForwardingRule newRule) {
+            return oldRule.senderExactMatch == newRule.senderExactMatch &&
+                    oldRule.isEnabled == newRule.isEnabled &&
+                    Objects.equals(oldRule.senderNumber, newRule.senderNumber) &&
+                    oldRule.matchMode == newRule.matchMode &&
+                    oldRule.compaction == newRule.compaction &&
+                    oldRule.simSlot == newRule.simSlot &&
+                    oldRule.targetType == newRule.targetType &&
+                    Objects.equals(oldRule.webhookUrl, newRule.webhookUrl) &&
+                    Objects.equals(oldRule.template, newRule.template) &&
+                    Objects.equals(oldRule.messageContent, newRule.messageContent) &&
+                    Objects.equals(oldRule.forwardToNumber, newRule.forwardToNumber);
+        }
+    };
     
-    private List<ForwardingRule> rules;
     private OnRuleActionListener listener;
     
     public interface OnRuleActionListener {
@@ -20,8 +46,8 @@ public class ForwardingRuleAdapter extends RecyclerView.Adapter<ForwardingRuleAd
         void onDeleteRule(ForwardingRule rule);
     }
     
-    public ForwardingRuleAdapter(List<ForwardingRule> rules, OnRuleActionListener listener) {
-        this.rules = rules;
+    public ForwardingRuleAdapter(OnRuleActionListener listener) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
     }
     
@@ -35,18 +61,10 @@ public class ForwardingRuleAdapter extends RecyclerView.Adapter<ForwardingRuleAd
     
     @Override
     public void onBindViewHolder(@NonNull RuleViewHolder holder, int position) {
-        ForwardingRule rule = rules.get(position);
-        holder.bind(rule);
-    }
-    
-    @Override
-    public int getItemCount() {
-        return rules.size();
-    }
-    
-    public void updateRules(List<ForwardingRule> newRules) {
-        this.rules = newRules;
-        notifyDataSetChanged();
+        ForwardingRule rule = getItem(position);
+        if (rule != null) {
+            holder.bind(rule);
+        }
     }
     
     class RuleViewHolder extends RecyclerView.ViewHolder {
@@ -75,12 +93,12 @@ public class ForwardingRuleAdapter extends RecyclerView.Adapter<ForwardingRuleAd
             
             // Display message content
             String contentDisplay = rule.messageContent != null && !rule.messageContent.trim().isEmpty()
-                    ? rule.messageContent
+                    ? rule.messageContent + (rule.isRegex() ? " (Regex)" : "")
                     : "Any content";
             tvMessageContent.setText(contentDisplay);
             
-            // Display forward to number
-            tvForwardToNumber.setText(rule.forwardToNumber);
+            // Display forward to number, or the webhook URL
+            tvForwardToNumber.setText(rule.getDestination());
             
             // Set click listeners
             btnEdit.setOnClickListener(v -> {
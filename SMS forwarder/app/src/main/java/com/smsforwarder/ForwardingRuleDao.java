@@ -1,5 +1,7 @@
 package com.smsforwarder;
 
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
@@ -14,24 +16,30 @@ public interface ForwardingRuleDao {
     @Query("SELECT * FROM forwarding_rules WHERE isEnabled = 1")
     List<ForwardingRule> getAllEnabledRules();
     
-    @Query("SELECT * FROM forwarding_rules")
-    List<ForwardingRule> getAllRules();
-    
-    @Query("SELECT * FROM forwarding_rules WHERE id = :id")
-    ForwardingRule getRuleById(int id);
+    // Invalidated by Room whenever forwarding_rules changes
+    @Query("SELECT * FROM forwarding_rules ORDER BY id")
+    PagingSource<Integer, ForwardingRule> getRulesPaged();
     
     @Insert
     long insertRule(ForwardingRule rule);
     
+    // One transaction per call; callers chunk large imports
+    @Insert
+    void insertRules(List<ForwardingRule> rules);
+    
+    // Keyset page for streaming the whole table in id order
+    @Query("SELECT * FROM forwarding_rules WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<ForwardingRule> getRulesAfter(int afterId, int limit);
+    
     @Update
     void updateRule(ForwardingRule rule);
     
     @Delete
     void deleteRule(ForwardingRule rule);
     
-    @Query("DELETE FROM forwarding_rules WHERE id = :id")
-    void deleteRuleById(int id);
-    
     @Query("SELECT COUNT(*) FROM forwarding_rules")
     int getRuleCount();
+    
+    @Query("SELECT COUNT(*) FROM forwarding_rules")
+    LiveData<Integer> observeRuleCount();
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.smsforwarder;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Running totals of this process's forwards for the monitoring notification.
+// Counting is a few atomic increments on the forwarding threads; the listener
+// is called on the main thread at most once per MIN_UPDATE_INTERVAL_MS, with
+// any number of changes in between folded into one update.
+public final class ForwardingStatus {
+    
+    public interface Listener {
+        void onStatusChanged(ForwardingStatus status);
+    }
+    
+    private static final long MIN_UPDATE_INTERVAL_MS = 333;
+    
+    private static ForwardingStatus instance;
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastForwardAtMillis;
+    private volatile Listener listener;
+    // Main thread only
+    private long lastUpdateAt;
+    
+    private ForwardingStatus() {
+    }
+    
+    public static synchronized ForwardingStatus getInstance() {
+        if (instance == null) {
+            instance = new ForwardingStatus();
+        }
+        return instance;
+    }
+    
+    // Must be called on the main thread; null stops the updates
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        if (listener != null) {
+            listener.onStatusChanged(this);
+        }
+    }
+    
+    // A forward was stored in the outbound queue
+    public void onQueued() {
+        queued.incrementAndGet();
+        changed();
+    }
+    
+    // The outbound queue got a successful sent result for a forward
+    public void onForwarded() {
+        forwarded.incrementAndGet();
+        lastForwardAtMillis = System.currentTimeMillis();
+        changed();
+    }
+    
+    // A forward could not be queued, or the outbound queue gave up on it
+    public void onFailed() {
+        failed.incrementAndGet();
+        changed();
+    }
+    
+    public long getForwardedCount() {
+        return forwarded.get();
+    }
+    
+    public long getFailedCount() {
+        return failed.get();
+    }
+    
+    // Forwards waiting to be sent or retried. Rows left over from an earlier
+    // process are sent without having been counted here, hence the clamp.
+    public long getQueuedCount() {
+        return Math.max(0, queued.get() - forwarded.get() - failed.get());
+    }
+    
+    // 0 if nothing has been forwarded yet
+    public long getLastForwardAtMillis() {
+        return lastForwardAtMillis;
+    }
+    
+    private void changed() {
+        if (listener == null || !updatePending.compareAndSet(false, true)) {
+            return;
+        }
+        mainHandler.post(() -> {
+            long wait = lastUpdateAt + MIN_UPDATE_INTERVAL_MS - SystemClock.uptimeMillis();
+            if (wait > 0) {
+                mainHandler.postDelayed(this::publish, wait);
+            } else {
+                publish();
+            }
+        });
+    }
+    
+    private void publish() {
+        // Cleared first, so a change made while the listener runs posts another update
+        updatePending.set(false);
+        lastUpdateAt = SystemClock.uptimeMillis();
+        Listener current = listener;
+        if (current != null) {
+            current.onStatusChanged(this);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.smsforwarder;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Records forwards into forwarding_history off the SMS path. record() only
+// appends to an in-memory buffer; rows are inserted in batches on a background
+// thread, which also compacts the table by age and by size every hour.
+public final class HistoryRecorder {
+    
+    private static final String TAG = "HistoryRecorder";
+    
+    private static final int BATCH_SIZE = 50;
+    private static final long FLUSH_DELAY_MS = 1000;
+    private static final int MAX_PENDING = 10000;
+    
+    private static final long RETENTION_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ROWS = 100000;
+    private static final long COMPACTION_INTERVAL_MS = 60 * 60 * 1000;
+    
+    private static HistoryRecorder instance;
+    
+    private final ForwardingHistoryDao dao;
+    private final BatchWriter<ForwardingHistory> writer;
+    
+    private HistoryRecorder(AppDatabase database) {
+        this.dao = database.forwardingHistoryDao();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                r -> new Thread(r, "sms-history"));
+        this.writer = new BatchWriter<>(dao::insertAll, executor, BATCH_SIZE, FLUSH_DELAY_MS, MAX_PENDING);
+        executor.scheduleWithFixedDelay(this::compact, COMPACTION_INTERVAL_MS / 60,
+                COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    public static synchronized HistoryRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryRecorder(AppDatabase.getInstance(context));
+        }
+        return instance;
+    }
+    
+    public void record(int ruleId, String sender, String destination, String body) {
+        writer.add(new ForwardingHistory(ruleId, sender, destination, body, System.currentTimeMillis()));
+    }
+    
+    public String getStats() {
+        return writer.getStats();
+    }
+    
+    private void compact() {
+        try {
+            int expired = dao.deleteOlderThan(System.currentTimeMillis() - RETENTION_MS);
+            int trimmed = dao.trimToSize(MAX_ROWS);
+            if (expired > 0 || trimmed > 0) {
+                Log.d(TAG, "Compacted history: " + expired + " expired, " + trimmed + " over size limit");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "History compaction failed", e);
+        }
+    }
+}
\ No newline at end of file
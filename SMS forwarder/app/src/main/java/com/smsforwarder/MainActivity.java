@@ -5,26 +5,38 @@ import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.ProgressBar;
 import android.widget.RadioButton;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.textfield.TextInputEditText;
-
-import java.util.ArrayList;
-import java.util.List;
+import com.google.re2j.PatternSyntaxException;
 
 public class MainActivity extends AppCompatActivity implements ForwardingRuleAdapter.OnRuleActionListener {
     
@@ -32,24 +44,51 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
     private static final int SMS_PERMISSION_REQUEST_CODE = 1001;
     private static final String PREFS_NAME = "SmsForwarderPrefs";
     private static final String KEY_MONITORING_ENABLED = "monitoring_enabled";
+    private static final String KEY_COALESCE_ENABLED = "coalesce_enabled";
+    
+    // Only a window of pages is kept in memory however many rules there are
+    private static final int RULE_PAGE_SIZE = 50;
+    private static final int RULE_PAGES_IN_MEMORY = 6;
+    
+    private static final String[] IMPORT_MIME_TYPES = {
+        "text/csv", "text/comma-separated-values", "text/plain", "application/json"
+    };
+    private static final String EXPORT_FILE_NAME = "forwarding_rules";
     
     private TextView tvMonitoringStatus;
     private Button btnToggleMonitoring;
     private Button btnRequestPermissions;
+    private CheckBox cbCoalesceForwards;
     private RecyclerView recyclerViewRules;
     private TextView tvEmptyState;
     private FloatingActionButton fabAddRule;
+    private Button btnImportRules;
+    private Button btnExportRules;
+    
+    private AlertDialog transferDialog;
+    private ProgressBar transferProgress;
     
-    private AppDatabase database;
+    private final ActivityResultLauncher<String[]> importLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocument(), this::importRules);
+    private final ActivityResultLauncher<String> exportCsvLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(RuleTransfer.Format.CSV.mimeType),
+            uri -> exportRules(uri, RuleTransfer.Format.CSV));
+    private final ActivityResultLauncher<String> exportJsonLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(RuleTransfer.Format.JSON.mimeType),
+            uri -> exportRules(uri, RuleTransfer.Format.JSON));
+    
+    private RuleRepository repository;
     private ForwardingRuleAdapter adapter;
-    private List<ForwardingRule> rules;
     private SharedPreferences prefs;
     private boolean isMonitoringEnabled;
+    private int ruleCount;
+    private boolean reportedFullyDrawn;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        logFirstFrame();
         
         initializeViews();
         initializeData();
@@ -63,29 +102,52 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
         tvMonitoringStatus = findViewById(R.id.tvMonitoringStatus);
         btnToggleMonitoring = findViewById(R.id.btnToggleMonitoring);
         btnRequestPermissions = findViewById(R.id.btnRequestPermissions);
+        cbCoalesceForwards = findViewById(R.id.cbCoalesceForwards);
         recyclerViewRules = findViewById(R.id.recyclerViewRules);
         tvEmptyState = findViewById(R.id.tvEmptyState);
         fabAddRule = findViewById(R.id.fabAddRule);
+        btnImportRules = findViewById(R.id.btnImportRules);
+        btnExportRules = findViewById(R.id.btnExportRules);
     }
     
     private void initializeData() {
-        database = AppDatabase.getInstance(this);
-        rules = new ArrayList<>();
+        repository = RuleRepository.getInstance(this);
+        repository.warmUp();
         prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         isMonitoringEnabled = prefs.getBoolean(KEY_MONITORING_ENABLED, false);
     }
     
     private void setupRecyclerView() {
-        adapter = new ForwardingRuleAdapter(rules, this);
+        adapter = new ForwardingRuleAdapter(this);
         recyclerViewRules.setLayoutManager(new LinearLayoutManager(this));
         recyclerViewRules.setAdapter(adapter);
-        loadRules();
+        
+        repository.observeRuleCount().observe(this, count -> {
+            ruleCount = count != null ? count : 0;
+            updateEmptyState();
+            reportStartupComplete();
+        });
+        
+        // Room invalidates the paging source on every change to forwarding_rules,
+        // so adds, edits and deletes show up without reloading the list by hand
+        Pager<Integer, ForwardingRule> pager = new Pager<>(
+                new PagingConfig(RULE_PAGE_SIZE, RULE_PAGE_SIZE, false,
+                        RULE_PAGE_SIZE * 2, RULE_PAGE_SIZE * RULE_PAGES_IN_MEMORY),
+                () -> repository.getRulesPaged());
+        LiveData<PagingData<ForwardingRule>> pagedRules =
+                PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), getLifecycle());
+        pagedRules.observe(this, pagingData -> adapter.submitData(getLifecycle(), pagingData));
     }
     
     private void setupClickListeners() {
         btnToggleMonitoring.setOnClickListener(v -> toggleMonitoring());
         btnRequestPermissions.setOnClickListener(v -> requestPermissions());
         fabAddRule.setOnClickListener(v -> showAddRuleDialog());
+        btnImportRules.setOnClickListener(v -> importLauncher.launch(IMPORT_MIME_TYPES));
+        btnExportRules.setOnClickListener(v -> showExportDialog());
+        cbCoalesceForwards.setChecked(prefs.getBoolean(KEY_COALESCE_ENABLED, false));
+        cbCoalesceForwards.setOnCheckedChangeListener((buttonView, isChecked) ->
+                prefs.edit().putBoolean(KEY_COALESCE_ENABLED, isChecked).apply());
     }
     
     private void checkPermissions() {
@@ -108,10 +170,12 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
     }
     
     private void requestPermissions() {
+        // READ_PHONE_STATE is optional, see OutboundQueue; monitoring works without it
         String[] requiredPermissions = {
             Manifest.permission.RECEIVE_SMS,
             Manifest.permission.READ_SMS,
-            Manifest.permission.SEND_SMS
+            Manifest.permission.SEND_SMS,
+            Manifest.permission.READ_PHONE_STATE
         };
         
         ActivityCompat.requestPermissions(this, requiredPermissions, SMS_PERMISSION_REQUEST_CODE);
@@ -153,7 +217,11 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
             btnToggleMonitoring.setText(R.string.enable_monitoring);
         }
         
-        if (rules.isEmpty()) {
+        updateEmptyState();
+    }
+    
+    private void updateEmptyState() {
+        if (ruleCount == 0) {
             recyclerViewRules.setVisibility(View.GONE);
             tvEmptyState.setVisibility(View.VISIBLE);
         } else {
@@ -162,13 +230,6 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
         }
     }
     
-    private void loadRules() {
-        rules.clear();
-        rules.addAll(database.forwardingRuleDao().getAllRules());
-        adapter.updateRules(rules);
-        updateUI();
-    }
-    
     private void showAddRuleDialog() {
         showRuleDialog(null);
     }
@@ -181,7 +242,23 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
         RadioButton rbSenderPartial = dialogView.findViewById(R.id.rbSenderPartial);
         RadioButton rbSenderExact = dialogView.findViewById(R.id.rbSenderExact);
         TextInputEditText etMessageContent = dialogView.findViewById(R.id.etMessageContent);
+        RadioButton rbContentRegex = dialogView.findViewById(R.id.rbContentRegex);
+        RadioButton rbTargetWebhook = dialogView.findViewById(R.id.rbTargetWebhook);
+        View tilForwardToNumber = dialogView.findViewById(R.id.tilForwardToNumber);
+        View tilWebhookUrl = dialogView.findViewById(R.id.tilWebhookUrl);
         TextInputEditText etForwardToNumber = dialogView.findViewById(R.id.etForwardToNumber);
+        TextInputEditText etWebhookUrl = dialogView.findViewById(R.id.etWebhookUrl);
+        TextInputEditText etForwardTemplate = dialogView.findViewById(R.id.etForwardTemplate);
+        CheckBox cbCompactHeader = dialogView.findViewById(R.id.cbCompactHeader);
+        CheckBox cbTransliterate = dialogView.findViewById(R.id.cbTransliterate);
+        RadioButton rbSim1 = dialogView.findViewById(R.id.rbSim1);
+        RadioButton rbSim2 = dialogView.findViewById(R.id.rbSim2);
+        
+        // Either the number or the URL is asked for
+        rbTargetWebhook.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            tilForwardToNumber.setVisibility(isChecked ? View.GONE : View.VISIBLE);
+            tilWebhookUrl.setVisibility(isChecked ? View.VISIBLE : View.GONE);
+        });
         
         // Set dialog title and populate fields if editing
         if (editRule != null) {
@@ -193,7 +270,15 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
                 rbSenderPartial.setChecked(true);
             }
             etMessageContent.setText(editRule.messageContent);
+            rbContentRegex.setChecked(editRule.isRegex());
             etForwardToNumber.setText(editRule.forwardToNumber);
+            etWebhookUrl.setText(editRule.webhookUrl);
+            rbTargetWebhook.setChecked(editRule.isWebhook());
+            etForwardTemplate.setText(editRule.template);
+            cbCompactHeader.setChecked((editRule.compaction & ForwardTemplate.COMPACT_HEADER) != 0);
+            cbTransliterate.setChecked((editRule.compaction & ForwardTemplate.COMPACT_TRANSLITERATE) != 0);
+            rbSim1.setChecked(editRule.simSlot == 0);
+            rbSim2.setChecked(editRule.simSlot == 1);
         }
         
         AlertDialog dialog = new AlertDialog.Builder(this)
@@ -207,27 +292,75 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
             String senderNumber = etSenderNumber.getText().toString().trim();
             boolean senderExactMatch = rbSenderExact.isChecked();
             String messageContent = etMessageContent.getText().toString().trim();
+            // A regex without a pattern is stored as a keyword rule, which
+            // matches every message the same way and survives export/import
+            int matchMode = rbContentRegex.isChecked() && !messageContent.isEmpty()
+                    ? ForwardingRule.MATCH_MODE_REGEX : ForwardingRule.MATCH_MODE_KEYWORD;
             String forwardToNumber = etForwardToNumber.getText().toString().trim();
+            boolean webhook = rbTargetWebhook.isChecked();
+            String webhookUrl = etWebhookUrl.getText().toString().trim();
+            String template = etForwardTemplate.getText().toString();
+            if (template.trim().isEmpty()) {
+                template = null;
+            }
+            int compaction = (cbCompactHeader.isChecked() ? ForwardTemplate.COMPACT_HEADER : 0)
+                    | (cbTransliterate.isChecked() ? ForwardTemplate.COMPACT_TRANSLITERATE : 0);
+            // Slot indexes are 0-based
+            int simSlot = rbSim1.isChecked() ? 0 : rbSim2.isChecked() ? 1 : SendLanes.ANY_SLOT;
             
-            if (forwardToNumber.isEmpty()) {
+            if (webhook) {
+                if (!ForwardingRule.isValidWebhookUrl(webhookUrl)) {
+                    Toast.makeText(this, R.string.invalid_webhook_url, Toast.LENGTH_SHORT).show();
+                    return;
+                }
+            } else if (forwardToNumber.isEmpty()) {
                 Toast.makeText(this, R.string.field_required, Toast.LENGTH_SHORT).show();
                 return;
             }
+            int targetType = webhook ? ForwardingRule.TARGET_WEBHOOK : ForwardingRule.TARGET_SMS;
+            if (webhookUrl.isEmpty()) {
+                webhookUrl = null;
+            }
+            
+            if (matchMode == ForwardingRule.MATCH_MODE_REGEX) {
+                try {
+                    PatternCache.compile(messageContent);
+                } catch (PatternSyntaxException e) {
+                    Toast.makeText(this, getString(R.string.invalid_regex, e.getDescription()), Toast.LENGTH_LONG).show();
+                    return;
+                }
+            }
+            
+            try {
+                ForwardTemplate.compile(template, compaction);
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(this, getString(R.string.invalid_template, e.getMessage()), Toast.LENGTH_LONG).show();
+                return;
+            }
             
             if (editRule != null) {
-                editRule.senderNumber = senderNumber;
-                editRule.senderExactMatch = senderExactMatch;
-                editRule.messageContent = messageContent;
-                editRule.forwardToNumber = forwardToNumber;
-                database.forwardingRuleDao().updateRule(editRule);
-                Toast.makeText(this, R.string.rule_updated, Toast.LENGTH_SHORT).show();
+                // Update a copy, the adapter diffs against the instance it is showing
+                ForwardingRule updatedRule = new ForwardingRule(senderNumber, senderExactMatch, messageContent, forwardToNumber);
+                updatedRule.matchMode = matchMode;
+                updatedRule.template = template;
+                updatedRule.compaction = compaction;
+                updatedRule.simSlot = simSlot;
+                updatedRule.targetType = targetType;
+                updatedRule.webhookUrl = webhookUrl;
+                updatedRule.id = editRule.id;
+                updatedRule.isEnabled = editRule.isEnabled;
+                repository.update(updatedRule, success -> showWriteResult(success, R.string.rule_updated));
             } else {
                 ForwardingRule newRule = new ForwardingRule(senderNumber, senderExactMatch, messageContent, forwardToNumber);
-                database.forwardingRuleDao().insertRule(newRule);
-                Toast.makeText(this, R.string.rule_added, Toast.LENGTH_SHORT).show();
+                newRule.matchMode = matchMode;
+                newRule.template = template;
+                newRule.compaction = compaction;
+                newRule.simSlot = simSlot;
+                newRule.targetType = targetType;
+                newRule.webhookUrl = webhookUrl;
+                repository.insert(newRule, success -> showWriteResult(success, R.string.rule_added));
             }
             
-            loadRules();
             dialog.dismiss();
         });
         
@@ -247,11 +380,120 @@ public class MainActivity extends AppCompatActivity implements ForwardingRuleAda
                 .setTitle(R.string.delete_rule)
                 .setMessage("Are you sure you want to delete this rule?")
                 .setPositiveButton(R.string.delete, (dialog, which) -> {
-                    database.forwardingRuleDao().deleteRule(rule);
-                    loadRules();
-                    Toast.makeText(this, R.string.rule_deleted, Toast.LENGTH_SHORT).show();
+                    repository.delete(rule, success -> showWriteResult(success, R.string.rule_deleted));
                 })
                 .setNegativeButton(R.string.cancel, null)
                 .show();
     }
+    
+    private void showExportDialog() {
+        String[] formats = {"CSV", "JSON"};
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.export_format)
+                .setItems(formats, (dialog, which) -> {
+                    if (which == 0) {
+                        exportCsvLauncher.launch(EXPORT_FILE_NAME + ".csv");
+                    } else {
+                        exportJsonLauncher.launch(EXPORT_FILE_NAME + ".json");
+                    }
+                })
+                .show();
+    }
+    
+    private void importRules(Uri uri) {
+        if (uri == null) {
+            return;
+        }
+        RuleTransfer.Format format = RuleTransfer.Format.detect(getContentResolver().getType(uri), uri.getLastPathSegment());
+        showTransferProgress(R.string.importing_rules);
+        repository.importRules(uri, format, this::updateTransferProgress, (rules, success) -> {
+            dismissTransferProgress();
+            String message = success ? getString(R.string.import_finished, rules) : getString(R.string.import_failed, rules);
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        });
+    }
+    
+    private void exportRules(Uri uri, RuleTransfer.Format format) {
+        if (uri == null) {
+            return;
+        }
+        showTransferProgress(R.string.exporting_rules);
+        repository.exportRules(uri, format, this::updateTransferProgress, (rules, success) -> {
+            dismissTransferProgress();
+            String message = success ? getString(R.string.export_finished, rules) : getString(R.string.export_failed);
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        });
+    }
+    
+    private void showTransferProgress(int titleResId) {
+        dismissTransferProgress();
+        transferProgress = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        transferProgress.setIndeterminate(true);
+        int padding = Math.round(24 * getResources().getDisplayMetrics().density);
+        transferProgress.setPadding(padding, 0, padding, 0);
+        transferDialog = new AlertDialog.Builder(this)
+                .setTitle(titleResId)
+                .setMessage(getString(R.string.transfer_progress, 0))
+                .setView(transferProgress)
+                .setCancelable(false)
+                .show();
+    }
+    
+    // done and total are bytes for imports and rules for exports
+    private void updateTransferProgress(int rules, long done, long total) {
+        if (transferDialog == null) {
+            return;
+        }
+        if (total > 0) {
+            transferProgress.setIndeterminate(false);
+            transferProgress.setMax(1000);
+            transferProgress.setProgress((int) Math.min(1000, done * 1000 / total));
+        }
+        transferDialog.setMessage(getString(R.string.transfer_progress, rules));
+    }
+    
+    private void dismissTransferProgress() {
+        if (transferDialog != null) {
+            transferDialog.dismiss();
+            transferDialog = null;
+            transferProgress = null;
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        dismissTransferProgress();
+        super.onDestroy();
+    }
+    
+    private void showWriteResult(boolean success, int messageResId) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        Toast.makeText(this, success ? messageResId : R.string.rule_save_failed, Toast.LENGTH_SHORT).show();
+    }
+    
+    // Cold start timing, measured from process start. "Fully drawn" is when the
+    // rule count has been loaded, which also lines up with ActivityManager's
+    // "Fully drawn" logcat line and am start -W.
+    private void logFirstFrame() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.d(TAG, "Time to first frame: " + (SystemClock.uptimeMillis() - Process.getStartUptimeMillis()) + "ms");
+                return true;
+            }
+        });
+    }
+    
+    private void reportStartupComplete() {
+        if (reportedFullyDrawn) {
+            return;
+        }
+        reportedFullyDrawn = true;
+        reportFullyDrawn();
+        Log.d(TAG, "Time to fully drawn: " + (SystemClock.uptimeMillis() - Process.getStartUptimeMillis()) + "ms");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.smsforwarder;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+@Entity(tableName = "outbound_messages",
+        indices = {@Index(value = {"status", "nextAttemptAt"})})
+public class OutboundMessage {
+    
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_SENDING = 1;
+    public static final int STATUS_SENT = 2;
+    public static final int STATUS_DELIVERED = 3;
+    public static final int STATUS_FAILED = 4;
+    
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+    
+    public String destination;
+    public String body;
+    public int status;
+    public int attempts;
+    public long createdAt;
+    public long nextAttemptAt;
+    public long updatedAt;
+    public int lastResultCode;
+    // Preferred SIM slot, SendLanes.ANY_SLOT for none
+    @ColumnInfo(defaultValue = "-1")
+    public int simSlot = SendLanes.ANY_SLOT;
+    // Parts of the current attempt the radio has reported sent
+    @ColumnInfo(defaultValue = "0")
+    public int partsAcked;
+    
+    public OutboundMessage() {
+    }
+    
+    @androidx.room.Ignore
+    public OutboundMessage(String destination, String body, int simSlot, long now) {
+        this.destination = destination;
+        this.body = body;
+        this.simSlot = simSlot;
+        this.status = STATUS_PENDING;
+        this.createdAt = now;
+        this.nextAttemptAt = now;
+        this.updatedAt = now;
+    }
+    
+    @Override
+    public String toString() {
+        return "OutboundMessage{" +
+                "id=" + id +
+                ", destination='" + destination + '\'' +
+                ", status=" + status +
+                ", attempts=" + attempts +
+                ", nextAttemptAt=" + nextAttemptAt +
+                ", lastResultCode=" + lastResultCode +
+                ", simSlot=" + simSlot +
+                ", partsAcked=" + partsAcked +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.smsforwarder;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface OutboundMessageDao {
+    
+    @Insert
+    long insert(OutboundMessage message);
+    
+    @Query("SELECT * FROM outbound_messages WHERE id = :id")
+    OutboundMessage getById(long id);
+    
+    // skipSlots are the SIM slots whose rows cannot be sent right now
+    @Query("SELECT * FROM outbound_messages WHERE status = 0 AND nextAttemptAt <= :now " +
+            "AND simSlot NOT IN (:skipSlots) ORDER BY nextAttemptAt, id LIMIT :limit")
+    List<OutboundMessage> getDue(long now, List<Integer> skipSlots, int limit);
+    
+    @Query("SELECT MIN(nextAttemptAt) FROM outbound_messages WHERE status = 0")
+    Long getNextAttemptAt();
+    
+    @Query("UPDATE outbound_messages SET status = 1, attempts = attempts + 1, partsAcked = 0, " +
+            "updatedAt = :now WHERE id IN (:ids)")
+    void markSending(List<Long> ids, long now);
+    
+    // Returns 0 if the row was no longer SENDING, e.g. already marked sent
+    @Query("UPDATE outbound_messages SET status = 2, lastResultCode = 0, updatedAt = :now " +
+            "WHERE id = :id AND status = 1")
+    int markSent(long id, long now);
+    
+    @Query("UPDATE outbound_messages SET partsAcked = partsAcked + 1, updatedAt = :now " +
+            "WHERE id = :id AND status = 1")
+    void ackPart(long id, long now);
+    
+    @Query("UPDATE outbound_messages SET status = 2, lastResultCode = 0, updatedAt = :now " +
+            "WHERE id = :id AND status = 1 AND partsAcked >= :parts")
+    int markSentIfAcked(long id, int parts, long now);
+    
+    @Query("UPDATE outbound_messages SET status = 3, lastResultCode = :deliveryStatus, updatedAt = :now " +
+            "WHERE id = :id")
+    void markDelivered(long id, int deliveryStatus, long now);
+    
+    @Query("UPDATE outbound_messages SET status = 0, nextAttemptAt = :nextAttemptAt, " +
+            "lastResultCode = :resultCode, updatedAt = :now WHERE id = :id")
+    void scheduleRetry(long id, long nextAttemptAt, int resultCode, long now);
+    
+    @Query("UPDATE outbound_messages SET status = 4, lastResultCode = :resultCode, updatedAt = :now " +
+            "WHERE id = :id")
+    void markFailed(long id, int resultCode, long now);
+    
+    // Messages whose send result never came back, e.g. because the process died
+    @Query("UPDATE outbound_messages SET status = 0, nextAttemptAt = :now, updatedAt = :now " +
+            "WHERE status = 1 AND updatedAt < :staleBefore")
+    int requeueStale(long staleBefore, long now);
+    
+    @Query("DELETE FROM outbound_messages WHERE status >= 2 AND updatedAt < :before")
+    int purgeFinished(long before);
+    
+    @Query("SELECT COUNT(*) FROM outbound_messages WHERE status <= 1")
+    int getPendingCount();
+}
\ No newline at end of file
@@ -0,0 +1,486 @@
+package com.smsforwarder;
+
+import android.Manifest;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.telephony.SmsManager;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Write-ahead queue for outgoing SMS. A forward is stored in outbound_messages
+// before anything is sent, a single worker thread drains due rows through
+// SmsManager, and the sent/delivery broadcasts are collected by
+// SmsResultReceiver and written back in batches, one transaction per batch.
+// Sent results of multi-part messages are also counted per part in the row,
+// so a message whose parts were reported across a process restart is still
+// marked sent rather than requeued as stale and sent twice.
+// Each drain spreads the due rows over the active SIM subscriptions through
+// SendLanes; rows a rate-limited lane cannot take yet stay pending, and the
+// drain carries on with the rows for the other lanes.
+public final class OutboundQueue {
+    
+    private static final String TAG = "OutboundQueue";
+    
+    static final String ACTION_SENT = "com.smsforwarder.action.SMS_SENT";
+    static final String ACTION_DELIVERED = "com.smsforwarder.action.SMS_DELIVERED";
+    static final String EXTRA_ID = "outbound_id";
+    static final String EXTRA_PART = "part";
+    static final String EXTRA_PARTS = "parts";
+    
+    private static final int DRAIN_BATCH_SIZE = 20;
+    private static final int ACK_BATCH_SIZE = 32;
+    private static final long ACK_DELAY_MS = 500;
+    private static final long SENDING_TIMEOUT_MS = 2 * 60 * 1000;
+    private static final long MAINTENANCE_INTERVAL_MS = 60 * 1000;
+    private static final long RETENTION_MS = 24 * 60 * 60 * 1000;
+    
+    // Exponential backoff with jitter for transient failures
+    private static final long RETRY_BASE_DELAY_MS = 5000;
+    private static final long RETRY_MAX_DELAY_MS = 10 * 60 * 1000;
+    private static final int MAX_ATTEMPTS = 6;
+    
+    // Per-SIM send rate, in segments
+    private static final String PREFS_NAME = "SmsForwarderPrefs";
+    private static final String KEY_SIM_SEGMENTS_PER_MINUTE = "sim_segments_per_minute";
+    private static final String KEY_SIM_BURST_SEGMENTS = "sim_burst_segments";
+    private static final int DEFAULT_SIM_SEGMENTS_PER_MINUTE = 60;
+    private static final int DEFAULT_SIM_BURST_SEGMENTS = 30;
+    
+    private static OutboundQueue instance;
+    
+    private final Context appContext;
+    private final AppDatabase database;
+    private final OutboundMessageDao dao;
+    private final ScheduledExecutorService worker;
+    private final Random jitter = new Random();
+    private final ForwardingMetrics metrics = ForwardingMetrics.global();
+    private final SendLanes lanes;
+    
+    private final Map<Long, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final List<Result> results = new ArrayList<>();
+    private boolean ackScheduled;
+    private ScheduledFuture<?> nextDrain;
+    private long nextDrainAt = Long.MAX_VALUE;
+    private long lastMaintenance;
+    
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    
+    private OutboundQueue(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.database = AppDatabase.getInstance(appContext);
+        this.dao = database.outboundMessageDao();
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "sms-outbound"));
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.lanes = new SendLanes(
+                Math.max(1, prefs.getInt(KEY_SIM_BURST_SEGMENTS, DEFAULT_SIM_BURST_SEGMENTS)),
+                Math.max(1, prefs.getInt(KEY_SIM_SEGMENTS_PER_MINUTE, DEFAULT_SIM_SEGMENTS_PER_MINUTE)) / 60.0,
+                System.nanoTime());
+        scheduleDrain(0);
+    }
+    
+    public static synchronized OutboundQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new OutboundQueue(context);
+        }
+        return instance;
+    }
+    
+    // Persists the message, then wakes the worker. Must not be called on the main thread.
+    public void enqueue(String destination, String body, int simSlot) {
+        dao.insert(new OutboundMessage(destination, body, simSlot, System.currentTimeMillis()));
+        enqueued.incrementAndGet();
+        scheduleDrain(0);
+    }
+    
+    void onSendResult(long id, int part, int parts, int resultCode) {
+        boolean ok = resultCode == SmsResultReceiver.RESULT_OK;
+        if (ok && parts > 1) {
+            addResult(Result.partSent(id, parts));
+        }
+        InFlight message = inFlight.get(id);
+        if (message == null) {
+            // Sent before a process restart. A failure or a single part is
+            // conclusive; the row of a multi-part message turns SENT once
+            // partsAcked reaches its part count.
+            if (!ok) {
+                countSendResult(resultCode);
+                addResult(new Result(id, false, resultCode));
+            } else if (parts == 1) {
+                addResult(new Result(id, false, resultCode));
+            }
+            return;
+        }
+        
+        int finalCode;
+        synchronized (message) {
+            message.received++;
+            if (resultCode != SmsResultReceiver.RESULT_OK && message.failureCode == SmsResultReceiver.RESULT_OK) {
+                message.failureCode = resultCode;
+            }
+            if (message.received < message.parts) {
+                return;
+            }
+            finalCode = message.failureCode;
+        }
+        inFlight.remove(id);
+        metrics.recordSince(ForwardingMetrics.Stage.SEND_RESULT, message.sentAtNanos);
+        onLaneResult(message.lane, finalCode);
+        if (finalCode != SmsResultReceiver.RESULT_OK) {
+            // Successes are counted when the row turns SENT, see apply
+            countSendResult(finalCode);
+        }
+        addResult(new Result(id, false, finalCode));
+    }
+    
+    private void onLaneResult(SendLanes.Lane lane, int resultCode) {
+        boolean ok = resultCode == SmsResultReceiver.RESULT_OK;
+        // A PDU the radio cannot encode fails on every SIM
+        boolean laneFault = resultCode != SmsManager.RESULT_ERROR_NULL_PDU;
+        if (lanes.onResult(lane, ok, laneFault, System.nanoTime())) {
+            Log.w(TAG, "SIM slot " + lane.slot + " keeps failing, sending on the others for now: " + lanes.getStats());
+        }
+    }
+    
+    private void countSendResult(int resultCode) {
+        metrics.increment(resultCode == SmsResultReceiver.RESULT_OK
+                ? ForwardingMetrics.Counter.SEND_OK : ForwardingMetrics.Counter.SEND_FAILED);
+    }
+    
+    void onDeliveryResult(long id, int deliveryStatus) {
+        addResult(new Result(id, true, deliveryStatus));
+    }
+    
+    public String getStats() {
+        return "enqueued=" + enqueued.get() +
+                ", sent=" + sent.get() +
+                ", delivered=" + delivered.get() +
+                ", retried=" + retried.get() +
+                ", failed=" + failed.get() +
+                ", inFlight=" + inFlight.size() +
+                ", lanes: " + lanes.getStats();
+    }
+    
+    private void addResult(Result result) {
+        synchronized (results) {
+            results.add(result);
+            if (results.size() >= ACK_BATCH_SIZE) {
+                ackScheduled = true;
+                worker.execute(this::flushResults);
+            } else if (!ackScheduled) {
+                ackScheduled = true;
+                worker.schedule(this::flushResults, ACK_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    private synchronized void scheduleDrain(long delayMillis) {
+        long at = System.currentTimeMillis() + delayMillis;
+        if (nextDrain != null && !nextDrain.isDone() && nextDrainAt <= at) {
+            return;
+        }
+        if (nextDrain != null) {
+            nextDrain.cancel(false);
+        }
+        nextDrainAt = at;
+        nextDrain = worker.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void drain() {
+        synchronized (this) {
+            nextDrain = null;
+            nextDrainAt = Long.MAX_VALUE;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastMaintenance >= MAINTENANCE_INTERVAL_MS) {
+                lastMaintenance = now;
+                // SIMs come and go with hot swaps and eSIM profile switches
+                refreshLanes();
+                int requeued = dao.requeueStale(now - SENDING_TIMEOUT_MS, now);
+                int purged = dao.purgeFinished(now - RETENTION_MS);
+                if (requeued > 0 || purged > 0) {
+                    Log.d(TAG, "Requeued " + requeued + " stale and purged " + purged + " finished messages");
+                }
+            }
+            
+            // Slots whose next row found no tokens. Their later rows stay
+            // pending, in order, and the query looks past them so rows pinned
+            // to a throttled SIM cannot fill the batch and idle the other lanes.
+            List<Integer> waitingSlots = new ArrayList<>();
+            long laneWaitNanos = -1;
+            boolean more;
+            while (true) {
+                List<OutboundMessage> due = dao.getDue(now, waitingSlots, DRAIN_BATCH_SIZE);
+                int waitingBefore = waitingSlots.size();
+                List<OutboundMessage> assigned = new ArrayList<>(due.size());
+                List<SendLanes.Lane> assignedLanes = new ArrayList<>(due.size());
+                for (OutboundMessage message : due) {
+                    if (waitingSlots.contains(message.simSlot)) {
+                        continue;
+                    }
+                    int segments = SmsSegments.count(message.body != null ? message.body : "");
+                    long nowNanos = System.nanoTime();
+                    SendLanes.Lane lane = lanes.acquire(message.simSlot, segments, nowNanos);
+                    if (lane == null) {
+                        // Left pending for the next drain
+                        long wait = lanes.nanosUntilAvailable(message.simSlot, segments, nowNanos);
+                        laneWaitNanos = laneWaitNanos < 0 ? wait : Math.min(laneWaitNanos, wait);
+                        waitingSlots.add(message.simSlot);
+                        continue;
+                    }
+                    assigned.add(message);
+                    assignedLanes.add(lane);
+                }
+                if (!assigned.isEmpty()) {
+                    List<Long> ids = new ArrayList<>(assigned.size());
+                    for (OutboundMessage message : assigned) {
+                        ids.add(message.id);
+                    }
+                    dao.markSending(ids, now);
+                    for (int i = 0; i < assigned.size(); i++) {
+                        send(assigned.get(i), assignedLanes.get(i));
+                    }
+                }
+                more = due.size() == DRAIN_BATCH_SIZE;
+                // A full batch that ran another slot dry may hide rows for
+                // the lanes that still have tokens
+                if (!more || waitingSlots.size() == waitingBefore) {
+                    break;
+                }
+            }
+            
+            if (more) {
+                scheduleDrain(0);
+            } else if (laneWaitNanos >= 0) {
+                scheduleDrain(Math.max(1, TimeUnit.NANOSECONDS.toMillis(laneWaitNanos)));
+            } else {
+                Long nextAttemptAt = dao.getNextAttemptAt();
+                if (nextAttemptAt != null) {
+                    scheduleDrain(Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error draining outbound queue", e);
+            scheduleDrain(RETRY_BASE_DELAY_MS);
+        }
+    }
+    
+    private void send(OutboundMessage message, SendLanes.Lane lane) {
+        long sendStart = System.nanoTime();
+        try {
+            SmsManager smsManager = lane.subscriptionId == SendLanes.DEFAULT_SUBSCRIPTION
+                    ? SmsManager.getDefault() : SmsManager.getSmsManagerForSubscriptionId(lane.subscriptionId);
+            ArrayList<String> parts = smsManager.divideMessage(message.body);
+            int count = parts.size();
+            
+            ArrayList<PendingIntent> sentIntents = new ArrayList<>(count);
+            ArrayList<PendingIntent> deliveryIntents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                sentIntents.add(resultIntent(ACTION_SENT, message.id, i, count));
+                // One delivery report for the whole message is enough
+                deliveryIntents.add(i == count - 1 ? resultIntent(ACTION_DELIVERED, message.id, i, count) : null);
+            }
+            
+            inFlight.put(message.id, new InFlight(count, sendStart, lane));
+            if (count > 1) {
+                smsManager.sendMultipartTextMessage(message.destination, null, parts, sentIntents, deliveryIntents);
+            } else {
+                smsManager.sendTextMessage(message.destination, null, parts.get(0),
+                        sentIntents.get(0), deliveryIntents.get(0));
+            }
+            metrics.recordSince(ForwardingMetrics.Stage.SEND, sendStart);
+            Log.d(TAG, "Sending " + message + " on SIM slot " + lane.slot);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to send " + message, e);
+            inFlight.remove(message.id);
+            int code = e instanceof IllegalArgumentException
+                    ? SmsManager.RESULT_ERROR_NULL_PDU : SmsManager.RESULT_ERROR_GENERIC_FAILURE;
+            onLaneResult(lane, code);
+            countSendResult(code);
+            addResult(new Result(message.id, false, code));
+        }
+    }
+    
+    // One lane per active subscription; without READ_PHONE_STATE, or on a
+    // single-SIM phone, everything goes through the default SmsManager
+    private void refreshLanes() {
+        List<SubscriptionInfo> subscriptions = null;
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.READ_PHONE_STATE)
+                == PackageManager.PERMISSION_GRANTED) {
+            try {
+                SubscriptionManager subscriptionManager = appContext.getSystemService(SubscriptionManager.class);
+                if (subscriptionManager != null) {
+                    subscriptions = subscriptionManager.getActiveSubscriptionInfoList();
+                }
+            } catch (SecurityException e) {
+                Log.w(TAG, "Cannot list SIM subscriptions", e);
+            }
+        }
+        
+        int count = subscriptions != null && subscriptions.size() > 1 ? subscriptions.size() : 0;
+        int[] slots = new int[count];
+        int[] subscriptionIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = subscriptions.get(i).getSimSlotIndex();
+            subscriptionIds[i] = subscriptions.get(i).getSubscriptionId();
+        }
+        lanes.setSubscriptions(slots, subscriptionIds, System.nanoTime());
+    }
+    
+    private PendingIntent resultIntent(String action, long id, int part, int parts) {
+        Intent intent = new Intent(appContext, SmsResultReceiver.class);
+        intent.setAction(action);
+        // Unique data so every part gets its own PendingIntent
+        intent.setData(Uri.parse("smsforwarder://outbound/" + id + "/" + part));
+        intent.putExtra(EXTRA_ID, id);
+        intent.putExtra(EXTRA_PART, part);
+        intent.putExtra(EXTRA_PARTS, parts);
+        return PendingIntent.getBroadcast(appContext, 0, intent,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_ONE_SHOT);
+    }
+    
+    private void flushResults() {
+        final List<Result> batch;
+        synchronized (results) {
+            batch = new ArrayList<>(results);
+            results.clear();
+            ackScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        
+        try {
+            final long now = System.currentTimeMillis();
+            database.runInTransaction(() -> {
+                for (Result result : batch) {
+                    apply(result, now);
+                }
+            });
+            scheduleDrain(0);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to record " + batch.size() + " send results", e);
+        }
+    }
+    
+    private void apply(Result result, long now) {
+        if (result.delivery) {
+            dao.markDelivered(result.id, result.code, now);
+            delivered.incrementAndGet();
+            return;
+        }
+        if (result.parts > 0) {
+            dao.ackPart(result.id, now);
+            if (dao.markSentIfAcked(result.id, result.parts, now) > 0) {
+                onSent();
+            }
+            return;
+        }
+        if (result.code == SmsResultReceiver.RESULT_OK) {
+            // Already SENT if the last part's acknowledgement got there first
+            if (dao.markSent(result.id, now) > 0) {
+                onSent();
+            }
+            return;
+        }
+        
+        OutboundMessage message = dao.getById(result.id);
+        if (message == null) {
+            return;
+        }
+        if (isPermanentFailure(result.code) || message.attempts >= MAX_ATTEMPTS) {
+            dao.markFailed(result.id, result.code, now);
+            failed.incrementAndGet();
+            ForwardingStatus.getInstance().onFailed();
+            Log.w(TAG, "Giving up on " + message + " with result " + result.code);
+        } else {
+            dao.scheduleRetry(result.id, now + retryDelay(message.attempts), result.code, now);
+            retried.incrementAndGet();
+        }
+    }
+    
+    private void onSent() {
+        sent.incrementAndGet();
+        countSendResult(SmsResultReceiver.RESULT_OK);
+        ForwardingStatus.getInstance().onForwarded();
+    }
+    
+    // Equal jitter: half the exponential delay is fixed, the other half random
+    private long retryDelay(int attempts) {
+        long delay = RETRY_BASE_DELAY_MS << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, RETRY_MAX_DELAY_MS);
+        long half = delay / 2;
+        return half + (long) (jitter.nextDouble() * half);
+    }
+    
+    private static boolean isPermanentFailure(int resultCode) {
+        switch (resultCode) {
+            case SmsManager.RESULT_ERROR_NULL_PDU:
+            case SmsManager.RESULT_ERROR_FDN_CHECK_FAILURE:
+            case SmsManager.RESULT_ERROR_SHORT_CODE_NOT_ALLOWED:
+            case SmsManager.RESULT_ERROR_SHORT_CODE_NEVER_ALLOWED:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static final class InFlight {
+        final int parts;
+        final long sentAtNanos;
+        final SendLanes.Lane lane;
+        int received;
+        int failureCode = SmsResultReceiver.RESULT_OK;
+        
+        InFlight(int parts, long sentAtNanos, SendLanes.Lane lane) {
+            this.parts = parts;
+            this.sentAtNanos = sentAtNanos;
+            this.lane = lane;
+        }
+    }
+    
+    private static final class Result {
+        final long id;
+        final boolean delivery;
+        final int code;
+        // For one acknowledged part of a multi-part message, its part count
+        final int parts;
+        
+        Result(long id, boolean delivery, int code) {
+            this(id, delivery, code, 0);
+        }
+        
+        private Result(long id, boolean delivery, int code, int parts) {
+            this.id = id;
+            this.delivery = delivery;
+            this.code = code;
+            this.parts = parts;
+        }
+        
+        static Result partSent(long id, int parts) {
+            return new Result(id, false, SmsResultReceiver.RESULT_OK, parts);
+        }
+    }
+}
\ No newline at end of file
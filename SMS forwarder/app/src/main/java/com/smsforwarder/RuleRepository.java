@@ -0,0 +1,170 @@
+package com.smsforwarder;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+// Asynchronous access to forwarding rules for the UI. Reads are observable and
+// run on Room's query executor, writes run on AppExecutors.diskIO() and report
+// back on the main thread. Nothing here touches SQLite on the calling thread.
+public final class RuleRepository {
+    
+    private static final String TAG = "RuleRepository";
+    private static RuleRepository instance;
+    
+    private final Context appContext;
+    private final AppDatabase database;
+    private final ForwardingRuleDao dao;
+    private final Executor diskIO;
+    private final Executor mainThread;
+    
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+    
+    // rules is the number imported or exported, also on failure
+    public interface TransferCallback {
+        void onComplete(int rules, boolean success);
+    }
+    
+    private RuleRepository(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.database = AppDatabase.getInstance(appContext);
+        this.dao = database.forwardingRuleDao();
+        this.diskIO = AppExecutors.getInstance().diskIO();
+        this.mainThread = AppExecutors.getInstance().mainThread();
+    }
+    
+    public static synchronized RuleRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new RuleRepository(context);
+        }
+        return instance;
+    }
+    
+    // Opens the database (and runs any pending migration) in the background so
+    // the first query from the UI does not have to wait for it.
+    public void warmUp() {
+        diskIO.execute(() -> {
+            long start = System.currentTimeMillis();
+            database.getOpenHelper().getWritableDatabase();
+            Log.d(TAG, "Database opened in " + (System.currentTimeMillis() - start) + "ms");
+        });
+    }
+    
+    public PagingSource<Integer, ForwardingRule> getRulesPaged() {
+        return dao.getRulesPaged();
+    }
+    
+    public LiveData<Integer> observeRuleCount() {
+        return dao.observeRuleCount();
+    }
+    
+    public void insert(ForwardingRule rule, Callback callback) {
+        write(() -> dao.insertRule(rule), callback);
+    }
+    
+    public void update(ForwardingRule rule, Callback callback) {
+        write(() -> dao.updateRule(rule), callback);
+    }
+    
+    public void delete(ForwardingRule rule, Callback callback) {
+        write(() -> dao.deleteRule(rule), callback);
+    }
+    
+    // Progress and completion are reported on the main thread
+    public void importRules(Uri uri, RuleTransfer.Format format,
+                            RuleTransfer.ProgressListener listener, TransferCallback callback) {
+        diskIO.execute(() -> {
+            final int[] progress = new int[1];
+            RuleTransfer.ProgressListener mainListener = (rules, bytesRead, totalBytes) -> {
+                progress[0] = rules;
+                if (listener != null) {
+                    mainThread.execute(() -> listener.onProgress(rules, bytesRead, totalBytes));
+                }
+            };
+            boolean success;
+            try (InputStream in = appContext.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new FileNotFoundException(uri.toString());
+                }
+                RuleTransfer.importRules(dao, in, format, querySize(uri), mainListener);
+                success = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error importing rules from " + uri, e);
+                success = false;
+            }
+            RuleSnapshotCache.getInstance(appContext).invalidate();
+            finishTransfer(callback, progress[0], success);
+        });
+    }
+    
+    public void exportRules(Uri uri, RuleTransfer.Format format,
+                            RuleTransfer.ProgressListener listener, TransferCallback callback) {
+        diskIO.execute(() -> {
+            int exported = 0;
+            boolean success;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(uri, "wt")) {
+                if (out == null) {
+                    throw new FileNotFoundException(uri.toString());
+                }
+                exported = RuleTransfer.exportRules(dao, out, format, (rules, done, total) -> {
+                    if (listener != null) {
+                        mainThread.execute(() -> listener.onProgress(rules, done, total));
+                    }
+                });
+                success = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error exporting rules to " + uri, e);
+                success = false;
+            }
+            finishTransfer(callback, exported, success);
+        });
+    }
+    
+    private void finishTransfer(TransferCallback callback, int rules, boolean success) {
+        if (callback != null) {
+            mainThread.execute(() -> callback.onComplete(rules, success));
+        }
+    }
+    
+    private long querySize(Uri uri) {
+        try (Cursor cursor = appContext.getContentResolver().query(uri,
+                new String[] {OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not get size of " + uri, e);
+        }
+        return -1;
+    }
+    
+    private void write(Runnable operation, Callback callback) {
+        diskIO.execute(() -> {
+            boolean success;
+            try {
+                operation.run();
+                RuleSnapshotCache.getInstance(appContext).invalidate();
+                success = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error writing forwarding rule", e);
+                success = false;
+            }
+            
+            if (callback != null) {
+                final boolean result = success;
+                mainThread.execute(() -> callback.onComplete(result));
+            }
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,211 @@
+package com.smsforwarder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.os.SystemClock;
+import androidx.room.InvalidationTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Process-wide cache of the enabled forwarding rules. Readers on the SMS path
+// get the current RuleSnapshot without touching SQLite; the snapshot is only
+// rebuilt after the forwarding_rules table has changed. Every rebuilt snapshot
+// is also written to a RuleSnapshotFile, which seeds the cache on the next
+// process start before the database has been opened; the seeded snapshot is
+// then checked against the database in the background.
+public final class RuleSnapshotCache {
+    
+    private static final String TAG = "RuleSnapshotCache";
+    private static final String RULES_TABLE = "forwarding_rules";
+    private static final String PREFS_NAME = "SmsForwarderPrefs";
+    // Calling code used for numbers written without one, e.g. "82" for 010-...
+    private static final String KEY_DEFAULT_COUNTRY_CODE = "default_country_code";
+    private static final String SNAPSHOT_FILE_NAME = "rule_snapshot.bin";
+    private static RuleSnapshotCache instance;
+    
+    private final ForwardingRuleDao ruleDao;
+    private final SharedPreferences prefs;
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener;
+    private final File snapshotFile;
+    private final AppExecutors executors;
+    private final AtomicReference<RuleSnapshot> current = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Object rebuildLock = new Object();
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong fileLoads = new AtomicLong();
+    private final AtomicLong fileWrites = new AtomicLong();
+    
+    private RuleSnapshotCache(ForwardingRuleDao ruleDao, SharedPreferences prefs, File snapshotFile) {
+        this.ruleDao = ruleDao;
+        this.prefs = prefs;
+        this.snapshotFile = snapshotFile;
+        this.executors = AppExecutors.getInstance();
+        // Held in a field, SharedPreferences only keeps a weak reference
+        this.prefsListener = (sharedPreferences, key) -> {
+            if (KEY_DEFAULT_COUNTRY_CODE.equals(key)) {
+                invalidate();
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+    
+    public static synchronized RuleSnapshotCache getInstance(Context context) {
+        if (instance == null) {
+            AppDatabase database = AppDatabase.getInstance(context);
+            Context appContext = context.getApplicationContext();
+            final RuleSnapshotCache cache = new RuleSnapshotCache(database.forwardingRuleDao(),
+                    appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    new File(appContext.getNoBackupFilesDir(), SNAPSHOT_FILE_NAME));
+            database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer(RULES_TABLE) {
+                @Override
+                public void onInvalidated(Set<String> tables) {
+                    cache.invalidate();
+                }
+            });
+            cache.loadSnapshotFile();
+            instance = cache;
+        }
+        return instance;
+    }
+    
+    public RuleSnapshot get() {
+        RuleSnapshot snapshot = current.get();
+        if (snapshot != null && snapshot.getGeneration() == generation.get()) {
+            hits.incrementAndGet();
+            return snapshot;
+        }
+        
+        misses.incrementAndGet();
+        synchronized (rebuildLock) {
+            // Another thread may have rebuilt while we waited for the lock
+            long wanted = generation.get();
+            snapshot = current.get();
+            if (snapshot != null && snapshot.getGeneration() == wanted) {
+                return snapshot;
+            }
+            
+            List<ForwardingRule> rules = ruleDao.getAllEnabledRules();
+            snapshot = new RuleSnapshot(wanted, rules, loadNormalizer());
+            current.set(snapshot);
+            rebuilds.incrementAndGet();
+            Log.d(TAG, "Rebuilt rule snapshot with " + rules.size() + " rules, " + getStats());
+            persist(rules, snapshot.getMatcher().getNormalizer().getCountryCode());
+            return snapshot;
+        }
+    }
+    
+    // Seeds the cache from the file written by the previous process. Only a
+    // file for the current schema version and country code is used; whether
+    // it still matches the database is checked on the disk thread, and the
+    // seeded snapshot is replaced if it does not.
+    private void loadSnapshotFile() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        PhoneNumberNormalizer normalizer = loadNormalizer();
+        String countryCode = normalizer.getCountryCode();
+        RuleSnapshotFile file;
+        try {
+            file = RuleSnapshotFile.read(snapshotFile, AppDatabase.VERSION, countryCode);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + snapshotFile, e);
+            file = null;
+        }
+        if (file == null) {
+            Log.d(TAG, "No usable rule snapshot file, rules load on first use");
+            return;
+        }
+        
+        final RuleSnapshot seeded = new RuleSnapshot(generation.get(), file.rules, normalizer);
+        synchronized (rebuildLock) {
+            if (!current.compareAndSet(null, seeded)) {
+                return;
+            }
+        }
+        fileLoads.incrementAndGet();
+        Log.d(TAG, "Loaded " + file.rules.size() + " rules from snapshot file in "
+                + (SystemClock.elapsedRealtimeNanos() - start) / 1000 + "us");
+        
+        final int loadedCrc = file.payloadCrc;
+        executors.diskIO().execute(() -> revalidate(seeded, loadedCrc, countryCode));
+    }
+    
+    private void revalidate(RuleSnapshot seeded, int loadedCrc, String countryCode) {
+        if (current.get() != seeded) {
+            // Already replaced by a rebuild from the database
+            return;
+        }
+        List<ForwardingRule> rules = ruleDao.getAllEnabledRules();
+        if (RuleSnapshotFile.payloadCrc(rules, countryCode) == loadedCrc) {
+            Log.d(TAG, "Rule snapshot file matches the database");
+            return;
+        }
+        Log.d(TAG, "Rule snapshot file is stale, rebuilding");
+        invalidate();
+        get();
+    }
+    
+    // Written on the disk thread; being single-threaded it also keeps the
+    // writes in rebuild order
+    private void persist(final List<ForwardingRule> rules, final String countryCode) {
+        executors.diskIO().execute(() -> {
+            try {
+                RuleSnapshotFile.write(snapshotFile, AppDatabase.VERSION, countryCode, rules);
+                fileWrites.incrementAndGet();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write " + snapshotFile, e);
+            }
+        });
+    }
+    
+    // The normalizer rules are matched with, from the default_country_code preference
+    private PhoneNumberNormalizer loadNormalizer() {
+        String countryCode = prefs.getString(KEY_DEFAULT_COUNTRY_CODE, PhoneNumberNormalizer.DEFAULT_COUNTRY_CODE);
+        try {
+            return new PhoneNumberNormalizer(countryCode);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Ignoring " + KEY_DEFAULT_COUNTRY_CODE + "=" + countryCode, e);
+            return PhoneNumberNormalizer.DEFAULT;
+        }
+    }
+    
+    // Called by Room when the table changes, and directly by our own write paths
+    // so that a read right after a write never sees the old rules.
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+    
+    public long getHitCount() {
+        return hits.get();
+    }
+    
+    public long getMissCount() {
+        return misses.get();
+    }
+    
+    public long getRebuildCount() {
+        return rebuilds.get();
+    }
+    
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+    
+    public String getStats() {
+        return "hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", rebuilds=" + rebuilds.get() +
+                ", invalidations=" + invalidations.get() +
+                ", fileLoads=" + fileLoads.get() +
+                ", fileWrites=" + fileWrites.get();
+    }
+}
\ No newline at end of file
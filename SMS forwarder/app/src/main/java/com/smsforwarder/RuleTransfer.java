@@ -0,0 +1,428 @@
+package com.smsforwarder;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Streaming import and export of forwarding rules as CSV or JSON. Rules are
+// parsed one at a time and inserted in chunks, each chunk in its own
+// transaction, so neither the file nor the rule set is held in memory.
+public final class RuleTransfer {
+    
+    private static final String TAG = "RuleTransfer";
+    
+    static final int CHUNK_SIZE = 1000;
+    
+    static final String FIELD_SENDER = "senderNumber";
+    static final String FIELD_EXACT = "senderExactMatch";
+    static final String FIELD_CONTENT = "messageContent";
+    static final String FIELD_FORWARD_TO = "forwardToNumber";
+    static final String FIELD_ENABLED = "isEnabled";
+    static final String FIELD_MATCH_MODE = "matchMode";
+    static final String FIELD_TEMPLATE = "template";
+    static final String FIELD_COMPACTION = "compaction";
+    static final String FIELD_SIM = "sim";
+    static final String FIELD_TARGET = "target";
+    static final String FIELD_WEBHOOK_URL = "webhookUrl";
+    private static final String[] CSV_COLUMNS = {
+            FIELD_SENDER, FIELD_EXACT, FIELD_CONTENT, FIELD_FORWARD_TO, FIELD_ENABLED, FIELD_MATCH_MODE,
+            FIELD_TEMPLATE, FIELD_COMPACTION, FIELD_SIM, FIELD_TARGET, FIELD_WEBHOOK_URL
+    };
+    
+    public enum Format {
+        CSV("text/csv"),
+        JSON("application/json");
+        
+        public final String mimeType;
+        
+        Format(String mimeType) {
+            this.mimeType = mimeType;
+        }
+        
+        // Picks the format from a MIME type or file name, CSV when neither says JSON
+        public static Format detect(String mimeType, String fileName) {
+            if (mimeType != null && mimeType.contains("json")) {
+                return JSON;
+            }
+            if (fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".json")) {
+                return JSON;
+            }
+            return CSV;
+        }
+    }
+    
+    // Called after every chunk. totalBytes is -1 when the input size is unknown.
+    public interface ProgressListener {
+        void onProgress(int rules, long bytesRead, long totalBytes);
+    }
+    
+    public static final class Result {
+        public final int imported;
+        public final int skipped;
+        
+        Result(int imported, int skipped) {
+            this.imported = imported;
+            this.skipped = skipped;
+        }
+    }
+    
+    private RuleTransfer() {
+    }
+    
+    public static Result importRules(ForwardingRuleDao dao, InputStream in, Format format,
+                                     long totalBytes, ProgressListener listener) throws IOException {
+        CountingInputStream counter = new CountingInputStream(in);
+        Reader reader = new InputStreamReader(counter, StandardCharsets.UTF_8);
+        RuleSource source = format == Format.JSON ? new JsonRuleSource(reader) : new CsvRuleSource(reader);
+        
+        long start = System.currentTimeMillis();
+        List<ForwardingRule> chunk = new ArrayList<>(CHUNK_SIZE);
+        int imported = 0;
+        int skipped = 0;
+        try {
+            ForwardingRule rule;
+            while ((rule = source.next()) != null) {
+                if (!hasDestination(rule) || !hasValidPattern(rule)
+                        || !ForwardTemplate.isValid(rule.template)) {
+                    skipped++;
+                    continue;
+                }
+                chunk.add(rule);
+                if (chunk.size() == CHUNK_SIZE) {
+                    dao.insertRules(chunk);
+                    imported += chunk.size();
+                    chunk.clear();
+                    notifyProgress(listener, imported, counter.count, totalBytes);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                dao.insertRules(chunk);
+                imported += chunk.size();
+            }
+            notifyProgress(listener, imported, counter.count, totalBytes);
+        } finally {
+            source.close();
+        }
+        
+        Log.d(TAG, "Imported " + imported + " rules (" + skipped + " skipped) in " +
+                (System.currentTimeMillis() - start) + "ms");
+        return new Result(imported, skipped);
+    }
+    
+    // Reads the table in id order a chunk at a time and streams it out
+    public static int exportRules(ForwardingRuleDao dao, OutputStream out, Format format,
+                                  ProgressListener listener) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        int total = dao.getRuleCount();
+        int exported = 0;
+        int afterId = 0;
+        
+        JsonWriter json = null;
+        if (format == Format.JSON) {
+            json = new JsonWriter(writer);
+            json.setIndent("  ");
+            json.beginArray();
+        } else {
+            writeCsvRecord(writer, CSV_COLUMNS);
+        }
+        
+        List<ForwardingRule> page;
+        while (!(page = dao.getRulesAfter(afterId, CHUNK_SIZE)).isEmpty()) {
+            for (ForwardingRule rule : page) {
+                if (json != null) {
+                    writeJsonRule(json, rule);
+                } else {
+                    writeCsvRecord(writer, new String[] {
+                            rule.senderNumber,
+                            String.valueOf(rule.senderExactMatch),
+                            rule.messageContent,
+                            rule.forwardToNumber,
+                            String.valueOf(rule.isEnabled),
+                            ForwardingRule.matchModeName(rule.matchMode),
+                            rule.template,
+                            ForwardTemplate.compactionNames(rule.compaction),
+                            ForwardingRule.simSlotName(rule.simSlot),
+                            ForwardingRule.targetTypeName(rule.targetType),
+                            rule.webhookUrl
+                    });
+                }
+            }
+            exported += page.size();
+            afterId = page.get(page.size() - 1).id;
+            notifyProgress(listener, exported, exported, total);
+        }
+        
+        if (json != null) {
+            json.endArray();
+            json.flush();
+        } else {
+            writer.flush();
+        }
+        Log.d(TAG, "Exported " + exported + " rules as " + format);
+        return exported;
+    }
+    
+    private static void notifyProgress(ProgressListener listener, int rules, long done, long total) {
+        if (listener != null) {
+            listener.onProgress(rules, done, total);
+        }
+    }
+    
+    private static void writeCsvRecord(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            CsvParser.appendField(writer, fields[i]);
+        }
+        writer.write("\r\n");
+    }
+    
+    private static void writeJsonRule(JsonWriter json, ForwardingRule rule) throws IOException {
+        json.beginObject();
+        json.name(FIELD_SENDER).value(rule.senderNumber);
+        json.name(FIELD_EXACT).value(rule.senderExactMatch);
+        json.name(FIELD_CONTENT).value(rule.messageContent);
+        json.name(FIELD_FORWARD_TO).value(rule.forwardToNumber);
+        json.name(FIELD_ENABLED).value(rule.isEnabled);
+        json.name(FIELD_MATCH_MODE).value(ForwardingRule.matchModeName(rule.matchMode));
+        json.name(FIELD_TEMPLATE).value(rule.template);
+        json.name(FIELD_COMPACTION).value(ForwardTemplate.compactionNames(rule.compaction));
+        json.name(FIELD_SIM).value(ForwardingRule.simSlotName(rule.simSlot));
+        json.name(FIELD_TARGET).value(ForwardingRule.targetTypeName(rule.targetType));
+        json.name(FIELD_WEBHOOK_URL).value(rule.webhookUrl);
+        json.endObject();
+    }
+    
+    static boolean parseBoolean(String value, boolean defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        return v.equals("true") || v.equals("1") || v.equals("yes") || v.equals("y");
+    }
+    
+    private interface RuleSource {
+        // Returns null at the end of the input
+        ForwardingRule next() throws IOException;
+        
+        void close() throws IOException;
+    }
+    
+    // Columns are taken from the header row when there is one, otherwise they
+    // are expected in CSV_COLUMNS order
+    private static final class CsvRuleSource implements RuleSource {
+        private final Reader reader;
+        private final CsvParser parser;
+        private final Map<String, Integer> columns = new HashMap<>();
+        private boolean started;
+        
+        CsvRuleSource(Reader reader) {
+            this.reader = reader;
+            this.parser = new CsvParser(reader);
+            for (int i = 0; i < CSV_COLUMNS.length; i++) {
+                columns.put(CSV_COLUMNS[i], i);
+            }
+        }
+        
+        @Override
+        public ForwardingRule next() throws IOException {
+            List<String> record = parser.next();
+            if (!started && record != null) {
+                started = true;
+                if (!record.isEmpty() && FIELD_SENDER.equalsIgnoreCase(record.get(0).trim())) {
+                    columns.clear();
+                    for (int i = 0; i < record.size(); i++) {
+                        for (String column : CSV_COLUMNS) {
+                            if (column.equalsIgnoreCase(record.get(i).trim())) {
+                                columns.put(column, i);
+                            }
+                        }
+                    }
+                    record = parser.next();
+                }
+            }
+            if (record == null) {
+                return null;
+            }
+            
+            ForwardingRule rule = new ForwardingRule();
+            rule.senderNumber = trimmed(field(record, FIELD_SENDER));
+            rule.senderExactMatch = parseBoolean(field(record, FIELD_EXACT), false);
+            rule.messageContent = trimmed(field(record, FIELD_CONTENT));
+            rule.forwardToNumber = trimmed(field(record, FIELD_FORWARD_TO));
+            rule.isEnabled = parseBoolean(field(record, FIELD_ENABLED), true);
+            rule.matchMode = ForwardingRule.parseMatchMode(field(record, FIELD_MATCH_MODE));
+            rule.template = emptyToNull(field(record, FIELD_TEMPLATE));
+            rule.compaction = ForwardTemplate.parseCompaction(field(record, FIELD_COMPACTION));
+            rule.simSlot = ForwardingRule.parseSimSlot(field(record, FIELD_SIM));
+            rule.targetType = ForwardingRule.parseTargetType(field(record, FIELD_TARGET));
+            rule.webhookUrl = trimmed(field(record, FIELD_WEBHOOK_URL));
+            return rule;
+        }
+        
+        private String field(List<String> record, String column) {
+            Integer index = columns.get(column);
+            return index != null && index < record.size() ? record.get(index) : null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+    
+    // Expects a top-level array of rule objects; unknown names are ignored
+    private static final class JsonRuleSource implements RuleSource {
+        private final JsonReader reader;
+        private boolean started;
+        
+        JsonRuleSource(Reader reader) {
+            this.reader = new JsonReader(reader);
+        }
+        
+        @Override
+        public ForwardingRule next() throws IOException {
+            if (!started) {
+                started = true;
+                reader.beginArray();
+            }
+            if (!reader.hasNext()) {
+                reader.endArray();
+                return null;
+            }
+            
+            ForwardingRule rule = new ForwardingRule();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case FIELD_SENDER:
+                        rule.senderNumber = trimmed(reader.nextString());
+                        break;
+                    case FIELD_EXACT:
+                        rule.senderExactMatch = nextBoolean(false);
+                        break;
+                    case FIELD_CONTENT:
+                        rule.messageContent = trimmed(reader.nextString());
+                        break;
+                    case FIELD_FORWARD_TO:
+                        rule.forwardToNumber = trimmed(reader.nextString());
+                        break;
+                    case FIELD_ENABLED:
+                        rule.isEnabled = nextBoolean(true);
+                        break;
+                    case FIELD_MATCH_MODE:
+                        rule.matchMode = ForwardingRule.parseMatchMode(reader.nextString());
+                        break;
+                    case FIELD_TEMPLATE:
+                        rule.template = emptyToNull(reader.nextString());
+                        break;
+                    case FIELD_COMPACTION:
+                        rule.compaction = ForwardTemplate.parseCompaction(reader.nextString());
+                        break;
+                    case FIELD_SIM:
+                        rule.simSlot = ForwardingRule.parseSimSlot(reader.nextString());
+                        break;
+                    case FIELD_TARGET:
+                        rule.targetType = ForwardingRule.parseTargetType(reader.nextString());
+                        break;
+                    case FIELD_WEBHOOK_URL:
+                        rule.webhookUrl = trimmed(reader.nextString());
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            return rule;
+        }
+        
+        // Accepts true/false as well as the strings the CSV format uses
+        private boolean nextBoolean(boolean defaultValue) throws IOException {
+            if (reader.peek() == JsonToken.BOOLEAN) {
+                return reader.nextBoolean();
+            }
+            return parseBoolean(reader.nextString(), defaultValue);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+    
+    private static boolean hasDestination(ForwardingRule rule) {
+        if (rule.isWebhook()) {
+            return ForwardingRule.isValidWebhookUrl(rule.webhookUrl);
+        }
+        return rule.forwardToNumber != null && !rule.forwardToNumber.trim().isEmpty();
+    }
+    
+    // A regex rule needs a pattern that compiles; blank content would reach
+    // PatternCache as null
+    private static boolean hasValidPattern(ForwardingRule rule) {
+        if (!rule.isRegex()) {
+            return true;
+        }
+        return !CaseFolding.isBlank(rule.messageContent)
+                && PatternCache.shared().get(rule.messageContent) != null;
+    }
+    
+    private static String trimmed(String value) {
+        return value != null ? value.trim() : null;
+    }
+    
+    // Templates keep their whitespace, it is part of the forwarded text
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+    
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
\ No newline at end of file
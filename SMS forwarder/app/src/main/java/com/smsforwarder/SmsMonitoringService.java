@@ -5,12 +5,21 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.IBinder;
+import android.text.format.DateFormat;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
 
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
 public class SmsMonitoringService extends Service {
     
     private static final String TAG = "SmsMonitoringService";
@@ -21,6 +30,10 @@ public class SmsMonitoringService extends Service {
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
+        // Started at boot, so load the rules now rather than on the first SMS;
+        // on db-io, as seeding the cache reads the snapshot file
+        final Context appContext = getApplicationContext();
+        AppExecutors.getInstance().diskIO().execute(() -> RuleSnapshotCache.getInstance(appContext).get());
         Log.d(TAG, "SMS Monitoring Service created");
     }
     
@@ -29,8 +42,10 @@ public class SmsMonitoringService extends Service {
         Log.d(TAG, "SMS Monitoring Service started");
         
         // Create and show persistent notification
-        Notification notification = createNotification();
+        Notification notification = createNotification(getString(R.string.monitoring_service_notification));
         startForeground(NOTIFICATION_ID, notification);
+        // Replaces the text above with forwarding totals once there are any
+        ForwardingStatus.getInstance().setListener(this::updateNotification);
         
         // Return START_STICKY to restart service if killed
         return START_STICKY;
@@ -41,8 +56,38 @@ public class SmsMonitoringService extends Service {
         return null;
     }
     
+    // adb shell dumpsys activity service com.smsforwarder/.SmsMonitoringService [--json] [--reset]
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        List<String> options = args != null ? Arrays.asList(args) : Arrays.<String>asList();
+        ForwardingMetrics metrics = ForwardingMetrics.global();
+        
+        if (options.contains("--json")) {
+            try {
+                metrics.writeJson(writer);
+                writer.println();
+            } catch (IOException e) {
+                writer.println("Failed to write metrics: " + e);
+            }
+        } else {
+            metrics.dump(writer);
+            writer.println("Rule cache: " + RuleSnapshotCache.getInstance(this).getStats());
+            writer.println("Outbound queue: " + OutboundQueue.getInstance(this).getStats());
+            writer.println("Regex patterns: " + PatternCache.shared().getStats());
+        }
+        
+        if (options.contains("--reset")) {
+            metrics.reset();
+        }
+        writer.flush();
+    }
+    
     @Override
     public void onDestroy() {
+        ForwardingStatus.getInstance().setListener(null);
+        // Coalesced forwards would otherwise wait for a window that may never
+        // close; flushed in the background, the process outlives the service
+        ForwardingPipeline.flushPendingAsync();
         super.onDestroy();
         Log.d(TAG, "SMS Monitoring Service destroyed");
     }
@@ -64,7 +109,30 @@ public class SmsMonitoringService extends Service {
         }
     }
     
-    private Notification createNotification() {
+    // Called on the main thread, at most a few times a second
+    private void updateNotification(ForwardingStatus status) {
+        long forwarded = status.getForwardedCount();
+        long failed = status.getFailedCount();
+        long queued = status.getQueuedCount();
+        if (forwarded == 0 && failed == 0 && queued == 0) {
+            return;
+        }
+        
+        String text;
+        long lastForwardAt = status.getLastForwardAtMillis();
+        if (lastForwardAt > 0) {
+            text = getString(R.string.forwarding_status_last, forwarded, failed, queued,
+                    DateFormat.getTimeFormat(this).format(new Date(lastForwardAt)));
+        } else {
+            text = getString(R.string.forwarding_status, forwarded, failed, queued);
+        }
+        NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.notify(NOTIFICATION_ID, createNotification(text));
+        }
+    }
+    
+    private Notification createNotification(String text) {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(
                 this, 0, notificationIntent, 
@@ -74,10 +142,11 @@ public class SmsMonitoringService extends Service {
         
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle(getString(R.string.app_name))
-                .setContentText(getString(R.string.monitoring_service_notification))
+                .setContentText(text)
                 .setSmallIcon(R.drawable.ic_launcher)
                 .setContentIntent(pendingIntent)
                 .setOngoing(true)
+                .setOnlyAlertOnce(true)
                 .setPriority(NotificationCompat.PRIORITY_LOW)
                 .build();
     }
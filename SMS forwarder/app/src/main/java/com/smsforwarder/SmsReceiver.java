@@ -4,24 +4,76 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.telephony.SmsMessage;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Takes the broadcast with goAsync and decodes its PDUs on a background
+// thread; all messages of the broadcast then go to ForwardingPipeline in one
+// hand-off. The broadcast is finished once they have been matched and queued,
+// which keeps the process from being frozen in between.
 public class SmsReceiver extends BroadcastReceiver {
     
     private static final String TAG = "SmsReceiver";
     private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    private static final String FORMAT_3GPP2 = "3gpp2";
+    
+    // Segments of a long SMS normally arrive together in one broadcast; a segment
+    // that straggles into a later broadcast waits this long for the rest
+    private static final long SEGMENT_TIMEOUT_MS = 30000;
+    private static final int MAX_PENDING_MESSAGES = 32;
+    // Well inside the 10 second limit for a receiver
+    private static final long HANDOFF_TIMEOUT_MS = 5000;
+    
+    private static final ForwardingMetrics METRICS = ForwardingMetrics.global();
+    
+    // Decoding, reassembly and segment expiry all run on this thread, so the
+    // fields below need no locking
+    private static final ScheduledExecutorService RECEIVE_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "sms-receive"));
+    
+    private static SmsReassembler reassembler;
+    private static Batch currentBatch;
+    private static boolean expiryScheduled;
     
     @Override
     public void onReceive(Context context, Intent intent) {
+        final long receiveStart = System.nanoTime();
         if (SMS_RECEIVED_ACTION.equals(intent.getAction())) {
+            final PendingResult result = goAsync();
+            final Context appContext = context.getApplicationContext();
+            RECEIVE_EXECUTOR.execute(() -> handleBroadcast(appContext, intent, receiveStart, result));
+        }
+    }
+    
+    private static void handleBroadcast(Context context, Intent intent, long receiveStart, PendingResult result) {
+        Batch batch = new Batch(result, receiveStart);
+        try {
             Bundle bundle = intent.getExtras();
             if (bundle != null) {
-                try {
-                    Object[] pdus = (Object[]) bundle.get("pdus");
-                    String format = bundle.getString("format");
+                Object[] pdus = (Object[]) bundle.get("pdus");
+                String format = bundle.getString("format");
+                
+                if (pdus != null) {
+                    long parseStart = System.nanoTime();
+                    METRICS.add(ForwardingMetrics.Counter.PDUS_PARSED, pdus.length);
+                    
+                    // PDUs without a concatenation header are joined per sender
+                    Map<String, StringBuilder> bodies = new LinkedHashMap<>();
                     
-                    if (pdus != null) {
+                    // Messages the reassembler completes go into this batch
+                    currentBatch = batch;
+                    try {
                         for (Object pdu : pdus) {
                             SmsMessage smsMessage;
                             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
@@ -36,18 +88,125 @@ public class SmsReceiver extends BroadcastReceiver {
                                 
                                 Log.d(TAG, "SMS received from: " + sender + ", Message: " + messageBody);
                                 
-                                // Process the SMS through our forwarding service
-                                Intent serviceIntent = new Intent(context, SmsForwardingService.class);
-                                serviceIntent.putExtra("sender", sender);
-                                serviceIntent.putExtra("message", messageBody);
-                                context.startService(serviceIntent);
+                                if (sender == null || messageBody == null) {
+                                    continue;
+                                }
+                                
+                                SmsConcatHeader header = FORMAT_3GPP2.equals(format)
+                                        ? null : SmsConcatHeader.parse((byte[]) pdu);
+                                if (header != null) {
+                                    getReassembler(context).addSegment(sender, header, messageBody,
+                                            SystemClock.elapsedRealtime());
+                                } else {
+                                    StringBuilder body = bodies.get(sender);
+                                    if (body == null) {
+                                        body = new StringBuilder();
+                                        bodies.put(sender, body);
+                                    }
+                                    body.append(messageBody);
+                                }
                             }
                         }
+                    } finally {
+                        currentBatch = null;
+                    }
+                    METRICS.recordSince(ForwardingMetrics.Stage.PARSE, parseStart);
+                    
+                    for (Map.Entry<String, StringBuilder> entry : bodies.entrySet()) {
+                        batch.add(entry.getKey(), entry.getValue().toString());
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing SMS", e);
+                    batch.handOff(ForwardingPipeline.getInstance(context));
+                    scheduleExpiry();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing SMS", e);
+        } finally {
+            METRICS.recordSince(ForwardingMetrics.Stage.RECEIVE, receiveStart);
+            batch.release();
+        }
+    }
+    
+    // Straggling segments flushed by expiry arrive outside any broadcast
+    private static void onReassembled(Context context, String sender, String body) {
+        if (currentBatch != null) {
+            currentBatch.add(sender, body);
+            return;
+        }
+        METRICS.increment(ForwardingMetrics.Counter.SMS_RECEIVED);
+        ForwardingPipeline.getInstance(context).submit(sender, body, -1, null);
+    }
+    
+    private static SmsReassembler getReassembler(Context context) {
+        if (reassembler == null) {
+            reassembler = new SmsReassembler(SEGMENT_TIMEOUT_MS, MAX_PENDING_MESSAGES,
+                    (sender, body) -> onReassembled(context, sender, body));
+        }
+        return reassembler;
+    }
+    
+    private static void scheduleExpiry() {
+        if (reassembler == null || expiryScheduled || reassembler.getPendingCount() == 0) {
+            return;
+        }
+        expiryScheduled = true;
+        RECEIVE_EXECUTOR.schedule(SmsReceiver::expirePendingSegments, SEGMENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    private static void expirePendingSegments() {
+        expiryScheduled = false;
+        reassembler.expire(SystemClock.elapsedRealtime());
+        scheduleExpiry();
+    }
+    
+    // The messages of one broadcast. The broadcast is finished when the last
+    // of them has been processed by the pipeline, or after HANDOFF_TIMEOUT_MS.
+    private static final class Batch {
+        private final PendingResult result;
+        private final long receivedAtNanos;
+        private final List<String> senders = new ArrayList<>();
+        private final List<String> bodies = new ArrayList<>();
+        // Starts at one for the receive thread, dropped in release()
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicBoolean finished = new AtomicBoolean();
+        
+        Batch(PendingResult result, long receivedAtNanos) {
+            this.result = result;
+            this.receivedAtNanos = receivedAtNanos;
+        }
+        
+        void add(String sender, String body) {
+            senders.add(sender);
+            bodies.add(body);
+        }
+        
+        void handOff(ForwardingPipeline pipeline) {
+            for (int i = 0; i < senders.size(); i++) {
+                METRICS.increment(ForwardingMetrics.Counter.SMS_RECEIVED);
+                outstanding.incrementAndGet();
+                if (!pipeline.submit(senders.get(i), bodies.get(i), receivedAtNanos, this::processed)) {
+                    processed();
                 }
             }
         }
+        
+        void release() {
+            processed();
+            if (!finished.get()) {
+                RECEIVE_EXECUTOR.schedule(this::finish, HANDOFF_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        private void processed() {
+            if (outstanding.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+        
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                result.finish();
+            }
+        }
     }
 }
\ No newline at end of file
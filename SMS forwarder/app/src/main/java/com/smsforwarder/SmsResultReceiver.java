@@ -0,0 +1,51 @@
+package com.smsforwarder;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.telephony.SmsMessage;
+import android.util.Log;
+
+// Receives the sentIntent and deliveryIntent broadcasts for messages sent by
+// OutboundQueue and hands the results back to it.
+public class SmsResultReceiver extends BroadcastReceiver {
+    
+    private static final String TAG = "SmsResultReceiver";
+    static final int RESULT_OK = Activity.RESULT_OK;
+    
+    // TP-Status values below this mean the transaction is completed (TS 23.040)
+    private static final int STATUS_TEMPORARY_ERROR = 0x20;
+    
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        long id = intent.getLongExtra(OutboundQueue.EXTRA_ID, -1);
+        if (id < 0) {
+            return;
+        }
+        
+        OutboundQueue queue = OutboundQueue.getInstance(context);
+        if (OutboundQueue.ACTION_SENT.equals(action)) {
+            int part = intent.getIntExtra(OutboundQueue.EXTRA_PART, 0);
+            int parts = intent.getIntExtra(OutboundQueue.EXTRA_PARTS, 1);
+            queue.onSendResult(id, part, parts, getResultCode());
+        } else if (OutboundQueue.ACTION_DELIVERED.equals(action)) {
+            int status = getDeliveryStatus(intent);
+            if (status < STATUS_TEMPORARY_ERROR) {
+                queue.onDeliveryResult(id, status);
+            } else {
+                Log.w(TAG, "Delivery report for message " + id + " with status " + status);
+            }
+        }
+    }
+    
+    private static int getDeliveryStatus(Intent intent) {
+        byte[] pdu = intent.getByteArrayExtra("pdu");
+        if (pdu == null) {
+            return 0;
+        }
+        SmsMessage report = SmsMessage.createFromPdu(pdu, intent.getStringExtra("format"));
+        return report != null ? report.getStatus() : 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.smsforwarder;
+
+import android.app.Application;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+// A paced storm of SMS_RECEIVED broadcasts delivered to the manifest receiver,
+// so that SmsReceiver.onReceive, the framework's PDU decoding and reassembly
+// are part of the measurement; loadgen replays those steps off-device instead.
+// Reports sustained messages/s, the lane queue depth and the broadcast to
+// match latency, and checks that every message was forwarded.
+@RunWith(AndroidJUnit4.class)
+public class SmsReceiverLoadTest {
+    
+    private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    private static final int BROADCASTS = 2000;
+    private static final double RATE = 500;  // broadcasts a second
+    // Every tenth message is a two-segment UCS-2 one, the rest single GSM 7-bit PDUs
+    private static final int LONG_EVERY = 10;
+    private static final int FILLER_RULES = 200;
+    private static final long SAMPLE_INTERVAL_MS = 5;
+    private static final long DRAIN_TIMEOUT_MS = 30000;
+    
+    private static final String KEYWORD = "LOADTEST";
+    private static final String DESTINATION = "01000000100";
+    private static final String[] SENDERS = {
+        "+8215881234", "+8215447000", "+821099990001", "+821099990002", "+15551230000"
+    };
+    
+    private final ForwardingMetrics metrics = ForwardingMetrics.global();
+    private Application context;
+    private AppDatabase database;
+    // Room refuses queries on the main thread, which runs the test
+    private ExecutorService dbThread;
+    private ScheduledExecutorService sampler;
+    
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        database = AppDatabase.getInstance(context);
+        dbThread = Executors.newSingleThreadExecutor();
+        sampler = Executors.newSingleThreadScheduledExecutor();
+        dbThread.submit(() -> {
+            List<ForwardingRule> rules = new ArrayList<>();
+            rules.add(new ForwardingRule("", false, KEYWORD, DESTINATION));
+            // Rules that never fire, so matching works on a realistic rule set
+            for (int i = 0; i < FILLER_RULES; i++) {
+                rules.add(new ForwardingRule(i % 2 == 0 ? "" : "1600" + i, false,
+                        "filler keyword " + i, "0100000" + (1000 + i)));
+            }
+            database.forwardingRuleDao().insertRules(rules);
+        }).get();
+    }
+    
+    @After
+    public void tearDown() {
+        sampler.shutdownNow();
+        dbThread.shutdown();
+    }
+    
+    @Test
+    public void sustainsAStormOfBroadcasts() throws Exception {
+        // Built up front so that encoding is not part of the measurement
+        List<Intent> broadcasts = new ArrayList<>(BROADCASTS);
+        int pduCount = 0;
+        for (int i = 0; i < BROADCASTS; i++) {
+            List<byte[]> pdus = pdusFor(i);
+            pduCount += pdus.size();
+            Intent intent = new Intent(SMS_RECEIVED_ACTION);
+            intent.putExtra("pdus", pdus.toArray(new Object[0]));
+            intent.putExtra("format", "3gpp");
+            broadcasts.add(intent);
+        }
+        
+        ForwardingPipeline pipeline = ForwardingPipeline.getInstance(context);
+        long completed = pipeline.getCompletedCount();
+        long received = metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED);
+        long parsed = metrics.get(ForwardingMetrics.Counter.PDUS_PARSED);
+        long dropped = metrics.get(ForwardingMetrics.Counter.MESSAGES_DROPPED);
+        metrics.getHistogram(ForwardingMetrics.Stage.RECEIVE).reset();
+        metrics.getHistogram(ForwardingMetrics.Stage.RECEIVE_TO_MATCH).reset();
+        
+        List<Integer> depths = new ArrayList<>();
+        sampler.scheduleAtFixedRate(() -> {
+            synchronized (depths) {
+                depths.add(pipeline.getQueueDepth());
+            }
+        }, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < BROADCASTS; i++) {
+            long wait = start + (long) (i * 1e9 / RATE) - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            context.sendBroadcast(broadcasts.get(i));
+            // Runs onReceive, which hands the PDUs to the receive thread
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        long injectEnd = System.nanoTime();
+        
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (pipeline.getCompletedCount() < completed + BROADCASTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long end = System.nanoTime();
+        sampler.shutdownNow();
+        
+        long processed = pipeline.getCompletedCount() - completed;
+        double injectSeconds = (injectEnd - start) / 1e9;
+        double totalSeconds = (end - start) / 1e9;
+        LatencyHistogram receive = metrics.getHistogram(ForwardingMetrics.Stage.RECEIVE);
+        LatencyHistogram toMatch = metrics.getHistogram(ForwardingMetrics.Stage.RECEIVE_TO_MATCH);
+        System.out.printf(Locale.ROOT, "Injected:           %,d broadcasts (%,d PDUs) in %.2f s, %,.0f/s%n",
+                BROADCASTS, pduCount, injectSeconds, BROADCASTS / injectSeconds);
+        System.out.printf(Locale.ROOT, "Processed:          %,d messages in %.2f s, sustained %,.0f messages/s%n",
+                processed, totalSeconds, processed / totalSeconds);
+        System.out.printf(Locale.ROOT, "Lane queue depth:   %s%n", describeDepths(depths));
+        System.out.printf(Locale.ROOT, "Receive:            %s%n", describe(receive));
+        System.out.printf(Locale.ROOT, "Broadcast to match: %s%n", describe(toMatch));
+        
+        assertEquals(BROADCASTS, processed);
+        assertEquals(received + BROADCASTS, metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED));
+        assertEquals(parsed + pduCount, metrics.get(ForwardingMetrics.Counter.PDUS_PARSED));
+        assertEquals(dropped, metrics.get(ForwardingMetrics.Counter.MESSAGES_DROPPED));
+        assertEquals(BROADCASTS, toMatch.getCount());
+        assertTrue(awaitForwardCount(BROADCASTS) >= BROADCASTS);
+    }
+    
+    // Bodies are numbered so duplicate suppression leaves them alone
+    private static List<byte[]> pdusFor(int i) {
+        String sender = SENDERS[i % SENDERS.length];
+        if (i % LONG_EVERY == 0) {
+            StringBuilder body = new StringBuilder(KEYWORD + " 승인 " + i + " 국민카드 12,000원 일시불");
+            while (body.length() <= 70) {
+                body.append(" 누적 340,000원");
+            }
+            return TestPdus.deliverPdus(sender, body.toString(), i & 0xff);
+        }
+        List<byte[]> pdus = new ArrayList<>(1);
+        pdus.add(TestPdus.deliverPdu(sender, "Your " + KEYWORD + " alert " + i + ": payment of $25.00 approved",
+                false, 0, 0, 0));
+        return pdus;
+    }
+    
+    // Forwards queued for DESTINATION, once count are there or the timeout is up
+    private int awaitForwardCount(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (true) {
+            int forwards = dbThread.submit(() -> {
+                try (Cursor cursor = database.query("SELECT COUNT(*) FROM outbound_messages WHERE destination = ?",
+                        new Object[] {DESTINATION})) {
+                    return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+                }
+            }).get();
+            if (forwards >= count || System.currentTimeMillis() > deadline) {
+                return forwards;
+            }
+            Thread.sleep(20);
+        }
+    }
+    
+    private static String describe(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "p50 %.2f ms  p99 %.2f ms  max %.2f ms (%,d)",
+                histogram.getPercentileMicros(50) / 1e3, histogram.getPercentileMicros(99) / 1e3,
+                histogram.getMaxMicros() / 1e3, histogram.getCount());
+    }
+    
+    private static String describeDepths(List<Integer> depths) {
+        int[] sorted;
+        synchronized (depths) {
+            sorted = new int[depths.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = depths.get(i);
+            }
+        }
+        if (sorted.length == 0) {
+            return "no samples";
+        }
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "p50 %,d  p99 %,d  max %,d (%,d samples)",
+                sorted[(sorted.length - 1) / 2], sorted[(int) Math.ceil(sorted.length * 0.99) - 1],
+                sorted[sorted.length - 1], sorted.length);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.smsforwarder;
+
+import android.app.Application;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+// Delivers an SMS_RECEIVED broadcast with SMS-DELIVER PDUs to the manifest
+// receiver and follows it through ForwardingPipeline into outbound_messages.
+// The PDUs, built by TestPdus, are decoded by the framework's SmsMessage, not
+// by a stand-in.
+@RunWith(AndroidJUnit4.class)
+public class SmsReceiverTest {
+    
+    private static final String SMS_RECEIVED_ACTION = "android.provider.Telephony.SMS_RECEIVED";
+    private static final long FORWARD_TIMEOUT_MS = 5000;
+    
+    private static final String CODE_SENDER = "+821012345678";
+    private static final String CODE_BODY = "Your verification code is 482913";
+    private static final String CODE_DESTINATION = "01000000001";
+    private static final String PARCEL_SENDER = "+8215881255";
+    private static final String PARCEL_DESTINATION = "01000000002";
+    
+    
+    private final ForwardingMetrics metrics = ForwardingMetrics.global();
+    private Application context;
+    private AppDatabase database;
+    // Room refuses queries on the main thread, which runs the test
+    private ExecutorService dbThread;
+    
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        database = AppDatabase.getInstance(context);
+        dbThread = Executors.newSingleThreadExecutor();
+        dbThread.submit(() -> {
+            ForwardingRuleDao dao = database.forwardingRuleDao();
+            // Exact sender written the national way, matched in canonical form
+            dao.insertRule(new ForwardingRule("010-1234-5678", true, "verification code", CODE_DESTINATION));
+            dao.insertRule(new ForwardingRule("", false, "택배", PARCEL_DESTINATION));
+        }).get();
+    }
+    
+    @After
+    public void tearDown() {
+        dbThread.shutdown();
+    }
+    
+    @Test
+    public void forwardsBroadcastMessagesThroughThePipeline() throws Exception {
+        // A single-part GSM 7-bit message and a two-segment UCS-2 one in one broadcast
+        StringBuilder parcel = new StringBuilder("[CJ대한통운] 고객님의 택배가 오늘 배송될 예정입니다.");
+        while (parcel.length() <= 70) {
+            parcel.append(" 부재 시 경비실에 맡겨 드립니다.");
+        }
+        List<byte[]> pdus = new ArrayList<>();
+        pdus.add(TestPdus.deliverPdu(CODE_SENDER, CODE_BODY, false, 0, 0, 0));
+        pdus.addAll(TestPdus.deliverPdus(PARCEL_SENDER, parcel.toString(), 42));
+        assertEquals(3, pdus.size());
+        
+        Intent intent = new Intent(SMS_RECEIVED_ACTION);
+        intent.putExtra("pdus", pdus.toArray(new Object[0]));
+        intent.putExtra("format", "3gpp");
+        assertTrue(shadowOf(context).hasReceiverForIntent(intent));
+        
+        long received = metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED);
+        long parsed = metrics.get(ForwardingMetrics.Counter.PDUS_PARSED);
+        context.sendBroadcast(intent);
+        shadowOf(Looper.getMainLooper()).idle();
+        
+        Map<String, String> forwards = awaitForwards(2);
+        assertEquals(forwards.toString(), 2, forwards.size());
+        assertEquals(MessageFormatter.formatForward(CODE_SENDER, CODE_BODY), forwards.get(CODE_DESTINATION));
+        // Both segments, joined back together
+        assertEquals(MessageFormatter.formatForward(PARCEL_SENDER, parcel.toString()),
+                forwards.get(PARCEL_DESTINATION));
+        assertEquals(received + 2, metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED));
+        assertEquals(parsed + 3, metrics.get(ForwardingMetrics.Counter.PDUS_PARSED));
+    }
+    
+    // Destination to body of the queued forwards, once count are there or the
+    // timeout is up; the lanes and the outbound queue run on their own threads
+    private Map<String, String> awaitForwards(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + FORWARD_TIMEOUT_MS;
+        while (true) {
+            Map<String, String> forwards = dbThread.submit(() -> {
+                Map<String, String> rows = new HashMap<>();
+                try (Cursor cursor = database.query("SELECT destination, body FROM outbound_messages", null)) {
+                    while (cursor.moveToNext()) {
+                        rows.put(cursor.getString(0), cursor.getString(1));
+                    }
+                }
+                return rows;
+            }).get();
+            if (forwards.size() >= count || System.currentTimeMillis() > deadline) {
+                return forwards;
+            }
+            Thread.sleep(20);
+        }
+    }
+}
\ No newline at end of file
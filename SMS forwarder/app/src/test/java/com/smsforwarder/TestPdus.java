@@ -0,0 +1,82 @@
+package com.smsforwarder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// SMS-DELIVER PDUs (TS 23.040) as the radio hands them to SMS_RECEIVED, for
+// the receiver tests
+final class TestPdus {
+    
+    // Basic GSM 7-bit alphabet (TS 23.038) without the escape
+    private static final String GSM_ALPHABET =
+            "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞ\u001bÆæßÉ"
+            + " !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    private static final int UCS2_SEGMENT = 67;
+    
+    private TestPdus() {
+    }
+    
+    // UCS-2 segments with an 8-bit concatenation header, as the network splits
+    // a long message
+    static List<byte[]> deliverPdus(String sender, String body, int reference) {
+        int total = (body.length() + UCS2_SEGMENT - 1) / UCS2_SEGMENT;
+        List<byte[]> pdus = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            String part = body.substring(i * UCS2_SEGMENT, Math.min(body.length(), (i + 1) * UCS2_SEGMENT));
+            pdus.add(deliverPdu(sender, part, true, reference, total, i + 1));
+        }
+        return pdus;
+    }
+    
+    // SMS-DELIVER (TS 23.040) from an international sender; total 0 for no
+    // concatenation header
+    static byte[] deliverPdu(String sender, String text, boolean ucs2,
+                             int reference, int total, int sequence) {
+        byte[] header = total > 0
+                ? new byte[] {5, 0x00, 0x03, (byte) reference, (byte) total, (byte) sequence}
+                : new byte[0];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);  // no SMSC address
+        out.write(total > 0 ? 0x44 : 0x04);  // SMS-DELIVER, UDHI with a header
+        String digits = sender.substring(1);
+        out.write(digits.length());
+        out.write(0x91);
+        for (int i = 0; i < digits.length(); i += 2) {
+            int high = i + 1 < digits.length() ? digits.charAt(i + 1) - '0' : 0x0f;
+            out.write((high << 4) | (digits.charAt(i) - '0'));
+        }
+        out.write(0);  // protocol identifier
+        out.write(ucs2 ? 0x08 : 0x00);
+        out.write(new byte[] {0x62, 0x10, 0x71, 0x21, 0x43, 0x65, 0x23}, 0, 7);
+        
+        if (ucs2) {
+            out.write(header.length + text.length() * 2);
+            out.write(header, 0, header.length);
+            for (int i = 0; i < text.length(); i++) {
+                out.write(text.charAt(i) >> 8);
+                out.write(text.charAt(i));
+            }
+        } else {
+            // Septets start on the first septet boundary after the header
+            int headerSeptets = (header.length * 8 + 6) / 7;
+            int septets = headerSeptets + text.length();
+            byte[] userData = new byte[(septets * 7 + 7) / 8];
+            System.arraycopy(header, 0, userData, 0, header.length);
+            for (int i = 0; i < text.length(); i++) {
+                int bit = (headerSeptets + i) * 7;
+                int septet = GSM_ALPHABET.indexOf(text.charAt(i));
+                userData[bit / 8] |= (byte) (septet << (bit % 8));
+                if (bit % 8 > 1) {
+                    userData[bit / 8 + 1] |= (byte) (septet >> (8 - bit % 8));
+                }
+            }
+            out.write(septets);
+            out.write(userData, 0, userData.length);
+        }
+        return out.toByteArray();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+package com.smsforwarder.benchmark;
+
+import com.smsforwarder.CaseFolding;
+import com.smsforwarder.ForwardingRule;
+import com.smsforwarder.PhoneNumberNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+// Per-rule matching cost. With -prof gc, gc.alloc.rate.norm for matchesSms and
+// containsFolded should stay at ~0 B/op, which core's MatchingAllocationTest
+// asserts; lowerCaseContains is the toLowerCase().contains() comparison
+// matchesSms used to do, for reference.
+@State(Scope.Thread)
+public class ContentMatchingBenchmark {
+    
+    private static final int MESSAGES = 1024;
+    
+    @Param({"1000"})
+    public int ruleCount;
+    
+    @Param({Corpus.ENGLISH, Corpus.KOREAN})
+    public String language;
+    
+    private List<ForwardingRule> rules;
+    private String[] foldedKeywords;
+    private String[] senders;
+    private String[] canonicalSenders;
+    private String[] bodies;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Corpus corpus = Corpus.create(ruleCount, language, MESSAGES, 11);
+        rules = corpus.rules;
+        senders = corpus.senders;
+        bodies = corpus.bodies;
+        // Done once per message by the caller, outside the per-rule loop
+        canonicalSenders = new String[senders.length];
+        for (int i = 0; i < senders.length; i++) {
+            canonicalSenders[i] = PhoneNumberNormalizer.DEFAULT.canonicalize(senders[i]);
+        }
+        foldedKeywords = new String[rules.size()];
+        for (int i = 0; i < foldedKeywords.length; i++) {
+            foldedKeywords[i] = CaseFolding.fold(rules.get(i).messageContent);
+        }
+    }
+    
+    @Benchmark
+    public int matchesSms() {
+        int i = nextMessage();
+        int matched = 0;
+        for (ForwardingRule rule : rules) {
+            if (rule.matchesSms(senders[i], canonicalSenders[i], bodies[i])) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+    
+    @Benchmark
+    public int containsFolded() {
+        String body = bodies[nextMessage()];
+        int matched = 0;
+        for (String keyword : foldedKeywords) {
+            if (CaseFolding.containsFolded(body, keyword)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+    
+    @Benchmark
+    public int lowerCaseContains() {
+        String body = bodies[nextMessage()];
+        int matched = 0;
+        for (ForwardingRule rule : rules) {
+            if (body.toLowerCase().contains(rule.messageContent.toLowerCase())) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+    
+    private int nextMessage() {
+        int i = next;
+        next = (i + 1) & (MESSAGES - 1);
+        return i;
+    }
+}
\ No newline at end of file
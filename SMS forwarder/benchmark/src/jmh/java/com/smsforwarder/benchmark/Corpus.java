@@ -0,0 +1,114 @@
+package com.smsforwarder.benchmark;
+
+import com.smsforwarder.ForwardingRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Deterministic synthetic rules and messages. Rules mix exact senders, partial
+// sender prefixes (short codes) and keyword-only rules; about half of the
+// sender rules also carry a keyword. Messages reuse the same senders and words so
+// a realistic share of them actually match.
+final class Corpus {
+    
+    static final String ENGLISH = "en";
+    static final String KOREAN = "ko";
+    
+    private static final String[] ENGLISH_KEYWORDS = {
+        "verification", "code", "otp", "payment", "deposit", "withdrawal", "delivery",
+        "parcel", "approved", "declined", "invoice", "reservation", "appointment", "alert"
+    };
+    private static final String[] KOREAN_KEYWORDS = {
+        "인증번호", "입금", "출금", "결제", "승인", "취소", "배송", "택배",
+        "예약", "대출", "카드", "잔액", "안내", "본인확인"
+    };
+    private static final String[] ENGLISH_TEMPLATES = {
+        "Your verification code is %d. Do not share this code with anyone.",
+        "Payment of $%d.00 approved at STORE-%d. Available balance $%d.",
+        "Your parcel %d is out for delivery today between 2pm and 6pm. Track at example.com/t/%d",
+        "Reminder: your appointment is tomorrow at %d:00. Reply C to cancel.",
+        "ALERT: unusual sign-in attempt from a new device. If this wasn't you call %d.",
+        "Hi, running late, be there in %d minutes. Can you order for me? Thanks!"
+    };
+    private static final String[] KOREAN_TEMPLATES = {
+        "[Web발신] 인증번호 [%d]를 입력해주세요. 타인에게 절대 알려주지 마세요.",
+        "[Web발신] 국민카드 승인 %d원 일시불 가맹점%d 누적 %d원",
+        "[Web발신] 고객님의 택배 %d 상품이 오늘 배송될 예정입니다. 배송조회 example.com/%d",
+        "[Web발신] 신한 입금 %d원 잔액 %d원 홍길동",
+        "내일 %d시 예약 확인 부탁드립니다. 변경을 원하시면 회신 주세요.",
+        "엄마 나 오늘 %d시쯤 도착할 것 같아. 저녁 같이 먹자!"
+    };
+    
+    final List<ForwardingRule> rules;
+    final String[] senders;
+    final String[] bodies;
+    
+    private Corpus(List<ForwardingRule> rules, String[] senders, String[] bodies) {
+        this.rules = rules;
+        this.senders = senders;
+        this.bodies = bodies;
+    }
+    
+    static Corpus create(int ruleCount, String language, int messageCount, long seed) {
+        Random random = new Random(seed);
+        String[] keywords = KOREAN.equals(language) ? KOREAN_KEYWORDS : ENGLISH_KEYWORDS;
+        String[] templates = KOREAN.equals(language) ? KOREAN_TEMPLATES : ENGLISH_TEMPLATES;
+        
+        List<ForwardingRule> rules = new ArrayList<>(ruleCount);
+        List<String> exactSenders = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            String sender;
+            boolean exact = false;
+            int kind = random.nextInt(10);
+            if (kind < 4) {
+                sender = mobileNumber(random);
+                exact = true;
+                exactSenders.add(sender);
+            } else if (kind < 7) {
+                sender = shortCode(random);
+            } else {
+                sender = "";
+            }
+            
+            // Rules without a sender always have a keyword, a rule with neither
+            // would forward every message
+            String content = "";
+            if (sender.isEmpty() || random.nextBoolean()) {
+                content = keywords[random.nextInt(keywords.length)];
+                // Long tail of rarer keywords as rule sets grow
+                if (sender.isEmpty() ? random.nextInt(10) != 0 : random.nextInt(4) == 0) {
+                    content = content + " " + random.nextInt(1000);
+                }
+            }
+            ForwardingRule rule = new ForwardingRule(sender, exact, content, mobileNumber(random));
+            rule.id = i + 1;
+            rules.add(rule);
+        }
+        
+        String[] senders = new String[messageCount];
+        String[] bodies = new String[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 3 && !exactSenders.isEmpty()) {
+                senders[i] = exactSenders.get(random.nextInt(exactSenders.size()));
+            } else if (kind < 6) {
+                senders[i] = shortCode(random);
+            } else {
+                senders[i] = mobileNumber(random);
+            }
+            String template = templates[random.nextInt(templates.length)];
+            bodies[i] = String.format(Locale.ROOT, template, random.nextInt(999999), random.nextInt(9999), random.nextInt(999999));
+        }
+        return new Corpus(rules, senders, bodies);
+    }
+    
+    private static String mobileNumber(Random random) {
+        return String.format(Locale.ROOT, "010%08d", random.nextInt(100000000));
+    }
+    
+    private static String shortCode(Random random) {
+        return "15" + (44 + random.nextInt(56)) + String.format(Locale.ROOT, "%04d", random.nextInt(10000));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.smsforwarder.benchmark;
+
+import com.smsforwarder.BatchWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cost on the forwarding threads of recording history through BatchWriter,
+// with a sink that only counts rows. Run with several threads to see
+// contention on the lock-free buffer.
+@State(Scope.Benchmark)
+public class HistoryBatchingBenchmark {
+    
+    @Param({"50"})
+    public int batchSize;
+    
+    private ScheduledExecutorService executor;
+    private BatchWriter<Object> writer;
+    private final AtomicLong written = new AtomicLong();
+    private final Object row = new Object();
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        writer = new BatchWriter<>((List<Object> batch) -> written.addAndGet(batch.size()),
+                executor, batchSize, 1000, 10000);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    
+    @Benchmark
+    public void add() {
+        writer.add(row);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void addContended() {
+        writer.add(row);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.smsforwarder.benchmark;
+
+import com.smsforwarder.DuplicateSuppressor;
+import com.smsforwarder.ForwardTemplate;
+import com.smsforwarder.MessageFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Per-forward work done after a rule has matched: building the forwarded text
+// and hashing the message for duplicate suppression. The template cases are
+// what ForwardingEngine runs for a rule with the default header, a custom
+// template with {time}, and every compaction option on.
+@State(Scope.Thread)
+public class MessageFormattingBenchmark {
+    
+    private static final int MESSAGES = 1024;
+    
+    @Param({Corpus.ENGLISH, Corpus.KOREAN})
+    public String language;
+    
+    private static final long RECEIVED_AT_MILLIS = 1700000000000L;
+    
+    private String[] senders;
+    private String[] bodies;
+    private ForwardTemplate customTemplate;
+    private ForwardTemplate compactTemplate;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Corpus corpus = Corpus.create(0, language, MESSAGES, 7);
+        senders = corpus.senders;
+        bodies = corpus.bodies;
+        customTemplate = ForwardTemplate.compile("[{rule}] {sender} {time}\n{body}", 0);
+        compactTemplate = ForwardTemplate.compile(null, ForwardTemplate.COMPACT_ALL);
+    }
+    
+    @Benchmark
+    public String formatForward() {
+        int i = nextMessage();
+        return MessageFormatter.formatForward(senders[i], bodies[i]);
+    }
+    
+    @Benchmark
+    public String defaultTemplate() {
+        int i = nextMessage();
+        return ForwardTemplate.DEFAULT.format(senders[i], bodies[i], 1, RECEIVED_AT_MILLIS);
+    }
+    
+    @Benchmark
+    public String customTemplate() {
+        int i = nextMessage();
+        return customTemplate.format(senders[i], bodies[i], 1, RECEIVED_AT_MILLIS);
+    }
+    
+    @Benchmark
+    public String compactTemplate() {
+        int i = nextMessage();
+        return compactTemplate.format(senders[i], bodies[i], 1, RECEIVED_AT_MILLIS);
+    }
+    
+    // The string concatenation the service used before MessageFormatter
+    @Benchmark
+    public String concatenation() {
+        int i = nextMessage();
+        return "Forwarded SMS from " + senders[i] + ":\n" + bodies[i];
+    }
+    
+    @Benchmark
+    public long contentHash() {
+        int i = nextMessage();
+        return DuplicateSuppressor.contentHash(senders[i], bodies[i]);
+    }
+    
+    private int nextMessage() {
+        int i = next;
+        next = (i + 1) & (MESSAGES - 1);
+        return i;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.smsforwarder.benchmark;
+
+import com.smsforwarder.ForwardingRule;
+import com.smsforwarder.PhoneNumberNormalizer;
+import com.smsforwarder.RuleMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+// Cost of deciding which rules fire for one incoming SMS, against rule sets of
+// 10 to 100k rules. linearScan is the loop SmsForwardingService ran before the
+// rules were compiled, with the matchesSms of that time: raw sender comparison
+// and toLowerCase() of the body and the keyword for every rule. perRuleLoop is
+// today's allocation-free matchesSms over every rule, with the sender
+// canonicalized once per message. matcher and distinctDestinations are what
+// the service runs now.
+@State(Scope.Thread)
+public class RuleMatchingBenchmark {
+    
+    private static final int MESSAGES = 1024;
+    
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int ruleCount;
+    
+    @Param({Corpus.ENGLISH, Corpus.KOREAN})
+    public String language;
+    
+    private List<ForwardingRule> rules;
+    private RuleMatcher matcher;
+    private String[] senders;
+    private String[] bodies;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        Corpus corpus = Corpus.create(ruleCount, language, MESSAGES, 42);
+        rules = corpus.rules;
+        senders = corpus.senders;
+        bodies = corpus.bodies;
+        matcher = RuleMatcher.compile(rules);
+    }
+    
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        int i = nextMessage();
+        String sender = senders[i];
+        String body = bodies[i];
+        for (ForwardingRule rule : rules) {
+            if (originalMatchesSms(rule, sender, body)) {
+                blackhole.consume(rule);
+            }
+        }
+    }
+    
+    @Benchmark
+    public void perRuleLoop(Blackhole blackhole) {
+        int i = nextMessage();
+        String sender = senders[i];
+        String body = bodies[i];
+        String canonicalSender = PhoneNumberNormalizer.DEFAULT.canonicalize(sender);
+        for (ForwardingRule rule : rules) {
+            if (rule.matchesSms(sender, canonicalSender, body)) {
+                blackhole.consume(rule);
+            }
+        }
+    }
+    
+    @Benchmark
+    public List<ForwardingRule> matcher() {
+        int i = nextMessage();
+        return matcher.match(senders[i], bodies[i]);
+    }
+    
+    @Benchmark
+    public List<ForwardingRule> distinctDestinations() {
+        int i = nextMessage();
+        return matcher.matchDistinctDestinations(senders[i], bodies[i]);
+    }
+    
+    // ForwardingRule.matchesSms before the rules were compiled
+    private static boolean originalMatchesSms(ForwardingRule rule, String fromNumber, String messageBody) {
+        if (rule.senderNumber != null && !rule.senderNumber.trim().isEmpty()) {
+            if (rule.senderExactMatch) {
+                if (!rule.senderNumber.equals(fromNumber)) {
+                    return false;
+                }
+            } else {
+                if (!fromNumber.contains(rule.senderNumber)) {
+                    return false;
+                }
+            }
+        }
+        
+        if (rule.messageContent != null && !rule.messageContent.trim().isEmpty()) {
+            if (!messageBody.toLowerCase().contains(rule.messageContent.toLowerCase())) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private int nextMessage() {
+        int i = next;
+        next = (i + 1) & (MESSAGES - 1);
+        return i;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.smsforwarder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Multi-pattern substring automaton. Finds every pattern occurring in a text
+// with a single left-to-right pass, independent of the number of patterns.
+// The trie is flattened into arrays after construction so lookups do not box.
+final class AhoCorasick {
+    
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+    
+    private final int[] childStart;   // node -> first index into childChars/childNodes
+    private final char[] childChars;  // sorted per node for binary search
+    private final int[] childNodes;
+    private final int[] fail;
+    private final int[] output;       // pattern id ending at node, or -1
+    private final int[] outputLink;   // next node on the fail chain with an output, or -1
+    private final int patternCount;
+    
+    private AhoCorasick(int[] childStart, char[] childChars, int[] childNodes,
+                        int[] fail, int[] output, int[] outputLink, int patternCount) {
+        this.childStart = childStart;
+        this.childChars = childChars;
+        this.childNodes = childNodes;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.patternCount = patternCount;
+    }
+    
+    // Patterns must be non-empty and distinct; pattern ids are list indices.
+    static AhoCorasick build(List<String> patterns) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(NO_NODE);
+        
+        for (int id = 0; id < patterns.size(); id++) {
+            String pattern = patterns.get(id);
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                Character c = pattern.charAt(i);
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(NO_NODE);
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            outputs.set(node, id);
+        }
+        
+        int nodeCount = trie.size();
+        int edgeCount = nodeCount - 1;
+        int[] childStart = new int[nodeCount + 1];
+        char[] childChars = new char[edgeCount];
+        int[] childNodes = new int[edgeCount];
+        int[] output = new int[nodeCount];
+        int edge = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            childStart[node] = edge;
+            for (Map.Entry<Character, Integer> entry : trie.get(node).entrySet()) {
+                childChars[edge] = entry.getKey();
+                childNodes[edge] = entry.getValue();
+                edge++;
+            }
+            output[node] = outputs.get(node);
+        }
+        childStart[nodeCount] = edge;
+        
+        AhoCorasick automaton = new AhoCorasick(childStart, childChars, childNodes,
+                new int[nodeCount], output, new int[nodeCount], patterns.size());
+        automaton.linkFailures();
+        return automaton;
+    }
+    
+    // Breadth-first so every node's fail target is finished before its children.
+    private void linkFailures() {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        fail[ROOT] = ROOT;
+        outputLink[ROOT] = NO_NODE;
+        for (int e = childStart[ROOT]; e < childStart[ROOT + 1]; e++) {
+            int child = childNodes[e];
+            fail[child] = ROOT;
+            outputLink[child] = NO_NODE;
+            queue.add(child);
+        }
+        
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int e = childStart[node]; e < childStart[node + 1]; e++) {
+                int child = childNodes[e];
+                int target = next(fail[node], childChars[e]);
+                fail[child] = target;
+                outputLink[child] = output[target] != NO_NODE ? target : outputLink[target];
+                queue.add(child);
+            }
+        }
+    }
+    
+    private int child(int node, char c) {
+        int lo = childStart[node];
+        int hi = childStart[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char midChar = childChars[mid];
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return childNodes[mid];
+            }
+        }
+        return NO_NODE;
+    }
+    
+    private int next(int node, char c) {
+        while (true) {
+            int target = child(node, c);
+            if (target != NO_NODE) {
+                return target;
+            }
+            if (node == ROOT) {
+                return ROOT;
+            }
+            node = fail[node];
+        }
+    }
+    
+    // Sets the id of every pattern that occurs in text.
+    void findAll(CharSequence text, BitSet matched) {
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            int hit = output[node] != NO_NODE ? node : outputLink[node];
+            while (hit != NO_NODE) {
+                matched.set(output[hit]);
+                hit = outputLink[hit];
+            }
+        }
+    }
+    
+    // Like findAll, but folds the text a char at a time (see CaseFolding) so a
+    // message can be matched against folded patterns without copying it
+    void findAllFolded(CharSequence text, BitSet matched) {
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, CaseFolding.fold(text.charAt(i)));
+            int hit = output[node] != NO_NODE ? node : outputLink[node];
+            while (hit != NO_NODE) {
+                matched.set(output[hit]);
+                hit = outputLink[hit];
+            }
+        }
+    }
+    
+    int getPatternCount() {
+        return patternCount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.smsforwarder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Collects items from any thread without blocking and hands them to a sink in
+// batches on a background executor, once a batch is full or the oldest item
+// has waited maxDelayMillis. If the sink falls behind, the oldest buffered
+// items are dropped once maxPending is reached.
+public final class BatchWriter<T> {
+    
+    public interface Sink<T> {
+        void write(List<T> batch) throws Exception;
+    }
+    
+    private final Sink<T> sink;
+    private final ScheduledExecutorService executor;
+    private final int batchSize;
+    private final long maxDelayMillis;
+    private final int maxPending;
+    
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean delayedFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean();
+    private final Runnable flushTask = this::flushNow;
+    
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    
+    public BatchWriter(Sink<T> sink, ScheduledExecutorService executor,
+                       int batchSize, long maxDelayMillis, int maxPending) {
+        this.sink = sink;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxPending = maxPending;
+    }
+    
+    public void add(T item) {
+        queue.offer(item);
+        added.incrementAndGet();
+        int size = pending.incrementAndGet();
+        
+        if (size > maxPending && queue.poll() != null) {
+            pending.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+        
+        if (size >= batchSize) {
+            if (immediateFlushScheduled.compareAndSet(false, true)) {
+                executor.execute(flushTask);
+            }
+        } else if (delayedFlushScheduled.compareAndSet(false, true)) {
+            executor.schedule(flushTask, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Writes everything buffered so far. Runs on the executor thread.
+    public void flushNow() {
+        immediateFlushScheduled.set(false);
+        delayedFlushScheduled.set(false);
+        
+        List<T> batch = new ArrayList<>(batchSize);
+        T item;
+        while ((item = queue.poll()) != null) {
+            pending.decrementAndGet();
+            batch.add(item);
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+    
+    public int getPendingCount() {
+        return pending.get();
+    }
+    
+    public String getStats() {
+        return "added=" + added.get() +
+                ", written=" + written.get() +
+                ", batches=" + batches.get() +
+                ", pending=" + pending.get() +
+                ", dropped=" + dropped.get() +
+                ", failed=" + failed.get();
+    }
+    
+    private void write(List<T> batch) {
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+        }
+    }
+}
\ No newline at end of file
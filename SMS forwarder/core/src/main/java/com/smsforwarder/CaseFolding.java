@@ -0,0 +1,91 @@
+package com.smsforwarder;
+
+// Locale-independent case folding for keyword matching. A char is folded the
+// way String.regionMatches(true, ...) compares it, upper then lower case, so
+// results do not depend on the device locale (no Turkish dotless i surprises)
+// and folding a message never allocates.
+public final class CaseFolding {
+    
+    private CaseFolding() {
+    }
+    
+    public static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+    
+    // Used once per pattern when rules are compiled, not per message
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (fold(c) != c) {
+                char[] folded = text.toCharArray();
+                for (int j = i; j < folded.length; j++) {
+                    folded[j] = fold(folded[j]);
+                }
+                return new String(folded);
+            }
+        }
+        return text;
+    }
+    
+    // True if foldedPattern, already folded, occurs in text ignoring case
+    public static boolean containsFolded(CharSequence text, String foldedPattern) {
+        int patternLength = foldedPattern.length();
+        if (patternLength == 0) {
+            return true;
+        }
+        char first = foldedPattern.charAt(0);
+        int last = text.length() - patternLength;
+        for (int i = 0; i <= last; i++) {
+            if (fold(text.charAt(i)) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < patternLength && fold(text.charAt(i + j)) == foldedPattern.charAt(j)) {
+                j++;
+            }
+            if (j == patternLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Folds both sides on the fly, for patterns that were not prepared up front
+    public static boolean containsIgnoreCase(CharSequence text, CharSequence pattern) {
+        int patternLength = pattern.length();
+        if (patternLength == 0) {
+            return true;
+        }
+        int last = text.length() - patternLength;
+        for (int i = 0; i <= last; i++) {
+            int j = 0;
+            while (j < patternLength && fold(text.charAt(i + j)) == fold(pattern.charAt(j))) {
+                j++;
+            }
+            if (j == patternLength) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // trim().isEmpty() without the copy
+    public static boolean isBlank(CharSequence text) {
+        if (text == null) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
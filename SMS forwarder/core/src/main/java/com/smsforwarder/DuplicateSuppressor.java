@@ -0,0 +1,81 @@
+package com.smsforwarder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Remembers recently forwarded (destination, content) pairs for a time window
+// so that an inbound SMS the network delivers twice is only forwarded once.
+// Bounded in size; the oldest entries are dropped first.
+public final class DuplicateSuppressor {
+    
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private final long windowMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Long> recent = new LinkedHashMap<>();
+    private long suppressed;
+    
+    public DuplicateSuppressor(long windowMillis, int maxEntries) {
+        this.windowMillis = windowMillis;
+        this.maxEntries = maxEntries;
+    }
+    
+    // Returns true if the pair was already seen within the window, otherwise
+    // records it and returns false.
+    public synchronized boolean isDuplicate(String destinationKey, long contentHash, long nowMillis) {
+        evictExpired(nowMillis);
+        
+        String key = destinationKey + '\u0000' + contentHash;
+        if (recent.containsKey(key)) {
+            suppressed++;
+            return true;
+        }
+        
+        recent.put(key, nowMillis);
+        if (recent.size() > maxEntries) {
+            Iterator<String> oldest = recent.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return false;
+    }
+    
+    public synchronized int size() {
+        return recent.size();
+    }
+    
+    public synchronized long getSuppressedCount() {
+        return suppressed;
+    }
+    
+    // 64-bit FNV-1a over the original sender and body
+    public static long contentHash(String sender, String body) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, sender);
+        hash *= FNV_PRIME;  // separator, so ("ab", "c") and ("a", "bc") differ
+        hash = mix(hash, body);
+        return hash;
+    }
+    
+    private static long mix(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    // Entries are in insertion order, so expired ones are all at the head
+    private void evictExpired(long nowMillis) {
+        Iterator<Map.Entry<String, Long>> it = recent.entrySet().iterator();
+        while (it.hasNext()) {
+            if (nowMillis - it.next().getValue() < windowMillis) {
+                break;
+            }
+            it.remove();
+        }
+    }
+}
\ No newline at end of file
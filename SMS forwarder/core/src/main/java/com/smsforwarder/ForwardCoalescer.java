@@ -0,0 +1,159 @@
+package com.smsforwarder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Buffers outgoing forwards per destination and sends each buffer as one
+// combined message, either when the window since its first entry has passed
+// or when adding another entry would go over the byte budget.
+public final class ForwardCoalescer {
+    
+    public interface Sink {
+        void send(String destination, String text);
+    }
+    
+    private static final String SEPARATOR = "\n\n";
+    private static final int SEPARATOR_BYTES = SEPARATOR.length();
+    
+    private final long windowMillis;
+    private final int maxBytes;
+    private final Sink sink;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Batch> batches = new HashMap<>();
+    
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong batchesOut = new AtomicLong();
+    
+    public ForwardCoalescer(long windowMillis, int maxBytes, Sink sink, ScheduledExecutorService scheduler) {
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+    
+    public void submit(String destination, String text) {
+        messagesIn.incrementAndGet();
+        int bytes = utf8Length(text);
+        List<Batch> ready = new ArrayList<>(2);
+        Batch started = null;
+        
+        synchronized (this) {
+            Batch batch = batches.get(destination);
+            if (batch != null && batch.bytes + SEPARATOR_BYTES + bytes > maxBytes) {
+                batches.remove(destination);
+                ready.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(destination);
+                batches.put(destination, batch);
+                started = batch;
+            }
+            batch.add(text, bytes);
+            if (batch.bytes >= maxBytes) {
+                batches.remove(destination);
+                ready.add(batch);
+                started = null;
+            }
+        }
+        
+        for (Batch batch : ready) {
+            send(batch);
+        }
+        if (started != null) {
+            final Batch scheduled = started;
+            scheduler.schedule(() -> flush(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Sends every buffered batch now, e.g. when the service is stopping.
+    public void flushAll() {
+        List<Batch> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+        for (Batch batch : pending) {
+            send(batch);
+        }
+    }
+    
+    public long getMessageCount() {
+        return messagesIn.get();
+    }
+    
+    public long getBatchCount() {
+        return batchesOut.get();
+    }
+    
+    // Average number of forwards carried by one outgoing message
+    public double getBatchingRatio() {
+        long out = batchesOut.get();
+        return out == 0 ? 0 : (double) messagesIn.get() / out;
+    }
+    
+    public String getStats() {
+        return "messages=" + messagesIn.get() +
+                ", batches=" + batchesOut.get() +
+                ", ratio=" + String.format(Locale.US, "%.2f", getBatchingRatio());
+    }
+    
+    private void flush(Batch batch) {
+        synchronized (this) {
+            // The batch may already have gone out because it filled up
+            if (batches.get(batch.destination) != batch) {
+                return;
+            }
+            batches.remove(batch.destination);
+        }
+        send(batch);
+    }
+    
+    private void send(Batch batch) {
+        batchesOut.incrementAndGet();
+        sink.send(batch.destination, batch.text.toString());
+    }
+    
+    static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+    
+    private static final class Batch {
+        final String destination;
+        final StringBuilder text = new StringBuilder();
+        int bytes;
+        
+        Batch(String destination) {
+            this.destination = destination;
+        }
+        
+        void add(String message, int messageBytes) {
+            if (text.length() > 0) {
+                text.append(SEPARATOR);
+                bytes += SEPARATOR_BYTES;
+            }
+            text.append(message);
+            bytes += messageBytes;
+        }
+    }
+}
\ No newline at end of file
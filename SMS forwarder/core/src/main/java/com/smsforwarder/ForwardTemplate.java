@@ -0,0 +1,297 @@
+package com.smsforwarder;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+
+// A rule's forward text, compiled once from a template such as
+// "{sender} {time}\n{body}". Placeholders are {sender}, {body}, {time}
+// (MM/dd HH:mm, local time) and {rule} (the rule id; rules have no name to
+// show instead); {{ and }} are literal braces. Compaction modes trade
+// fidelity for fewer billed segments and are off unless the rule opts in:
+//   COMPACT_HEADER        "{sender}: {body}" instead of the default header,
+//                         and the body loses its carrier "[Web발신]" style
+//                         marker and repeated blanks
+//   COMPACT_TRANSLITERATE characters outside GSM 7-bit (curly quotes, dashes,
+//                         accented letters...) replaced by plain ones, when
+//                         that makes the whole text GSM 7-bit
+public final class ForwardTemplate {
+    
+    public static final int COMPACT_HEADER = 1;
+    public static final int COMPACT_TRANSLITERATE = 1 << 1;
+    public static final int COMPACT_ALL = COMPACT_HEADER | COMPACT_TRANSLITERATE;
+    
+    public static final String DEFAULT_TEMPLATE = "Forwarded SMS from {sender}:\n{body}";
+    static final String SHORT_TEMPLATE = "{sender}: {body}";
+    
+    private static final String[] CARRIER_MARKERS = {"[Web발신]", "[국외발신]", "[국제발신]", "(광고)"};
+    
+    // Replacements for common characters that would force UCS-2
+    private static final String TRANSLITERATE_FROM = "‘’‚‛′“”„‟″–—―‐‑−"
+            + "‹›«»×÷\u00a0\u2002\u2009\u202f\u3000";
+    private static final String[] TRANSLITERATE_TO = {
+        "'", "'", "'", "'", "'", "\"", "\"", "\"", "\"", "\"", "-", "-", "-", "-", "-", "-",
+        "<", ">", "\"", "\"", "x", "/", " ", " ", " ", " ", " "
+    };
+    
+    private static final int SENDER = 0;
+    private static final int BODY = 1;
+    private static final int TIME = 2;
+    private static final int RULE = 3;
+    private static final String[] PLACEHOLDERS = {"sender", "body", "time", "rule"};
+    
+    // After the tables above, which compile() needs
+    public static final ForwardTemplate DEFAULT = compile(null, 0);
+    
+    private final String source;
+    private final int compaction;
+    // Literal text as String, placeholders as Integer
+    private final Object[] parts;
+    private final boolean usesTime;
+    private final boolean usesRuleId;
+    private final boolean isDefault;
+    
+    private ForwardTemplate(String source, int compaction, Object[] parts) {
+        this.source = source;
+        this.compaction = compaction;
+        this.parts = parts;
+        boolean time = false;
+        boolean ruleId = false;
+        for (Object part : parts) {
+            if (part instanceof Integer) {
+                time |= (Integer) part == TIME;
+                ruleId |= (Integer) part == RULE;
+            }
+        }
+        this.usesTime = time;
+        this.usesRuleId = ruleId;
+        this.isDefault = source == null && compaction == 0;
+    }
+    
+    // template null or blank means the default header. Throws
+    // IllegalArgumentException for an unknown placeholder or a stray brace.
+    public static ForwardTemplate compile(String template, int compaction) {
+        String source = CaseFolding.isBlank(template) ? null : template;
+        String text = source != null ? source
+                : (compaction & COMPACT_HEADER) != 0 ? SHORT_TEMPLATE : DEFAULT_TEMPLATE;
+        
+        List<Object> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c == '{' || c == '}') && i + 1 < text.length() && text.charAt(i + 1) == c) {
+                literal.append(c);
+                i++;
+            } else if (c == '{') {
+                int close = text.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed { at " + i);
+                }
+                String name = text.substring(i + 1, close).trim().toLowerCase(Locale.ROOT);
+                int placeholder = indexOf(name);
+                if (placeholder < 0) {
+                    throw new IllegalArgumentException("Unknown placeholder {" + name + "}");
+                }
+                if (literal.length() > 0) {
+                    parts.add(literal.toString());
+                    literal.setLength(0);
+                }
+                parts.add(placeholder);
+                i = close;
+            } else if (c == '}') {
+                throw new IllegalArgumentException("Unmatched } at " + i);
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            parts.add(literal.toString());
+        }
+        return new ForwardTemplate(source, compaction, parts.toArray());
+    }
+    
+    public static boolean isValid(String template) {
+        try {
+            compile(template, 0);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    private static int indexOf(String name) {
+        for (int i = 0; i < PLACEHOLDERS.length; i++) {
+            if (PLACEHOLDERS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    // Template text as the rule stores it, null for the default
+    public String getSource() {
+        return source;
+    }
+    
+    public int getCompaction() {
+        return compaction;
+    }
+    
+    // The text differs between rules sharing this template
+    public boolean usesRuleId() {
+        return usesRuleId;
+    }
+    
+    public String format(String sender, String body, int ruleId, long timeMillis) {
+        if (isDefault) {
+            return MessageFormatter.formatForward(sender, body);
+        }
+        String from = String.valueOf(sender);
+        String message = String.valueOf(body);
+        if ((compaction & COMPACT_HEADER) != 0) {
+            message = compactBody(message);
+        }
+        
+        StringBuilder text = new StringBuilder(from.length() + message.length() + 32);
+        String time = usesTime ? formatTime(timeMillis) : null;
+        for (Object part : parts) {
+            if (part instanceof String) {
+                text.append((String) part);
+                continue;
+            }
+            switch ((Integer) part) {
+                case SENDER:
+                    text.append(from);
+                    break;
+                case BODY:
+                    text.append(message);
+                    break;
+                case TIME:
+                    text.append(time);
+                    break;
+                case RULE:
+                default:
+                    text.append(ruleId);
+                    break;
+            }
+        }
+        
+        String result = text.toString();
+        if ((compaction & COMPACT_TRANSLITERATE) != 0 && !SmsSegments.isGsm7(result)) {
+            String plain = transliterate(result);
+            if (SmsSegments.isGsm7(plain)) {
+                result = plain;
+            }
+        }
+        return result;
+    }
+    
+    // Drops a leading carrier marker and folds runs of spaces and blank lines
+    static String compactBody(String body) {
+        String text = body.trim();
+        for (String marker : CARRIER_MARKERS) {
+            if (text.startsWith(marker)) {
+                text = text.substring(marker.length()).trim();
+            }
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        boolean space = false;
+        boolean newline = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                newline = true;
+            } else if (c == ' ' || c == '\t' || c == '\u00a0') {
+                space = true;
+            } else {
+                if (newline) {
+                    out.append('\n');
+                } else if (space) {
+                    out.append(' ');
+                }
+                space = false;
+                newline = false;
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+    
+    static String transliterate(String text) {
+        StringBuilder out = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (SmsSegments.septets(c) != 0) {
+                if (out != null) {
+                    out.append(c);
+                }
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(text.length() + 8);
+                out.append(text, 0, i);
+            }
+            int mapped = TRANSLITERATE_FROM.indexOf(c);
+            if (mapped >= 0) {
+                out.append(TRANSLITERATE_TO[mapped]);
+            } else if (c == '\u2026') {
+                out.append("...");
+            } else {
+                // Accented letters lose their marks; anything else is left
+                // and keeps the text UCS-2
+                String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+                char base = decomposed.charAt(0);
+                out.append(decomposed.length() > 1 && SmsSegments.septets(base) != 0 ? base : c);
+            }
+        }
+        return out != null ? out.toString() : text;
+    }
+    
+    // Calendar per call, SimpleDateFormat is not thread-safe
+    private static String formatTime(long timeMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMillis);
+        return String.format(Locale.ROOT, "%02d/%02d %02d:%02d",
+                calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE));
+    }
+    
+    // Names used for the compaction flags in exported rule files, e.g. "header,transliterate"
+    public static String compactionNames(int compaction) {
+        StringBuilder names = new StringBuilder();
+        if ((compaction & COMPACT_HEADER) != 0) {
+            names.append("header");
+        }
+        if ((compaction & COMPACT_TRANSLITERATE) != 0) {
+            names.append(names.length() > 0 ? "," : "").append("transliterate");
+        }
+        return names.toString();
+    }
+    
+    // Accepts the names above separated by commas, spaces or "|", or the
+    // number; a number that does not fit an int is no compaction
+    public static int parseCompaction(String value) {
+        if (CaseFolding.isBlank(value)) {
+            return 0;
+        }
+        String trimmed = value.trim();
+        if (trimmed.chars().allMatch(Character::isDigit)) {
+            try {
+                return Integer.parseInt(trimmed) & COMPACT_ALL;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        int compaction = 0;
+        for (String name : trimmed.toLowerCase(Locale.ROOT).split("[,|\\s]+")) {
+            if (name.equals("header")) {
+                compaction |= COMPACT_HEADER;
+            } else if (name.equals("transliterate")) {
+                compaction |= COMPACT_TRANSLITERATE;
+            }
+        }
+        return compaction;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.smsforwarder;
+
+import java.util.List;
+
+// The forwarding pipeline from a received message to its outgoing forwards:
+// rule lookup, matching, duplicate suppression and formatting, run on
+// per-sender lanes so one sender's messages stay in order. Android-free, so
+// the service and the load generator run the same code; where the forwards
+// go is up to the Outbox.
+public final class ForwardingEngine {
+    
+    public interface MatcherSource {
+        // Called once per message; expected to be a cached lookup
+        RuleMatcher get();
+    }
+    
+    public interface Outbox {
+        // Called on a lane thread for every destination the message goes to
+        void forward(ForwardingRule rule, String sender, String message, String forwardedText);
+        
+        void onError(String sender, RuntimeException e);
+    }
+    
+    // A repeated (destination, content) pair within this window is not forwarded again
+    private static final long DUPLICATE_WINDOW_MS = 2 * 60 * 1000;
+    private static final int DUPLICATE_MAX_ENTRIES = 1024;
+    
+    private final MatcherSource matchers;
+    private final Outbox outbox;
+    private final ForwardingMetrics metrics;
+    private final StripedExecutor pipeline;
+    private final DuplicateSuppressor duplicates = new DuplicateSuppressor(DUPLICATE_WINDOW_MS, DUPLICATE_MAX_ENTRIES);
+    
+    public ForwardingEngine(MatcherSource matchers, Outbox outbox, ForwardingMetrics metrics,
+                            int laneCount, int laneCapacity, long enqueueTimeoutMillis) {
+        this.matchers = matchers;
+        this.outbox = outbox;
+        this.metrics = metrics;
+        this.pipeline = new StripedExecutor("sms-forwarding", laneCount, laneCapacity,
+                StripedExecutor.OverflowPolicy.BLOCK, enqueueTimeoutMillis);
+    }
+    
+    // Returns false if the message was dropped because its lane stayed full
+    public boolean submit(String sender, String message) {
+        return submit(sender, message, -1, null);
+    }
+    
+    // receivedAtNanos (System.nanoTime, or -1 if unknown) is when the message
+    // arrived, for the receive-to-match latency. onProcessed, if not null, runs
+    // on the lane once the message has been matched and forwarded; it does
+    // not run if this returns false.
+    public boolean submit(final String sender, final String message,
+                          final long receivedAtNanos, final Runnable onProcessed) {
+        boolean queued = pipeline.execute(sender, () -> process(sender, message, receivedAtNanos), onProcessed);
+        if (!queued) {
+            metrics.increment(ForwardingMetrics.Counter.MESSAGES_DROPPED);
+        }
+        return queued;
+    }
+    
+    private void process(String sender, String message, long receivedAtNanos) {
+        try {
+            long loadStart = System.nanoTime();
+            RuleMatcher matcher = matchers.get();
+            metrics.recordSince(ForwardingMetrics.Stage.RULE_LOAD, loadStart);
+            
+            long matchStart = System.nanoTime();
+            List<ForwardingRule> matched = matcher.matchDistinctDestinations(sender, message);
+            metrics.recordSince(ForwardingMetrics.Stage.MATCH, matchStart);
+            if (receivedAtNanos >= 0) {
+                metrics.recordSince(ForwardingMetrics.Stage.RECEIVE_TO_MATCH, receivedAtNanos);
+            }
+            if (matched.isEmpty()) {
+                return;
+            }
+            metrics.increment(ForwardingMetrics.Counter.MESSAGES_MATCHED);
+            
+            long contentHash = DuplicateSuppressor.contentHash(sender, message);
+            long now = System.nanoTime() / 1000000;
+            long receivedAtMillis = System.currentTimeMillis();
+            // Rules without their own template share the default text
+            ForwardTemplate lastTemplate = null;
+            String forwardedText = null;
+            for (ForwardingRule rule : matched) {
+                String destinationKey = rule.destinationKey(matcher.getNormalizer());
+                if (duplicates.isDuplicate(destinationKey, contentHash, now)) {
+                    metrics.increment(ForwardingMetrics.Counter.DUPLICATES_SKIPPED);
+                    continue;
+                }
+                ForwardTemplate template = rule.getForwardTemplate();
+                if (template != lastTemplate || template.usesRuleId()) {
+                    forwardedText = template.format(sender, message, rule.id, receivedAtMillis);
+                    lastTemplate = template;
+                }
+                outbox.forward(rule, sender, message, forwardedText);
+            }
+        } catch (RuntimeException e) {
+            outbox.onError(sender, e);
+        }
+    }
+    
+    // Stops taking messages and waits for the queued ones; false if they did not finish in time
+    public boolean shutdown(long drainTimeoutMillis) throws InterruptedException {
+        pipeline.shutdown();
+        return pipeline.awaitTermination(drainTimeoutMillis);
+    }
+    
+    // Waits for the messages queued so far and keeps taking new ones; false
+    // if they did not finish in time
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        return pipeline.awaitIdle(timeoutMillis);
+    }
+    
+    public int getQueueDepth() {
+        return pipeline.getQueueDepth();
+    }
+    
+    public long getCompletedCount() {
+        return pipeline.getCompletedCount();
+    }
+    
+    public long getSuppressedCount() {
+        return duplicates.getSuppressedCount();
+    }
+    
+    public String getStats() {
+        return pipeline.getStats() + ", duplicates=" + duplicates.getSuppressedCount();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,176 @@
+package com.smsforwarder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Where the time goes between an SMS arriving and its forwards being sent.
+// One latency histogram per stage plus a handful of event counters, all
+// lock-free. The process-wide instance is printed by dumpsys on
+// SmsMonitoringService, as text or as a JSON snapshot.
+public final class ForwardingMetrics {
+    
+    public enum Stage {
+        RECEIVE("receive"),          // SmsReceiver.onReceive, PDUs to forwarding requests
+        PARSE("parse"),              // decoding the PDUs of one broadcast
+        RULE_LOAD("rule_load"),      // getting the rule snapshot, a rebuild on a cache miss
+        MATCH("match"),              // finding the rules that fire for one message
+        RECEIVE_TO_MATCH("receive_to_match"),  // from the SMS broadcast to the end of matching
+        SEND("send"),                // handing one message to SmsManager
+        SEND_RESULT("send_result"),  // from SmsManager to the last sent broadcast for the message
+        WEBHOOK_POST("webhook_post");  // one batch POST, request to response
+        
+        public final String key;
+        
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+    
+    public enum Counter {
+        SMS_RECEIVED("sms_received"),
+        PDUS_PARSED("pdus_parsed"),
+        MESSAGES_MATCHED("messages_matched"),
+        FORWARDS_QUEUED("forwards_queued"),
+        SEGMENTS_QUEUED("segments_queued"),  // billed segments of the queued forwards, see SmsSegments
+        DUPLICATES_SKIPPED("duplicates_skipped"),
+        MESSAGES_DROPPED("messages_dropped"),
+        SEND_OK("send_ok"),
+        SEND_FAILED("send_failed"),
+        WEBHOOK_DELIVERED("webhook_delivered"),  // messages, not batches
+        WEBHOOK_FAILED("webhook_failed"),
+        WEBHOOK_BATCHES("webhook_batches");
+        
+        public final String key;
+        
+        Counter(String key) {
+            this.key = key;
+        }
+    }
+    
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final ForwardingMetrics GLOBAL = new ForwardingMetrics();
+    
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private volatile long startedAtMillis = System.currentTimeMillis();
+    
+    public ForwardingMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+    
+    public static ForwardingMetrics global() {
+        return GLOBAL;
+    }
+    
+    // startNanos is a System.nanoTime() reading taken when the stage began
+    public void recordSince(Stage stage, long startNanos) {
+        stages[stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+    
+    public void recordNanos(Stage stage, long nanos) {
+        stages[stage.ordinal()].recordNanos(nanos);
+    }
+    
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+    
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+    
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+    
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+    
+    public void reset() {
+        for (LatencyHistogram histogram : stages) {
+            histogram.reset();
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        startedAtMillis = System.currentTimeMillis();
+    }
+    
+    public void dump(PrintWriter pw) {
+        // The stage column is as wide as the longest key so the table lines up
+        int width = "stage".length();
+        for (Stage stage : Stage.values()) {
+            width = Math.max(width, stage.key.length());
+        }
+        String stageColumn = "  %-" + width + "s";
+        
+        pw.println("Forwarding metrics since " + startedAtMillis + " (latencies in us):");
+        pw.println(String.format(Locale.ROOT, stageColumn + " %10s %10s %10s %10s %10s %10s %10s",
+                "stage", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = getHistogram(stage);
+            pw.println(String.format(Locale.ROOT, stageColumn + " %10d %10d %10d %10d %10d %10d %10d",
+                    stage.key, h.getCount(), h.getMeanMicros(),
+                    h.getPercentileMicros(50), h.getPercentileMicros(90),
+                    h.getPercentileMicros(99), h.getPercentileMicros(99.9), h.getMaxMicros()));
+        }
+        pw.println("Counters:");
+        for (Counter counter : Counter.values()) {
+            pw.println("  " + counter.key + "=" + get(counter));
+        }
+    }
+    
+    // Flat JSON object; keys are stable so field reports can be compared across versions
+    public void writeJson(Appendable out) throws IOException {
+        out.append("{\"started_at_ms\":").append(Long.toString(startedAtMillis));
+        out.append(",\"captured_at_ms\":").append(Long.toString(System.currentTimeMillis()));
+        out.append(",\"stages\":{");
+        Stage[] stageValues = Stage.values();
+        for (int i = 0; i < stageValues.length; i++) {
+            LatencyHistogram h = getHistogram(stageValues[i]);
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(stageValues[i].key).append("\":{\"count\":").append(Long.toString(h.getCount()));
+            out.append(",\"mean_us\":").append(Long.toString(h.getMeanMicros()));
+            for (double percentile : PERCENTILES) {
+                out.append(",\"p").append(percentileKey(percentile)).append("_us\":")
+                        .append(Long.toString(h.getPercentileMicros(percentile)));
+            }
+            out.append(",\"max_us\":").append(Long.toString(h.getMaxMicros())).append('}');
+        }
+        out.append("},\"counters\":{");
+        Counter[] counterValues = Counter.values();
+        for (int i = 0; i < counterValues.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append('"').append(counterValues[i].key).append("\":").append(Long.toString(get(counterValues[i])));
+        }
+        out.append("}}");
+    }
+    
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        try {
+            writeJson(json);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+    
+    // 99.9 -> "99_9", so the keys stay plain identifiers
+    private static String percentileKey(double percentile) {
+        if (percentile == Math.rint(percentile)) {
+            return Long.toString((long) percentile);
+        }
+        return Double.toString(percentile).replace('.', '_');
+    }
+}
\ No newline at end of file
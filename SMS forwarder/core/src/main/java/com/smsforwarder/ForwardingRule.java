@@ -0,0 +1,213 @@
+package com.smsforwarder;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import com.google.re2j.Pattern;
+
+@Entity(tableName = "forwarding_rules",
+        indices = {
+                @Index(value = {"isEnabled"})
+        })
+public class ForwardingRule {
+    // How messageContent is matched against the body
+    public static final int MATCH_MODE_KEYWORD = 0;  // case-insensitive substring
+    public static final int MATCH_MODE_REGEX = 1;    // case-insensitive regex find, see PatternCache
+    // Where matched messages go
+    public static final int TARGET_SMS = 0;          // forwardToNumber
+    public static final int TARGET_WEBHOOK = 1;      // webhookUrl, see WebhookBatcher
+    
+    @PrimaryKey(autoGenerate = true)
+    public int id;
+    
+    public String senderNumber;
+    public boolean senderExactMatch; // true for exact match, false for partial match
+    public String messageContent;
+    public String forwardToNumber;
+    public boolean isEnabled;
+    @ColumnInfo(defaultValue = "0")
+    public int matchMode;
+    // Forward text, see ForwardTemplate; null for the default header
+    public String template;
+    // ForwardTemplate.COMPACT_* flags
+    @ColumnInfo(defaultValue = "0")
+    public int compaction;
+    // SIM slot to send from, SendLanes.ANY_SLOT to let OutboundQueue choose
+    @ColumnInfo(defaultValue = "-1")
+    public int simSlot = SendLanes.ANY_SLOT;
+    @ColumnInfo(defaultValue = "0")
+    public int targetType;
+    public String webhookUrl;
+    
+    // Computed on first use; rules are not changed once they are in a snapshot
+    @androidx.room.Ignore
+    private volatile ForwardTemplate compiledTemplate;
+    @androidx.room.Ignore
+    private volatile String canonicalSender;
+    
+    public ForwardingRule() {
+        this.isEnabled = true;
+    }
+    
+    @androidx.room.Ignore
+    public ForwardingRule(String senderNumber, boolean senderExactMatch, 
+                         String messageContent, String forwardToNumber) {
+        this.senderNumber = senderNumber;
+        this.senderExactMatch = senderExactMatch;
+        this.messageContent = messageContent;
+        this.forwardToNumber = forwardToNumber;
+        this.isEnabled = true;
+    }
+    
+    public boolean isRegex() {
+        return matchMode == MATCH_MODE_REGEX;
+    }
+    
+    public boolean isWebhook() {
+        return targetType == TARGET_WEBHOOK;
+    }
+    
+    // Number or URL the forwards go to
+    public String getDestination() {
+        return isWebhook() ? webhookUrl : forwardToNumber;
+    }
+    
+    // Same for rules forwarding to the same place; URLs never collide with
+    // canonical numbers, which have no ':'
+    public String destinationKey(PhoneNumberNormalizer normalizer) {
+        return isWebhook() ? String.valueOf(webhookUrl) : normalizer.canonicalize(forwardToNumber);
+    }
+    
+    // Falls back to the default header if the stored template does not compile
+    public ForwardTemplate getForwardTemplate() {
+        ForwardTemplate compiled = compiledTemplate;
+        if (compiled == null) {
+            if (CaseFolding.isBlank(template) && compaction == 0) {
+                compiled = ForwardTemplate.DEFAULT;
+            } else {
+                try {
+                    compiled = ForwardTemplate.compile(template, compaction);
+                } catch (IllegalArgumentException e) {
+                    compiled = ForwardTemplate.compile(null, compaction);
+                }
+            }
+            compiledTemplate = compiled;
+        }
+        return compiled;
+    }
+    
+    // Names used for matchMode in exported rule files
+    public static String matchModeName(int matchMode) {
+        return matchMode == MATCH_MODE_REGEX ? "regex" : "keyword";
+    }
+    
+    public static int parseMatchMode(String value) {
+        if (value != null && (value.trim().equalsIgnoreCase("regex") || value.trim().equals("1"))) {
+            return MATCH_MODE_REGEX;
+        }
+        return MATCH_MODE_KEYWORD;
+    }
+    
+    // Names used for targetType in exported rule files
+    public static String targetTypeName(int targetType) {
+        return targetType == TARGET_WEBHOOK ? "webhook" : "sms";
+    }
+    
+    public static int parseTargetType(String value) {
+        if (value != null && (value.trim().equalsIgnoreCase("webhook") || value.trim().equals("1"))) {
+            return TARGET_WEBHOOK;
+        }
+        return TARGET_SMS;
+    }
+    
+    // Webhooks must be HTTPS, Android refuses cleartext HTTP by default
+    public static boolean isValidWebhookUrl(String url) {
+        if (url == null) {
+            return false;
+        }
+        String trimmed = url.trim();
+        return trimmed.regionMatches(true, 0, "https://", 0, 8) && trimmed.length() > 8
+                && trimmed.indexOf(' ') < 0;
+    }
+    
+    // SIM as exported rule files and the UI number it: "1", "2"..., blank for any
+    public static String simSlotName(int simSlot) {
+        return simSlot == SendLanes.ANY_SLOT ? "" : String.valueOf(simSlot + 1);
+    }
+    
+    public static int parseSimSlot(String value) {
+        if (CaseFolding.isBlank(value)) {
+            return SendLanes.ANY_SLOT;
+        }
+        try {
+            int sim = Integer.parseInt(value.trim());
+            return sim >= 1 ? sim - 1 : SendLanes.ANY_SLOT;
+        } catch (NumberFormatException e) {
+            return SendLanes.ANY_SLOT;
+        }
+    }
+    
+    // Canonicalizes fromNumber on every call; loops over many rules should
+    // canonicalize once, with PhoneNumberNormalizer.DEFAULT, and use the
+    // three-argument form
+    public boolean matchesSms(String fromNumber, String messageBody) {
+        return matchesSms(fromNumber, PhoneNumberNormalizer.DEFAULT.canonicalize(fromNumber), messageBody);
+    }
+    
+    // Allocation-free after the first call: exact senders compare canonical
+    // forms, blank checks and the case-insensitive comparison work on the
+    // strings in place
+    public boolean matchesSms(String fromNumber, String canonicalFromNumber, String messageBody) {
+        // Check sender number match
+        if (!CaseFolding.isBlank(senderNumber)) {
+            if (senderExactMatch) {
+                String canonical = canonicalSender;
+                if (canonical == null) {
+                    canonical = PhoneNumberNormalizer.DEFAULT.canonicalize(senderNumber);
+                    canonicalSender = canonical;
+                }
+                if (!canonical.equals(canonicalFromNumber)) {
+                    return false;
+                }
+            } else {
+                if (!fromNumber.contains(senderNumber)) {
+                    return false;
+                }
+            }
+        }
+        
+        // Check message content match (partial match, or a bounded regex find)
+        if (!CaseFolding.isBlank(messageContent)) {
+            if (matchMode == MATCH_MODE_REGEX) {
+                Pattern pattern = PatternCache.shared().get(messageContent);
+                if (pattern == null || !PatternCache.shared().find(pattern, messageBody)) {
+                    return false;
+                }
+            } else if (!CaseFolding.containsIgnoreCase(messageBody, messageContent)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return "ForwardingRule{" +
+                "id=" + id +
+                ", senderNumber='" + senderNumber + '\'' +
+                ", senderExactMatch=" + senderExactMatch +
+                ", messageContent='" + messageContent + '\'' +
+                ", forwardToNumber='" + forwardToNumber + '\'' +
+                ", isEnabled=" + isEnabled +
+                ", matchMode=" + matchMode +
+                ", template='" + template + '\'' +
+                ", compaction=" + compaction +
+                ", simSlot=" + simSlot +
+                ", targetType=" + targetType +
+                ", webhookUrl='" + webhookUrl + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
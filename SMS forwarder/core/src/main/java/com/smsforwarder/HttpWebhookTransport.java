@@ -0,0 +1,57 @@
+package com.smsforwarder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// WebhookBatcher transport on HttpURLConnection. Both the JDK and Android's
+// implementation keep an idle keep-alive connection per host for the next
+// request, as long as the response body is read to the end and closed and the
+// connection is not disconnect()ed; this class does exactly that, and only
+// disconnects after an I/O error so a broken socket is not reused.
+public final class HttpWebhookTransport implements WebhookBatcher.Transport {
+    
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    
+    public HttpWebhookTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+    
+    @Override
+    public int post(String url, byte[] gzippedJson) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setFixedLengthStreamingMode(gzippedJson.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setRequestProperty("User-Agent", "SmsForwarder");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(gzippedJson);
+            }
+            
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (in != null) {
+                try (InputStream response = in) {
+                    byte[] skip = new byte[1024];
+                    while (response.read(skip) >= 0) {
+                        // Drained so the connection can go back to the pool
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.smsforwarder;
+
+// Builds the text that is sent to the forward-to number. Kept free of Android
+// classes so the benchmark module can measure it on a plain JVM.
+public final class MessageFormatter {
+    
+    private static final String FORWARD_PREFIX = "Forwarded SMS from ";
+    private static final String SENDER_SEPARATOR = ":\n";
+    
+    private MessageFormatter() {
+    }
+    
+    public static String formatForward(String originalSender, String originalMessage) {
+        String sender = String.valueOf(originalSender);
+        String message = String.valueOf(originalMessage);
+        // Sized up front so the builder never grows
+        StringBuilder text = new StringBuilder(FORWARD_PREFIX.length() + sender.length() +
+                SENDER_SEPARATOR.length() + message.length());
+        return text.append(FORWARD_PREFIX)
+                .append(sender)
+                .append(SENDER_SEPARATOR)
+                .append(message)
+                .toString();
+    }
+}
\ No newline at end of file
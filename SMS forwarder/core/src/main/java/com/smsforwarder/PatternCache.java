@@ -0,0 +1,87 @@
+package com.smsforwarder;
+
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Compiled regex rules, keyed by pattern text. Rule sets are recompiled on
+// every edit, but only patterns that are new since the last compile are
+// passed to Pattern.compile; edited-away patterns age out of the LRU. Patterns
+// are case-insensitive like keyword rules, inline flags can override that.
+//
+// Patterns are RE2/J, which matches in time linear in the message length for
+// any pattern; a hostile or careless pattern such as (a+)+$ cannot stall a
+// forwarding lane. java.util.regex backtracks, and on Android it hands the
+// text to ICU's native matcher, so a step limit on the Java side does not
+// hold there. RE2 syntax has no backreferences or lookaround; such patterns
+// do not compile and are rejected when a rule is saved or imported.
+public final class PatternCache {
+    
+    private static final int DEFAULT_CAPACITY = 1024;
+    
+    private static final PatternCache SHARED = new PatternCache(DEFAULT_CAPACITY);
+    private static final Pattern INVALID = Pattern.compile("[^\\x00-\\x{10FFFF}]");
+    
+    private final Map<String, Pattern> patterns;
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong compiles = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    
+    public PatternCache(final int capacity) {
+        this.patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+    
+    public static PatternCache shared() {
+        return SHARED;
+    }
+    
+    // Returns null if regex does not compile; such rules never match
+    public Pattern get(String regex) {
+        synchronized (patterns) {
+            Pattern pattern = patterns.get(regex);
+            if (pattern != null) {
+                hits.incrementAndGet();
+                return pattern == INVALID ? null : pattern;
+            }
+            try {
+                pattern = compile(regex);
+                compiles.incrementAndGet();
+            } catch (PatternSyntaxException e) {
+                pattern = INVALID;
+                invalid.incrementAndGet();
+            }
+            patterns.put(regex, pattern);
+            return pattern == INVALID ? null : pattern;
+        }
+    }
+    
+    // Throws PatternSyntaxException, for validating user input
+    public static Pattern compile(String regex) {
+        return Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+    }
+    
+    public boolean find(Pattern pattern, CharSequence text) {
+        evaluations.incrementAndGet();
+        return pattern.matcher(text).find();
+    }
+    
+    public String getStats() {
+        synchronized (patterns) {
+            return "size=" + patterns.size() +
+                    ", hits=" + hits.get() +
+                    ", compiles=" + compiles.get() +
+                    ", invalid=" + invalid.get() +
+                    ", evaluations=" + evaluations.get();
+        }
+    }
+}
\ No newline at end of file
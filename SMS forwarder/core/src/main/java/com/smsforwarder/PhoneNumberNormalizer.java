@@ -0,0 +1,90 @@
+package com.smsforwarder;
+
+// Canonical form of a phone number for comparing senders and destinations,
+// close to E.164: "+821012345678", "01012345678" and "010-1234-5678" all map
+// to "+821012345678" with the default country 82.
+//   - separators are dropped (see PhoneNumbers.normalize)
+//   - "+cc..." and "00cc..." are international, a trunk 0 right after the
+//     default country code ("+82 010...") is dropped
+//   - "0..." is national and gets the default country code in place of the 0
+//   - anything else (short codes such as 1544-xxxx, alphanumeric senders) is
+//     left as it is, since it has no international form
+// Countries whose national numbers keep the leading 0 (e.g. Italy) are not
+// handled; for those the default country should not be set to their code.
+public final class PhoneNumberNormalizer {
+    
+    public static final String DEFAULT_COUNTRY_CODE = "82";
+    public static final PhoneNumberNormalizer DEFAULT = new PhoneNumberNormalizer(DEFAULT_COUNTRY_CODE);
+    
+    // Shorter national numbers are service numbers rather than subscribers
+    private static final int MIN_NATIONAL_LENGTH = 8;
+    
+    private final String countryCode;
+    private final String internationalPrefix;
+    
+    // countryCallingCode is 1 to 3 digits, with or without a leading '+'
+    public PhoneNumberNormalizer(String countryCallingCode) {
+        String code = countryCallingCode == null ? "" : countryCallingCode.trim();
+        if (code.startsWith("+")) {
+            code = code.substring(1);
+        }
+        if (code.isEmpty() || code.length() > 3 || !isDigits(code, 0)) {
+            throw new IllegalArgumentException("Invalid country calling code: " + countryCallingCode);
+        }
+        this.countryCode = code;
+        this.internationalPrefix = "+" + code;
+    }
+    
+    public String getCountryCode() {
+        return countryCode;
+    }
+    
+    public String canonicalize(String number) {
+        String digits = PhoneNumbers.normalize(number);
+        if (digits.isEmpty()) {
+            return digits;
+        }
+        
+        if (digits.charAt(0) == '+') {
+            return isDigits(digits, 1) ? dropTrunkZero(digits) : digits;
+        }
+        if (!isDigits(digits, 0)) {
+            // Alphanumeric sender such as a bank or carrier name
+            return digits;
+        }
+        if (digits.startsWith("00") && digits.length() > 2 + MIN_NATIONAL_LENGTH) {
+            return dropTrunkZero("+" + digits.substring(2));
+        }
+        if (digits.charAt(0) == '0' && digits.length() >= MIN_NATIONAL_LENGTH) {
+            return internationalPrefix + digits.substring(1);
+        }
+        return digits;
+    }
+    
+    private String dropTrunkZero(String international) {
+        int trunk = internationalPrefix.length();
+        if (international.startsWith(internationalPrefix) && international.length() > trunk
+                && international.charAt(trunk) == '0') {
+            return internationalPrefix + international.substring(trunk + 1);
+        }
+        return international;
+    }
+    
+    private static boolean isDigits(String text, int from) {
+        if (from >= text.length()) {
+            return false;
+        }
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return "PhoneNumberNormalizer{+" + countryCode + "}";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.smsforwarder;
+
+// Helpers for comparing phone numbers as typed by users and as reported by
+// the radio, which differ in spacing and punctuation.
+public final class PhoneNumbers {
+    
+    private PhoneNumbers() {
+    }
+    
+    // Keeps digits and a leading '+', drops separators such as spaces, dashes,
+    // dots and parentheses. Alphanumeric addresses are returned trimmed.
+    public static String normalize(String number) {
+        if (number == null) {
+            return "";
+        }
+        String trimmed = number.trim();
+        StringBuilder digits = new StringBuilder(trimmed.length());
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0) {
+                digits.append(c);
+            } else if (c != ' ' && c != '-' && c != '.' && c != '(' && c != ')') {
+                return trimmed;
+            }
+        }
+        return digits.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.smsforwarder;
+
+import com.google.re2j.Pattern;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiled form of a set of forwarding rules. Gives the same answers as calling
+// ForwardingRule.matchesSms on every rule, but scans the sender and the body
+// once each no matter how many rules there are.
+public final class RuleMatcher {
+    
+    private final List<ForwardingRule> rules;
+    private final PhoneNumberNormalizer normalizer;
+    private final BitSet anySender;     // rules without a sender condition
+    private final BitSet anyContent;    // rules without a content condition
+    private final Map<String, int[]> exactSenders;  // keyed by canonical number
+    private final AhoCorasick partialSenders;
+    private final int[][] partialSenderRules;
+    private final AhoCorasick contentKeywords;
+    private final int[][] contentKeywordRules;
+    private final Pattern[] contentPatterns;   // null entries never match
+    private final int[][] contentPatternRules;
+    private final PatternCache patternCache;
+    private final int[] destinationIds;  // rules with the same destinationKey share an id
+    
+    private RuleMatcher(List<ForwardingRule> rules, PhoneNumberNormalizer normalizer,
+                        int[] destinationIds, BitSet anySender, BitSet anyContent,
+                        Map<String, int[]> exactSenders,
+                        AhoCorasick partialSenders, int[][] partialSenderRules,
+                        AhoCorasick contentKeywords, int[][] contentKeywordRules,
+                        Pattern[] contentPatterns, int[][] contentPatternRules, PatternCache patternCache) {
+        this.rules = rules;
+        this.normalizer = normalizer;
+        this.destinationIds = destinationIds;
+        this.anySender = anySender;
+        this.anyContent = anyContent;
+        this.exactSenders = exactSenders;
+        this.partialSenders = partialSenders;
+        this.partialSenderRules = partialSenderRules;
+        this.contentKeywords = contentKeywords;
+        this.contentKeywordRules = contentKeywordRules;
+        this.contentPatterns = contentPatterns;
+        this.contentPatternRules = contentPatternRules;
+        this.patternCache = patternCache;
+    }
+    
+    public static RuleMatcher compile(List<ForwardingRule> rules) {
+        return compile(rules, PhoneNumberNormalizer.DEFAULT);
+    }
+    
+    // Exact senders and destinations are compared in the normalizer's canonical
+    // form, so differently formatted numbers for the same phone are one key
+    public static RuleMatcher compile(List<ForwardingRule> rules, PhoneNumberNormalizer normalizer) {
+        List<ForwardingRule> ruleList = Collections.unmodifiableList(new ArrayList<>(rules));
+        BitSet anySender = new BitSet(ruleList.size());
+        BitSet anyContent = new BitSet(ruleList.size());
+        Map<String, List<Integer>> exact = new HashMap<>();
+        Map<String, List<Integer>> partial = new LinkedHashMap<>();
+        Map<String, List<Integer>> content = new LinkedHashMap<>();
+        Map<String, List<Integer>> regex = new LinkedHashMap<>();
+        Map<String, Integer> destinations = new HashMap<>();
+        int[] destinationIds = new int[ruleList.size()];
+        
+        for (int i = 0; i < ruleList.size(); i++) {
+            ForwardingRule rule = ruleList.get(i);
+            
+            String destination = rule.destinationKey(normalizer);
+            Integer destinationId = destinations.get(destination);
+            if (destinationId == null) {
+                destinationId = destinations.size();
+                destinations.put(destination, destinationId);
+            }
+            destinationIds[i] = destinationId;
+            
+            if (CaseFolding.isBlank(rule.senderNumber)) {
+                anySender.set(i);
+            } else if (rule.senderExactMatch) {
+                addTo(exact, normalizer.canonicalize(rule.senderNumber), i);
+            } else {
+                addTo(partial, rule.senderNumber, i);
+            }
+            
+            if (CaseFolding.isBlank(rule.messageContent)) {
+                anyContent.set(i);
+            } else if (rule.isRegex()) {
+                addTo(regex, rule.messageContent, i);
+            } else {
+                addTo(content, CaseFolding.fold(rule.messageContent), i);
+            }
+        }
+        
+        Map<String, int[]> exactSenders = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : exact.entrySet()) {
+            exactSenders.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        
+        return new RuleMatcher(ruleList, normalizer, destinationIds, anySender, anyContent, exactSenders,
+                partial.isEmpty() ? null : AhoCorasick.build(new ArrayList<>(partial.keySet())),
+                toArrays(partial),
+                content.isEmpty() ? null : AhoCorasick.build(new ArrayList<>(content.keySet())),
+                toArrays(content),
+                compilePatterns(regex.keySet()), toArrays(regex), PatternCache.shared());
+    }
+    
+    // Goes through the shared cache, so a rebuild after an edit only compiles
+    // the patterns that changed
+    private static Pattern[] compilePatterns(Iterable<String> regexes) {
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regex : regexes) {
+            patterns.add(PatternCache.shared().get(regex));
+        }
+        return patterns.toArray(new Pattern[0]);
+    }
+    
+    // Returns the matching rules in their original order.
+    public List<ForwardingRule> match(String fromNumber, String messageBody) {
+        BitSet candidates = matchingRules(fromNumber, messageBody);
+        List<ForwardingRule> matched = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            matched.add(rules.get(i));
+        }
+        return matched;
+    }
+    
+    // Like match, but keeps only the first matching rule for each destination,
+    // so a message is forwarded once per number however many rules point at it.
+    public List<ForwardingRule> matchDistinctDestinations(String fromNumber, String messageBody) {
+        BitSet candidates = matchingRules(fromNumber, messageBody);
+        List<ForwardingRule> matched = new ArrayList<>(candidates.cardinality());
+        BitSet seenDestinations = new BitSet();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (!seenDestinations.get(destinationIds[i])) {
+                seenDestinations.set(destinationIds[i]);
+                matched.add(rules.get(i));
+            }
+        }
+        return matched;
+    }
+    
+    private BitSet matchingRules(String fromNumber, String messageBody) {
+        BitSet candidates = (BitSet) anySender.clone();
+        
+        // One canonicalization per message, then a single hash lookup however
+        // many exact sender rules there are
+        int[] exact = exactSenders.isEmpty() ? null : exactSenders.get(normalizer.canonicalize(fromNumber));
+        if (exact != null) {
+            setAll(candidates, exact);
+        }
+        if (partialSenders != null) {
+            markMatches(partialSenders, fromNumber, false, partialSenderRules, candidates);
+        }
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        
+        // The body is only scanned when some sender candidate has a keyword
+        BitSet needsContent = (BitSet) candidates.clone();
+        needsContent.andNot(anyContent);
+        if (!needsContent.isEmpty()) {
+            BitSet contentMatches = (BitSet) anyContent.clone();
+            if (contentKeywords != null) {
+                markMatches(contentKeywords, messageBody, true, contentKeywordRules, contentMatches);
+            }
+            markPatternMatches(messageBody, needsContent, contentMatches);
+            candidates.and(contentMatches);
+        }
+        return candidates;
+    }
+    
+    // Regexes run one at a time, each linear in the message length, and only for
+    // patterns whose rules are still candidates after the sender check
+    private void markPatternMatches(String messageBody, BitSet needsContent, BitSet target) {
+        for (int p = 0; p < contentPatterns.length; p++) {
+            if (contentPatterns[p] != null && anySet(needsContent, contentPatternRules[p])
+                    && patternCache.find(contentPatterns[p], messageBody)) {
+                setAll(target, contentPatternRules[p]);
+            }
+        }
+    }
+    
+    public PhoneNumberNormalizer getNormalizer() {
+        return normalizer;
+    }
+    
+    public int getRuleCount() {
+        return rules.size();
+    }
+    
+    public List<ForwardingRule> getRules() {
+        return rules;
+    }
+    
+    // Sender patterns are case-sensitive, content keywords are folded
+    private static void markMatches(AhoCorasick automaton, String text, boolean fold,
+                                    int[][] patternRules, BitSet target) {
+        BitSet patterns = new BitSet(automaton.getPatternCount());
+        if (fold) {
+            automaton.findAllFolded(text, patterns);
+        } else {
+            automaton.findAll(text, patterns);
+        }
+        for (int p = patterns.nextSetBit(0); p >= 0; p = patterns.nextSetBit(p + 1)) {
+            setAll(target, patternRules[p]);
+        }
+    }
+    
+    private static boolean anySet(BitSet bits, int[] indexes) {
+        for (int index : indexes) {
+            if (bits.get(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void setAll(BitSet target, int[] indexes) {
+        for (int index : indexes) {
+            target.set(index);
+        }
+    }
+    
+    private static void addTo(Map<String, List<Integer>> map, String key, int ruleIndex) {
+        List<Integer> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(key, list);
+        }
+        list.add(ruleIndex);
+    }
+    
+    private static int[][] toArrays(Map<String, List<Integer>> map) {
+        int[][] arrays = new int[map.size()][];
+        int i = 0;
+        for (List<Integer> list : map.values()) {
+            arrays[i++] = toArray(list);
+        }
+        return arrays;
+    }
+    
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.smsforwarder;
+
+import java.util.List;
+
+// Immutable view of the enabled rules at one point in time, together with the
+// matcher compiled from them. Shared between threads without locking.
+public final class RuleSnapshot {
+    
+    private final long generation;
+    private final long builtAtMillis;
+    private final RuleMatcher matcher;
+    
+    RuleSnapshot(long generation, List<ForwardingRule> enabledRules, PhoneNumberNormalizer normalizer) {
+        this.generation = generation;
+        this.builtAtMillis = System.currentTimeMillis();
+        this.matcher = RuleMatcher.compile(enabledRules, normalizer);
+    }
+    
+    public long getGeneration() {
+        return generation;
+    }
+    
+    public long getBuiltAtMillis() {
+        return builtAtMillis;
+    }
+    
+    public List<ForwardingRule> getRules() {
+        return matcher.getRules();
+    }
+    
+    public RuleMatcher getMatcher() {
+        return matcher;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,213 @@
+package com.smsforwarder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// The enabled rules in a compact binary file, so that after a reboot matching
+// can start from a memory-mapped read instead of waiting for Room to open.
+// The header records the database schema version and default country code
+// the rules were written under, and a CRC32 of the payload; a file that does
+// not match any of them is ignored.
+//
+//   int magic, int format, int schemaVersion, long writtenAtMillis,
+//   int ruleCount, int payloadLength, int payloadCrc, payload
+//
+// Each rule in the payload is int id, byte flags, int matchMode, int
+// compaction, int simSlot, int targetType and five strings (sender, content,
+// forward to, template, webhook URL), each an int byte length (-1 for null)
+// followed by UTF-8.
+public final class RuleSnapshotFile {
+    
+    private static final int MAGIC = 0x53465253;  // "SFRS"
+    private static final int FORMAT_VERSION = 5;
+    private static final int HEADER_LENGTH = 32;
+    
+    private static final int FLAG_EXACT = 1;
+    private static final int FLAG_ENABLED = 1 << 1;
+    
+    public final int schemaVersion;
+    public final long writtenAtMillis;
+    public final String countryCode;
+    public final int payloadCrc;
+    public final List<ForwardingRule> rules;
+    
+    private RuleSnapshotFile(int schemaVersion, long writtenAtMillis, String countryCode,
+                             int payloadCrc, List<ForwardingRule> rules) {
+        this.schemaVersion = schemaVersion;
+        this.writtenAtMillis = writtenAtMillis;
+        this.countryCode = countryCode;
+        this.payloadCrc = payloadCrc;
+        this.rules = rules;
+    }
+    
+    // Returns null if the file is missing, damaged, or was written for another
+    // schema version or country code
+    public static RuleSnapshotFile read(File file, int schemaVersion, String countryCode) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || buffer.getInt() != schemaVersion) {
+                return null;
+            }
+            long writtenAtMillis = buffer.getLong();
+            int ruleCount = buffer.getInt();
+            int payloadLength = buffer.getInt();
+            int payloadCrc = buffer.getInt();
+            if (ruleCount < 0 || payloadLength != size - HEADER_LENGTH
+                    || crc(buffer, HEADER_LENGTH, payloadLength) != payloadCrc) {
+                return null;
+            }
+            
+            String storedCountry = readString(buffer);
+            if (!countryCode.equals(storedCountry)) {
+                return null;
+            }
+            List<ForwardingRule> rules = new ArrayList<>(ruleCount);
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(readRule(buffer));
+            }
+            return new RuleSnapshotFile(schemaVersion, writtenAtMillis, countryCode, payloadCrc,
+                    Collections.unmodifiableList(rules));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    // CRC the payload of a file for these rules would have, to tell whether a
+    // file read at startup still matches the database
+    public static int payloadCrc(List<ForwardingRule> rules, String countryCode) {
+        byte[] payload = encodePayload(rules, countryCode);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+    
+    // Writes to a temporary file and renames it over the old one, so a reader
+    // sees either the old snapshot or the new one
+    public static void write(File file, int schemaVersion, String countryCode,
+                             List<ForwardingRule> rules) throws IOException {
+        byte[] payload = encodePayload(rules, countryCode);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(schemaVersion);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(rules.size());
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            out.flush();
+            fos.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+    
+    private static byte[] encodePayload(List<ForwardingRule> rules, String countryCode) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rules.size() * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, countryCode);
+            for (ForwardingRule rule : rules) {
+                out.writeInt(rule.id);
+                out.writeByte((rule.senderExactMatch ? FLAG_EXACT : 0) | (rule.isEnabled ? FLAG_ENABLED : 0));
+                out.writeInt(rule.matchMode);
+                out.writeInt(rule.compaction);
+                out.writeInt(rule.simSlot);
+                out.writeInt(rule.targetType);
+                writeString(out, rule.senderNumber);
+                writeString(out, rule.messageContent);
+                writeString(out, rule.forwardToNumber);
+                writeString(out, rule.template);
+                writeString(out, rule.webhookUrl);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static ForwardingRule readRule(ByteBuffer buffer) {
+        ForwardingRule rule = new ForwardingRule();
+        rule.id = buffer.getInt();
+        int flags = buffer.get();
+        rule.senderExactMatch = (flags & FLAG_EXACT) != 0;
+        rule.isEnabled = (flags & FLAG_ENABLED) != 0;
+        rule.matchMode = buffer.getInt();
+        rule.compaction = buffer.getInt();
+        rule.simSlot = buffer.getInt();
+        rule.targetType = buffer.getInt();
+        rule.senderNumber = readString(buffer);
+        rule.messageContent = readString(buffer);
+        rule.forwardToNumber = readString(buffer);
+        rule.template = readString(buffer);
+        rule.webhookUrl = readString(buffer);
+        return rule;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+    
+    // Chunked, CRC32.update(ByteBuffer) is not available on every Android version
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset);
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(length, 8192)];
+        int remaining = length;
+        while (remaining > 0) {
+            int n = Math.min(remaining, chunk.length);
+            payload.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+            remaining -= n;
+        }
+        return (int) crc.getValue();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.smsforwarder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Spreads outgoing SMS over the phone's SIM subscriptions. Each subscription
+// is a lane with its own token bucket, counted in segments since carriers
+// limit PDUs, not messages. A message goes to the lane with the most tokens
+// left, or to the SIM slot its rule prefers. A lane that fails
+// FAILOVER_THRESHOLD sends in a row is taken out of rotation for a cooldown
+// that doubles each time it trips; its traffic, preferred or not, goes to
+// the other lanes meanwhile. With every lane down, sending carries on over
+// all of them rather than stopping.
+//
+// Android-free so the load generator can drive it with fake lanes.
+// Thread-safe; all methods lock the instance.
+public final class SendLanes {
+    
+    public static final int ANY_SLOT = -1;
+    // Lane of SmsManager.getDefault(), used until subscriptions are known
+    public static final int DEFAULT_SUBSCRIPTION = -1;
+    
+    private static final int FAILOVER_THRESHOLD = 3;
+    private static final long BASE_COOLDOWN_NANOS = 30_000_000_000L;
+    private static final long MAX_COOLDOWN_NANOS = 10 * 60_000_000_000L;
+    
+    public static final class Lane {
+        public final int slot;
+        public final int subscriptionId;
+        final TokenBucket bucket;
+        int consecutiveFailures;
+        int trips;
+        long downUntilNanos;
+        long sent;
+        long failed;
+        long segments;
+        
+        Lane(int slot, int subscriptionId, TokenBucket bucket) {
+            this.slot = slot;
+            this.subscriptionId = subscriptionId;
+            this.bucket = bucket;
+        }
+        
+        boolean isUp(long nowNanos) {
+            return nowNanos - downUntilNanos >= 0;
+        }
+    }
+    
+    private final int burstSegments;
+    private final double segmentsPerSecond;
+    private List<Lane> lanes = new ArrayList<>();
+    private long failovers;
+    
+    public SendLanes(int burstSegments, double segmentsPerSecond, long nowNanos) {
+        this.burstSegments = burstSegments;
+        this.segmentsPerSecond = segmentsPerSecond;
+        setSubscriptions(new int[] {ANY_SLOT}, new int[] {DEFAULT_SUBSCRIPTION}, nowNanos);
+    }
+    
+    // Replaces the lanes; a subscription that is still there keeps its
+    // tokens and failure state. An empty list falls back to the default lane.
+    public synchronized void setSubscriptions(int[] slots, int[] subscriptionIds, long nowNanos) {
+        if (slots.length == 0) {
+            slots = new int[] {ANY_SLOT};
+            subscriptionIds = new int[] {DEFAULT_SUBSCRIPTION};
+        }
+        List<Lane> updated = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            Lane lane = null;
+            for (Lane existing : lanes) {
+                if (existing.subscriptionId == subscriptionIds[i] && existing.slot == slots[i]) {
+                    lane = existing;
+                }
+            }
+            if (lane == null) {
+                lane = new Lane(slots[i], subscriptionIds[i],
+                        new TokenBucket(burstSegments, segmentsPerSecond, nowNanos));
+            }
+            updated.add(lane);
+        }
+        lanes = updated;
+    }
+    
+    public synchronized int getLaneCount() {
+        return lanes.size();
+    }
+    
+    // A lane with the tokens for this message taken, or null if it has to
+    // wait; see nanosUntilAvailable
+    public synchronized Lane acquire(int preferredSlot, int segments, long nowNanos) {
+        Lane best = null;
+        double bestTokens = Double.NEGATIVE_INFINITY;
+        for (Lane lane : candidates(preferredSlot, nowNanos)) {
+            double tokens = lane.bucket.getAvailable(nowNanos);
+            if (tokens > bestTokens || (tokens == bestTokens && lane.sent < best.sent)) {
+                best = lane;
+                bestTokens = tokens;
+            }
+        }
+        if (best == null || best.bucket.tryAcquire(segments, nowNanos) != 0) {
+            return null;
+        }
+        best.sent++;
+        best.segments += segments;
+        return best;
+    }
+    
+    public synchronized long nanosUntilAvailable(int preferredSlot, int segments, long nowNanos) {
+        long wait = Long.MAX_VALUE;
+        for (Lane lane : candidates(preferredSlot, nowNanos)) {
+            double needed = Math.min(segments, burstSegments) - lane.bucket.getAvailable(nowNanos);
+            wait = Math.min(wait, needed <= 0 ? 0 : (long) Math.ceil(needed / segmentsPerSecond * 1e9));
+        }
+        return wait == Long.MAX_VALUE ? 0 : wait;
+    }
+    
+    // The preferred slot if it has an up lane, otherwise every up lane, and
+    // every lane if none is up
+    private List<Lane> candidates(int preferredSlot, long nowNanos) {
+        if (preferredSlot != ANY_SLOT) {
+            for (Lane lane : lanes) {
+                if (lane.slot == preferredSlot && lane.isUp(nowNanos)) {
+                    List<Lane> preferred = new ArrayList<>(1);
+                    preferred.add(lane);
+                    return preferred;
+                }
+            }
+        }
+        List<Lane> up = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            if (lane.isUp(nowNanos)) {
+                up.add(lane);
+            }
+        }
+        return up.isEmpty() ? lanes : up;
+    }
+    
+    // laneFault is false for failures that are the message's own, such as
+    // an unencodable PDU. Returns true if this result took the lane down.
+    public synchronized boolean onResult(Lane lane, boolean ok, boolean laneFault, long nowNanos) {
+        if (ok) {
+            lane.consecutiveFailures = 0;
+            lane.trips = 0;
+            return false;
+        }
+        lane.failed++;
+        if (!laneFault || ++lane.consecutiveFailures < FAILOVER_THRESHOLD) {
+            return false;
+        }
+        lane.consecutiveFailures = 0;
+        lane.downUntilNanos = nowNanos + Math.min(MAX_COOLDOWN_NANOS, BASE_COOLDOWN_NANOS << Math.min(lane.trips, 16));
+        lane.trips++;
+        failovers++;
+        return true;
+    }
+    
+    public synchronized long getFailoverCount() {
+        return failovers;
+    }
+    
+    public synchronized String getStats() {
+        long now = System.nanoTime();
+        StringBuilder stats = new StringBuilder();
+        stats.append("failovers=").append(failovers);
+        for (Lane lane : lanes) {
+            stats.append(String.format(Locale.ROOT, ", [slot %d sub %d: sent=%d failed=%d segments=%d tokens=%.1f%s]",
+                    lane.slot, lane.subscriptionId, lane.sent, lane.failed, lane.segments,
+                    lane.bucket.getAvailable(now), lane.isUp(now) ? "" : " down"));
+        }
+        return stats.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.smsforwarder;
+
+// Concatenation information element from the user data header of a 3GPP
+// SMS-DELIVER PDU (TS 23.040, IEI 0x00 with 8-bit and 0x08 with 16-bit
+// references). SmsMessage does not expose it, so it is read from the raw PDU.
+public final class SmsConcatHeader {
+    
+    private static final int IEI_CONCAT_8BIT_REF = 0x00;
+    private static final int IEI_CONCAT_16BIT_REF = 0x08;
+    private static final int SCTS_LENGTH = 7;
+    
+    public final int reference;
+    public final int totalParts;
+    public final int sequence;  // 1-based
+    
+    SmsConcatHeader(int reference, int totalParts, int sequence) {
+        this.reference = reference;
+        this.totalParts = totalParts;
+        this.sequence = sequence;
+    }
+    
+    // Returns null for PDUs that are not concatenated segments or cannot be read.
+    public static SmsConcatHeader parse(byte[] pdu) {
+        if (pdu == null) {
+            return null;
+        }
+        try {
+            int i = 0;
+            int smscLength = pdu[i++] & 0xff;
+            i += smscLength;
+            
+            int firstOctet = pdu[i++] & 0xff;
+            boolean isDeliver = (firstOctet & 0x03) == 0x00;
+            boolean hasHeader = (firstOctet & 0x40) != 0;
+            if (!isDeliver || !hasHeader) {
+                return null;
+            }
+            
+            // Originating address: length in semi-octets, then type, then digits
+            int addressDigits = pdu[i++] & 0xff;
+            i += 1 + (addressDigits + 1) / 2;
+            
+            i += 2;  // protocol identifier, data coding scheme
+            i += SCTS_LENGTH;
+            i += 1;  // user data length
+            
+            int headerLength = pdu[i++] & 0xff;
+            int headerEnd = i + headerLength;
+            if (headerEnd > pdu.length) {
+                return null;
+            }
+            
+            while (i + 2 <= headerEnd) {
+                int iei = pdu[i++] & 0xff;
+                int length = pdu[i++] & 0xff;
+                if (i + length > headerEnd) {
+                    return null;
+                }
+                if (iei == IEI_CONCAT_8BIT_REF && length == 3) {
+                    return create(pdu[i] & 0xff, pdu[i + 1] & 0xff, pdu[i + 2] & 0xff);
+                }
+                if (iei == IEI_CONCAT_16BIT_REF && length == 4) {
+                    int reference = ((pdu[i] & 0xff) << 8) | (pdu[i + 1] & 0xff);
+                    return create(reference, pdu[i + 2] & 0xff, pdu[i + 3] & 0xff);
+                }
+                i += length;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Truncated PDU, treat as not concatenated
+        }
+        return null;
+    }
+    
+    private static SmsConcatHeader create(int reference, int totalParts, int sequence) {
+        if (totalParts < 2 || sequence < 1 || sequence > totalParts) {
+            return null;
+        }
+        return new SmsConcatHeader(reference, totalParts, sequence);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.smsforwarder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Joins the segments of concatenated SMS back into one message. Segments are
+// grouped by sender and concatenation reference. A group that stays incomplete
+// for longer than the timeout, or is pushed out because too many groups are
+// pending, is delivered with the segments that did arrive.
+public final class SmsReassembler {
+    
+    public interface Listener {
+        void onMessage(String sender, String body);
+    }
+    
+    private final long timeoutMillis;
+    private final int maxPendingGroups;
+    private final Listener listener;
+    private final LinkedHashMap<String, Group> pending = new LinkedHashMap<>();
+    
+    private long completed;
+    private long expired;
+    
+    public SmsReassembler(long timeoutMillis, int maxPendingGroups, Listener listener) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxPendingGroups = maxPendingGroups;
+        this.listener = listener;
+    }
+    
+    public void addSegment(String sender, SmsConcatHeader header, String text, long nowMillis) {
+        Message done = null;
+        Message evicted = null;
+        synchronized (this) {
+            String key = sender + '\u0000' + header.reference + '\u0000' + header.totalParts;
+            Group group = pending.get(key);
+            if (group == null) {
+                group = new Group(sender, header.totalParts, nowMillis);
+                pending.put(key, group);
+            }
+            group.put(header.sequence, text);
+            
+            if (group.isComplete()) {
+                pending.remove(key);
+                completed++;
+                done = group.toMessage();
+            } else if (pending.size() > maxPendingGroups) {
+                Iterator<Group> oldest = pending.values().iterator();
+                Group victim = oldest.next();
+                oldest.remove();
+                expired++;
+                evicted = victim.toMessage();
+            }
+        }
+        // Listener runs outside the lock, it may start services
+        deliver(evicted);
+        deliver(done);
+    }
+    
+    // Flushes every group older than the timeout. Returns true if groups remain.
+    public boolean expire(long nowMillis) {
+        LinkedHashMap<String, Message> flushed = new LinkedHashMap<>();
+        boolean remaining;
+        synchronized (this) {
+            Iterator<Map.Entry<String, Group>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Group> entry = it.next();
+                if (nowMillis - entry.getValue().firstSeenMillis >= timeoutMillis) {
+                    flushed.put(entry.getKey(), entry.getValue().toMessage());
+                    it.remove();
+                    expired++;
+                }
+            }
+            remaining = !pending.isEmpty();
+        }
+        for (Message message : flushed.values()) {
+            deliver(message);
+        }
+        return remaining;
+    }
+    
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+    
+    public synchronized long getExpiredCount() {
+        return expired;
+    }
+    
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+    
+    private void deliver(Message message) {
+        if (message != null) {
+            listener.onMessage(message.sender, message.body);
+        }
+    }
+    
+    private static final class Message {
+        final String sender;
+        final String body;
+        
+        Message(String sender, String body) {
+            this.sender = sender;
+            this.body = body;
+        }
+    }
+    
+    private static final class Group {
+        final String sender;
+        final String[] parts;
+        final long firstSeenMillis;
+        int received;
+        
+        Group(String sender, int totalParts, long firstSeenMillis) {
+            this.sender = sender;
+            this.parts = new String[totalParts];
+            this.firstSeenMillis = firstSeenMillis;
+        }
+        
+        void put(int sequence, String text) {
+            if (parts[sequence - 1] == null) {
+                received++;
+            }
+            parts[sequence - 1] = text != null ? text : "";
+        }
+        
+        boolean isComplete() {
+            return received == parts.length;
+        }
+        
+        Message toMessage() {
+            StringBuilder body = new StringBuilder();
+            for (String part : parts) {
+                if (part != null) {
+                    body.append(part);
+                }
+            }
+            return new Message(sender, body.toString());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.smsforwarder;
+
+// Counts the segments an outgoing text is sent and billed as. Text made only
+// of GSM 7-bit default alphabet characters (TS 23.038) is sent as septets,
+// with the extension table characters taking two; anything else makes the
+// whole message UCS-2. A segment never splits an escape sequence or a
+// surrogate pair, as SmsManager.divideMessage does. National language shift
+// tables are not considered.
+public final class SmsSegments {
+    
+    public static final int GSM7_SINGLE_SEPTETS = 160;
+    public static final int GSM7_SEGMENT_SEPTETS = 153;
+    public static final int UCS2_SINGLE_UNITS = 70;
+    public static final int UCS2_SEGMENT_UNITS = 67;
+    
+    private static final String GSM_BASIC =
+            "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞÆæßÉ"
+            + " !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    private static final String GSM_EXTENSION = "\f^{}\\[~]|€";
+    
+    // Septets per character below 0x100: 1, 2, or 0 when not in the alphabet
+    private static final byte[] LATIN1_SEPTETS = new byte[0x100];
+    
+    static {
+        for (int i = 0; i < GSM_BASIC.length(); i++) {
+            char c = GSM_BASIC.charAt(i);
+            if (c < 0x100) {
+                LATIN1_SEPTETS[c] = 1;
+            }
+        }
+        for (int i = 0; i < GSM_EXTENSION.length(); i++) {
+            char c = GSM_EXTENSION.charAt(i);
+            if (c < 0x100) {
+                LATIN1_SEPTETS[c] = 2;
+            }
+        }
+    }
+    
+    private SmsSegments() {
+    }
+    
+    // 1 or 2 septets, or 0 if the character needs UCS-2
+    public static int septets(char c) {
+        if (c < 0x100) {
+            return LATIN1_SEPTETS[c];
+        }
+        // The Greek capitals of the basic table, and the euro sign
+        if (c == '€') {
+            return 2;
+        }
+        return c >= 0x393 && c <= 0x3a9 && GSM_BASIC.indexOf(c) >= 0 ? 1 : 0;
+    }
+    
+    public static boolean isGsm7(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            if (septets(text.charAt(i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Segments text goes out as; an empty text is still one
+    public static int count(CharSequence text) {
+        return isGsm7(text) ? countGsm7(text) : countUcs2(text);
+    }
+    
+    private static int countGsm7(CharSequence text) {
+        int n = text.length();
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            total += septets(text.charAt(i));
+        }
+        if (total <= GSM7_SINGLE_SEPTETS) {
+            return 1;
+        }
+        int segments = 1;
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            int width = septets(text.charAt(i));
+            if (used + width > GSM7_SEGMENT_SEPTETS) {
+                segments++;
+                used = 0;
+            }
+            used += width;
+        }
+        return segments;
+    }
+    
+    private static int countUcs2(CharSequence text) {
+        int n = text.length();
+        if (n <= UCS2_SINGLE_UNITS) {
+            return 1;
+        }
+        int segments = 1;
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            int width = Character.isHighSurrogate(text.charAt(i)) && i + 1 < n ? 2 : 1;
+            if (used + width > UCS2_SEGMENT_UNITS) {
+                segments++;
+                used = 0;
+            }
+            used += width;
+            i += width - 1;
+        }
+        return segments;
+    }
+}
\ No newline at end of file
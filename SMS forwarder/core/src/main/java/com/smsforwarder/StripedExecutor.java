@@ -0,0 +1,286 @@
+package com.smsforwarder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed set of single-threaded lanes, each with a bounded queue. Tasks with the
+// same key always land on the same lane, so they run in submission order, while
+// tasks with different keys can run in parallel on other lanes.
+public final class StripedExecutor {
+    
+    public enum OverflowPolicy {
+        BLOCK,        // wait up to the configured timeout for space, then drop the new task
+        DROP_NEWEST,  // drop the task being submitted
+        DROP_OLDEST   // evict the oldest queued task on the lane to make room, see evictOldest
+    }
+    
+    private static final Runnable STOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    
+    private final Lane[] lanes;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    private volatile boolean shutdown;
+    
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    
+    public StripedExecutor(String name, int laneCount, int laneCapacity,
+                           OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        if (laneCount <= 0 || laneCapacity <= 0) {
+            throw new IllegalArgumentException("laneCount and laneCapacity must be positive");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(name + "-lane-" + i, laneCapacity);
+            lanes[i].thread.start();
+        }
+    }
+    
+    // Returns false if the task was not queued (executor shut down or lane full).
+    public boolean execute(Object key, Runnable task) {
+        return execute(key, task, null);
+    }
+    
+    // onDone, if not null, runs on the lane after the task, even if it threw.
+    // If the task is evicted under DROP_OLDEST, onDone runs instead on the
+    // thread that evicted it, so whoever waits for it is not left hanging.
+    // Neither runs if this returns false.
+    public boolean execute(Object key, Runnable task, Runnable onDone) {
+        if (shutdown) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        
+        if (onDone != null) {
+            task = new Task(task, onDone);
+        }
+        ArrayBlockingQueue<Runnable> queue = laneFor(key).queue;
+        boolean queued;
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queued = queue.offer(task, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                break;
+            case DROP_OLDEST:
+                queued = queue.offer(task);
+                while (!queued && evictOldest(queue)) {
+                    queued = queue.offer(task);
+                }
+                break;
+            case DROP_NEWEST:
+            default:
+                queued = queue.offer(task);
+                break;
+        }
+        
+        if (queued) {
+            submitted.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        return queued;
+    }
+    
+    // Stops accepting tasks; everything already queued still runs.
+    public void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        for (Lane lane : lanes) {
+            try {
+                lane.queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.thread.interrupt();
+            }
+        }
+    }
+    
+    // Waits for queued tasks to finish after shutdown(). Returns false on timeout.
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Lane lane : lanes) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            lane.thread.join(remaining);
+            if (lane.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Waits until every task queued before the call has run, without
+    // stopping the lanes: a marker goes to the back of each lane and the call
+    // returns once all of them have been reached. Returns false on timeout.
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        CountDownLatch reached = new CountDownLatch(lanes.length);
+        Marker marker = new Marker(reached);
+        for (Lane lane : lanes) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !lane.queue.offer(marker, remaining, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return reached.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+    
+    // Removes the oldest submitted task from the queue. awaitIdle markers and
+    // the shutdown STOP are never evicted; a lane queue holding nothing else
+    // makes the new task be dropped instead. Returns false if there was
+    // nothing to evict.
+    private boolean evictOldest(ArrayBlockingQueue<Runnable> queue) {
+        for (Runnable queued : queue) {
+            if (queued == STOP || queued instanceof Marker) {
+                continue;
+            }
+            if (queue.remove(queued)) {
+                dropped.incrementAndGet();
+                if (queued instanceof Task) {
+                    runOnDone((Task) queued);
+                }
+                return true;
+            }
+            // Taken by the lane meanwhile, there may be room now
+            return true;
+        }
+        return false;
+    }
+    
+    private void runOnDone(Task task) {
+        try {
+            task.onDone.run();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+    
+    public int getLaneCount() {
+        return lanes.length;
+    }
+    
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+    
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+    
+    public long getCompletedCount() {
+        return completed.get();
+    }
+    
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+    
+    public long getFailedCount() {
+        return failed.get();
+    }
+    
+    public String getStats() {
+        return "lanes=" + lanes.length +
+                ", queued=" + getQueueDepth() +
+                ", submitted=" + submitted.get() +
+                ", completed=" + completed.get() +
+                ", dropped=" + dropped.get() +
+                ", failed=" + failed.get();
+    }
+    
+    private Lane laneFor(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= (hash >>> 16);
+        return lanes[(hash & 0x7fffffff) % lanes.length];
+    }
+    
+    private final class Lane implements Runnable {
+        
+        final ArrayBlockingQueue<Runnable> queue;
+        final Thread thread;
+        
+        Lane(String threadName, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, threadName);
+        }
+        
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == STOP) {
+                    return;
+                }
+                if (task instanceof Marker) {
+                    // Not a submitted task, kept out of the counters
+                    task.run();
+                    continue;
+                }
+                try {
+                    task.run();
+                    completed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                }
+                if (task instanceof Task) {
+                    runOnDone((Task) task);
+                }
+            }
+        }
+    }
+    
+    private static final class Task implements Runnable {
+        final Runnable body;
+        final Runnable onDone;
+        
+        Task(Runnable body, Runnable onDone) {
+            this.body = body;
+            this.onDone = onDone;
+        }
+        
+        @Override
+        public void run() {
+            body.run();
+        }
+    }
+    
+    private static final class Marker implements Runnable {
+        final CountDownLatch reached;
+        
+        Marker(CountDownLatch reached) {
+            this.reached = reached;
+        }
+        
+        @Override
+        public void run() {
+            reached.countDown();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.smsforwarder;
+
+// Token bucket rate limiter: up to capacity tokens, refilled continuously at
+// a fixed rate. A request larger than the capacity is let through when the
+// bucket is full and leaves it in debt, so a long message still gets sent.
+// Not thread-safe; callers serialize access.
+public final class TokenBucket {
+    
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long refilledAtNanos;
+    
+    public TokenBucket(int capacity, double tokensPerSecond, long nowNanos) {
+        if (capacity <= 0 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and rate must be positive");
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = capacity;
+        this.refilledAtNanos = nowNanos;
+    }
+    
+    // Takes the tokens and returns 0, or returns how long until they would be
+    // available and takes nothing
+    public long tryAcquire(int permits, long nowNanos) {
+        refill(nowNanos);
+        double needed = Math.min(permits, capacity);
+        if (tokens >= needed) {
+            tokens -= permits;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((needed - tokens) / tokensPerNano));
+    }
+    
+    public double getAvailable(long nowNanos) {
+        refill(nowNanos);
+        return tokens;
+    }
+    
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - refilledAtNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            refilledAtNanos = nowNanos;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,330 @@
+package com.smsforwarder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+// Batches webhook forwards per URL and POSTs each batch as one gzip-compressed
+// JSON array:
+//
+//   [{"rule":3,"sender":"+8215881234","body":"...","text":"...","receivedAt":1700000000000}, ...]
+//
+// A batch goes out when the window since its first message has passed, or at
+// once when it reaches maxMessages or maxBytes of JSON. At most maxInFlight
+// POSTs run at a time; sealed batches wait in FIFO order for a permit, so a
+// slow endpoint makes later batches queue instead of opening more
+// connections. Connection reuse is up to the Transport, see
+// HttpWebhookTransport. A batch that fails with an I/O error, 408, 429 or 5xx
+// is retried with backoff; other responses drop it, and so does the post
+// executor rejecting it.
+//
+// Batches only live in memory: forwards still waiting when the process dies
+// are lost, unlike SMS forwards, which OutboundQueue persists.
+public final class WebhookBatcher {
+    
+    public interface Transport {
+        // Returns the HTTP status code
+        int post(String url, byte[] gzippedJson) throws IOException;
+    }
+    
+    public interface Listener {
+        void onDelivered(String url, int messages);
+        
+        void onFailed(String url, int messages, String reason);
+    }
+    
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY_MS = 2000;
+    
+    private final long windowMillis;
+    private final int maxMessages;
+    private final int maxBytes;
+    private final Semaphore inFlight;
+    private final Transport transport;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+    private final Executor postExecutor;
+    private final ForwardingMetrics metrics;
+    
+    private final Map<String, Batch> open = new HashMap<>();
+    private final Deque<Batch> sealed = new ArrayDeque<>();
+    
+    private final AtomicInteger pendingMessages = new AtomicInteger();
+    private final AtomicLong messagesIn = new AtomicLong();
+    private final AtomicLong batchesPosted = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong jsonBytes = new AtomicLong();
+    private final AtomicLong gzipBytes = new AtomicLong();
+    
+    public WebhookBatcher(long windowMillis, int maxMessages, int maxBytes, int maxInFlight,
+                          Transport transport, Listener listener, ScheduledExecutorService scheduler,
+                          Executor postExecutor, ForwardingMetrics metrics) {
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.transport = transport;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.postExecutor = postExecutor;
+        this.metrics = metrics;
+    }
+    
+    public void submit(String url, int ruleId, String sender, String body, String text, long receivedAtMillis) {
+        messagesIn.incrementAndGet();
+        pendingMessages.incrementAndGet();
+        StringBuilder json = new StringBuilder(64 + body.length() + text.length());
+        json.append("{\"rule\":").append(ruleId);
+        json.append(",\"sender\":");
+        appendJsonString(json, sender);
+        json.append(",\"body\":");
+        appendJsonString(json, body);
+        json.append(",\"text\":");
+        appendJsonString(json, text);
+        json.append(",\"receivedAt\":").append(receivedAtMillis).append('}');
+        int bytes = ForwardCoalescer.utf8Length(json);
+        
+        Batch started = null;
+        boolean seal = false;
+        synchronized (this) {
+            Batch batch = open.get(url);
+            if (batch != null && batch.bytes + 1 + bytes > maxBytes) {
+                open.remove(url);
+                sealed.add(batch);
+                seal = true;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(url);
+                open.put(url, batch);
+                started = batch;
+            }
+            batch.add(json, bytes);
+            if (batch.count >= maxMessages || batch.bytes >= maxBytes) {
+                open.remove(url);
+                sealed.add(batch);
+                seal = true;
+                started = null;
+            }
+        }
+        
+        if (seal) {
+            dispatch();
+        }
+        if (started != null) {
+            final Batch scheduled = started;
+            scheduler.schedule(() -> seal(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Seals every open batch now, e.g. when the service is stopping
+    public void flushAll() {
+        synchronized (this) {
+            sealed.addAll(open.values());
+            open.clear();
+        }
+        dispatch();
+    }
+    
+    // Messages submitted and neither delivered nor given up on yet
+    public int getPendingCount() {
+        return pendingMessages.get();
+    }
+    
+    public String getStats() {
+        long batches = batchesPosted.get();
+        long json = jsonBytes.get();
+        return "messages=" + messagesIn.get() +
+                ", batches=" + batches +
+                ", pending=" + pendingMessages.get() +
+                ", retries=" + retries.get() +
+                String.format(Locale.ROOT, ", perBatch=%.1f, compression=%.2f",
+                        batches == 0 ? 0.0 : (double) messagesIn.get() / batches,
+                        json == 0 ? 0.0 : (double) gzipBytes.get() / json);
+    }
+    
+    private void seal(Batch batch) {
+        synchronized (this) {
+            // The batch may already have gone out because it filled up
+            if (open.get(batch.url) != batch) {
+                return;
+            }
+            open.remove(batch.url);
+            sealed.add(batch);
+        }
+        dispatch();
+    }
+    
+    // Starts as many sealed batches as there are free permits
+    private void dispatch() {
+        while (inFlight.tryAcquire()) {
+            final Batch batch;
+            synchronized (this) {
+                batch = sealed.poll();
+            }
+            if (batch == null) {
+                inFlight.release();
+                // A batch sealed after the poll but before the release would
+                // otherwise wait for the next dispatch
+                synchronized (this) {
+                    if (sealed.isEmpty()) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            try {
+                postExecutor.execute(() -> {
+                    try {
+                        post(batch);
+                    } finally {
+                        inFlight.release();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The executor is shut down or full; the permit would
+                // otherwise never come back, so give up on the batch
+                inFlight.release();
+                finish(batch, e.toString());
+            }
+        }
+    }
+    
+    private void post(Batch batch) {
+        if (batch.gzipped == null) {
+            batch.gzipped = gzip(batch.json.append(']'));
+            jsonBytes.addAndGet(batch.bytes + 1);
+            gzipBytes.addAndGet(batch.gzipped.length);
+        }
+        
+        String failure;
+        long postStart = System.nanoTime();
+        try {
+            int status = transport.post(batch.url, batch.gzipped);
+            metrics.recordSince(ForwardingMetrics.Stage.WEBHOOK_POST, postStart);
+            batchesPosted.incrementAndGet();
+            metrics.increment(ForwardingMetrics.Counter.WEBHOOK_BATCHES);
+            if (status >= 200 && status < 300) {
+                finish(batch, null);
+                return;
+            }
+            failure = "HTTP " + status;
+            if (status != 408 && status != 429 && status < 500) {
+                finish(batch, failure);
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e.toString();
+        }
+        
+        if (++batch.attempts >= MAX_ATTEMPTS) {
+            finish(batch, failure);
+            return;
+        }
+        retries.incrementAndGet();
+        long delay = RETRY_BASE_DELAY_MS << (batch.attempts - 1);
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                sealed.addFirst(batch);
+            }
+            dispatch();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private void finish(Batch batch, String failure) {
+        pendingMessages.addAndGet(-batch.count);
+        if (failure == null) {
+            metrics.add(ForwardingMetrics.Counter.WEBHOOK_DELIVERED, batch.count);
+            listener.onDelivered(batch.url, batch.count);
+        } else {
+            metrics.add(ForwardingMetrics.Counter.WEBHOOK_FAILED, batch.count);
+            listener.onFailed(batch.url, batch.count, failure);
+        }
+    }
+    
+    private static byte[] gzip(CharSequence json) {
+        byte[] raw = json.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 3 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(raw);
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    static void appendJsonString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    // Line and paragraph separators too, for JavaScript consumers
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
+    }
+    
+    private static final class Batch {
+        final String url;
+        final StringBuilder json = new StringBuilder("[");
+        int count;
+        int bytes = 1;
+        int attempts;
+        byte[] gzipped;
+        
+        Batch(String url) {
+            this.url = url;
+        }
+        
+        void add(CharSequence message, int messageBytes) {
+            if (count > 0) {
+                json.append(',');
+                bytes++;
+            }
+            json.append(message);
+            bytes += messageBytes;
+            count++;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class AhoCorasickTest {
+    
+    @Test
+    public void findsOverlappingPatterns() {
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList("he", "she", "his", "hers", "s"));
+        
+        assertEquals(bits(0, 1, 3, 4), findAll(automaton, "ushers"));
+        assertEquals(bits(0), findAll(automaton, "ahe"));
+        assertEquals(bits(2, 4), findAll(automaton, "this"));
+        assertEquals(bits(), findAll(automaton, "xyz"));
+        assertEquals(bits(), findAll(automaton, ""));
+        assertEquals(5, automaton.getPatternCount());
+    }
+    
+    @Test
+    public void findsPatternsThatArePrefixesAndSuffixesOfEachOther() {
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList("a", "aa", "aaa", "ab", "bab"));
+        
+        assertEquals(bits(0, 1), findAll(automaton, "aa"));
+        assertEquals(bits(0, 3, 4), findAll(automaton, "bab"));
+        assertEquals(bits(0, 1, 2, 3), findAll(automaton, "aaab"));
+    }
+    
+    @Test
+    public void matchesCaseSensitively() {
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList("KB", "kb"));
+        
+        assertEquals(bits(0), findAll(automaton, "KBCard"));
+        assertEquals(bits(1), findAll(automaton, "kbcard"));
+        assertEquals(bits(), findAll(automaton, "Kbcard"));
+    }
+    
+    @Test
+    public void foldsTheTextNotThePatterns() {
+        // Patterns are expected to be folded already
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList(
+                fold("Code"), fold("ÉCOLE"), fold("ΣΟΦΊΑ"), fold("인증번호")));
+        
+        assertEquals(bits(0), findAllFolded(automaton, "your CODE is 1234"));
+        assertEquals(bits(1), findAllFolded(automaton, "l'école"));
+        assertEquals(bits(2), findAllFolded(automaton, "σοφία"));
+        assertEquals(bits(2), findAllFolded(automaton, "ΣΟΦΊΑ"));
+        assertEquals(bits(0, 3), findAllFolded(automaton, "[인증번호] code"));
+    }
+    
+    @Test
+    public void agreesWithIndexOfOnRandomInput() {
+        Random random = new Random(20261017L);
+        String alphabet = "abcAB가나";
+        for (int round = 0; round < 2000; round++) {
+            Set<String> unique = new LinkedHashSet<>();
+            int count = 1 + random.nextInt(12);
+            while (unique.size() < count) {
+                unique.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+            }
+            List<String> patterns = new ArrayList<>(unique);
+            String text = randomString(random, alphabet, random.nextInt(30));
+            AhoCorasick automaton = AhoCorasick.build(patterns);
+            
+            BitSet expected = new BitSet();
+            for (int id = 0; id < patterns.size(); id++) {
+                if (text.contains(patterns.get(id))) {
+                    expected.set(id);
+                }
+            }
+            assertEquals(patterns + " in " + text, expected, findAll(automaton, text));
+        }
+    }
+    
+    @Test
+    public void foldedSearchAgreesWithContainsIgnoreCaseOnRandomInput() {
+        Random random = new Random(20261018L);
+        String alphabet = "abAB éÉσΣςǅǆǄ";
+        for (int round = 0; round < 2000; round++) {
+            Set<String> unique = new LinkedHashSet<>();
+            List<String> keywords = new ArrayList<>();
+            int count = 1 + random.nextInt(8);
+            while (keywords.size() < count) {
+                String keyword = randomString(random, alphabet, 1 + random.nextInt(3));
+                if (unique.add(fold(keyword))) {
+                    keywords.add(keyword);
+                }
+            }
+            String text = randomString(random, alphabet, random.nextInt(20));
+            AhoCorasick automaton = AhoCorasick.build(new ArrayList<>(unique));
+            
+            BitSet expected = new BitSet();
+            for (int id = 0; id < keywords.size(); id++) {
+                if (CaseFolding.containsIgnoreCase(text, keywords.get(id))) {
+                    expected.set(id);
+                }
+            }
+            assertEquals(keywords + " in " + text, expected, findAllFolded(automaton, text));
+        }
+    }
+    
+    private static BitSet findAll(AhoCorasick automaton, String text) {
+        BitSet matched = new BitSet();
+        automaton.findAll(text, matched);
+        return matched;
+    }
+    
+    private static BitSet findAllFolded(AhoCorasick automaton, String text) {
+        BitSet matched = new BitSet();
+        automaton.findAllFolded(text, matched);
+        return matched;
+    }
+    
+    private static String fold(String s) {
+        StringBuilder folded = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            folded.append(CaseFolding.fold(s.charAt(i)));
+        }
+        return folded.toString();
+    }
+    
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString();
+    }
+    
+    private static BitSet bits(int... ids) {
+        BitSet set = new BitSet();
+        for (int id : ids) {
+            set.set(id);
+        }
+        return set;
+    }
+}
\ No newline at end of file
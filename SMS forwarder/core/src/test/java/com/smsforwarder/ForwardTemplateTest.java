@@ -0,0 +1,110 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForwardTemplateTest {
+    
+    private static final String SENDER = "+821012345678";
+    
+    private static void assertRejected(String template, String message) {
+        try {
+            ForwardTemplate.compile(template, 0);
+            fail("Compiled " + template);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+        assertFalse(ForwardTemplate.isValid(template));
+    }
+    
+    @Test
+    public void rejectsInvalidTemplates() {
+        assertRejected("{sender", "Unclosed { at 0");
+        assertRejected("From {sender}: {body", "Unclosed { at 15");
+        assertRejected("{name}: {body}", "Unknown placeholder {name}");
+        assertRejected("{}", "Unknown placeholder {}");
+        assertRejected("{ {body} }", "Unknown placeholder {{body}");
+        assertRejected("body}", "Unmatched } at 4");
+        assertRejected("{body}}", "Unmatched } at 6");
+    }
+    
+    @Test
+    public void acceptsBlankAndEscapedTemplates() {
+        assertTrue(ForwardTemplate.isValid(null));
+        assertTrue(ForwardTemplate.isValid("  "));
+        assertTrue(ForwardTemplate.isValid("{{literal}}"));
+        assertTrue(ForwardTemplate.isValid("{ Sender } {BODY}"));
+    }
+    
+    @Test
+    public void formatsPlaceholdersAndLiteralBraces() {
+        ForwardTemplate template = ForwardTemplate.compile("{{#{rule}}} {sender}: {body}", 0);
+        assertEquals("{#7} " + SENDER + ": hello", template.format(SENDER, "hello", 7, 0));
+        assertTrue(template.usesRuleId());
+        assertEquals("hello from " + SENDER,
+                ForwardTemplate.compile("{ Body } from {SENDER}", 0).format(SENDER, "hello", 7, 0));
+    }
+    
+    @Test
+    public void blankTemplateIsTheDefaultHeader() {
+        assertSame(null, ForwardTemplate.compile(" ", 0).getSource());
+        assertEquals(MessageFormatter.formatForward(SENDER, "hello"),
+                ForwardTemplate.compile(null, 0).format(SENDER, "hello", 1, 0));
+        assertEquals(SENDER + ": hello",
+                ForwardTemplate.compile(null, ForwardTemplate.COMPACT_HEADER).format(SENDER, "hello", 1, 0));
+    }
+    
+    @Test
+    public void shortHeaderSavesASegmentOnKoreanText() {
+        // UCS-2 either way: 98 characters with the default header and carrier
+        // tag, 69 with the short header
+        String body = "[Web발신]\n국민카드 승인 12,000원 일시불 가맹점 스타벅스 누적 340,000원   잔액 1,000,000원";
+        String full = ForwardTemplate.compile(null, 0).format(SENDER, body, 1, 0);
+        String compact = ForwardTemplate.compile(null, ForwardTemplate.COMPACT_HEADER).format(SENDER, body, 1, 0);
+        assertEquals(SENDER + ": 국민카드 승인 12,000원 일시불 가맹점 스타벅스 누적 340,000원 잔액 1,000,000원", compact);
+        assertEquals(2, SmsSegments.count(full));
+        assertEquals(1, SmsSegments.count(compact));
+    }
+    
+    @Test
+    public void transliterationBringsEnglishBackToGsm7() {
+        String body = "Your parcel “A-1042” is out for delivery today — it’ll arrive between 2–6pm. Café pickup…";
+        String plain = ForwardTemplate.compile(null, 0).format(SENDER, body, 1, 0);
+        String transliterated = ForwardTemplate.compile(null, ForwardTemplate.COMPACT_TRANSLITERATE)
+                .format(SENDER, body, 1, 0);
+        assertFalse(SmsSegments.isGsm7(plain));
+        assertTrue(SmsSegments.isGsm7(transliterated));
+        assertTrue(transliterated.endsWith(
+                "Your parcel \"A-1042\" is out for delivery today - it'll arrive between 2-6pm. Café pickup..."));
+        assertEquals(2, SmsSegments.count(plain));
+        assertEquals(1, SmsSegments.count(transliterated));
+    }
+    
+    @Test
+    public void transliterationKeepsTextThatCannotBecomeGsm7() {
+        String body = "“인증번호” 482913";
+        String text = ForwardTemplate.compile("{body}", ForwardTemplate.COMPACT_TRANSLITERATE).format(SENDER, body, 1, 0);
+        assertEquals(body, text);
+    }
+    
+    @Test
+    public void parsesCompactionNamesAndNumbers() {
+        assertEquals(0, ForwardTemplate.parseCompaction(null));
+        assertEquals(0, ForwardTemplate.parseCompaction(" "));
+        assertEquals(ForwardTemplate.COMPACT_ALL, ForwardTemplate.parseCompaction("Header | transliterate"));
+        assertEquals(ForwardTemplate.COMPACT_HEADER, ForwardTemplate.parseCompaction(" 1 "));
+        // Unknown bits are ignored
+        assertEquals(ForwardTemplate.COMPACT_TRANSLITERATE, ForwardTemplate.parseCompaction("6"));
+    }
+    
+    @Test
+    public void compactionNumberTooLongForAnIntIsNoCompaction() {
+        assertEquals(0, ForwardTemplate.parseCompaction("99999999999"));
+        assertEquals(0, ForwardTemplate.parseCompaction("2147483648"));
+    }
+}
\ No newline at end of file
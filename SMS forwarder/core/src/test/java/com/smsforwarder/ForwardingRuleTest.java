@@ -0,0 +1,38 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ForwardingRuleTest {
+    
+    private static final PhoneNumberNormalizer UK = new PhoneNumberNormalizer("44");
+    
+    @Test
+    public void exactSenderMatchesEveryFormatOfTheNumber() {
+        ForwardingRule rule = new ForwardingRule("010-1234-5678", true, "", "01000000001");
+        assertTrue(rule.matchesSms("01012345678", "hello"));
+        assertTrue(rule.matchesSms("+82 10 1234 5678", "hello"));
+        assertFalse(rule.matchesSms("010-1234-5679", "hello"));
+    }
+    
+    @Test
+    public void exactSenderUsesTheMatcherCountry() {
+        ForwardingRule rule = new ForwardingRule("07700 900123", true, "", "07700900999");
+        assertEquals(Collections.singletonList(rule),
+                RuleMatcher.compile(Collections.singletonList(rule), UK).match("+447700900123", "hello"));
+        assertEquals(Collections.emptyList(),
+                RuleMatcher.compile(Collections.singletonList(rule), UK).match("+827700900123", "hello"));
+    }
+    
+    @Test
+    public void blankSenderMatchesAnyone() {
+        ForwardingRule rule = new ForwardingRule(" ", true, "code", "01000000001");
+        assertTrue(rule.matchesSms("1588-1234", "Your CODE"));
+        assertFalse(rule.matchesSms("1588-1234", "hello"));
+    }
+}
\ No newline at end of file
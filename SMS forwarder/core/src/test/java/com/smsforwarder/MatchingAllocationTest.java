@@ -0,0 +1,139 @@
+package com.smsforwarder;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// The per-rule matching path runs for every rule on every SMS and must not
+// allocate once warmed up. Measured with the per-thread allocation counter of
+// HotSpot-compatible JVMs; ContentMatchingBenchmark has the timings.
+public class MatchingAllocationTest {
+    
+    private static final int WARMUP_PASSES = 20_000;
+    private static final int MEASURED_PASSES = 50_000;
+    
+    // Message i is BODIES[i] from SENDERS[i]
+    private static final String[] SENDERS = {
+        "010-1234-5678", "+82 10 9876 5432", "1588-1234", "1588-7000", "+15551234567"
+    };
+    private static final String[] BODIES = {
+        "[Web발신] 인증번호 [482913]를 입력해주세요. 타인에게 절대 알려주지 마세요.",
+        "Hi, running LATE, be there in 10 minutes. Can you order for me? Thanks!",
+        "Your Verification CODE is 482913. Do not share this code with anyone.",
+        "[Web발신] 국민카드 승인 12,000원 일시불 가맹점 누적 340,000원",
+        "Payment of $25.00 APPROVED at STORE-17. Available balance $310."
+    };
+    
+    private static com.sun.management.ThreadMXBean threads;
+    
+    private ForwardingRule[] rules;
+    private String[] foldedKeywords;
+    private String[] canonicalSenders;
+    
+    @BeforeClass
+    public static void enableAllocationCounting() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+    
+    private void createRules() {
+        rules = new ForwardingRule[] {
+            new ForwardingRule("", false, "인증번호", "01000000001"),
+            new ForwardingRule("", false, "verification code", "01000000002"),
+            new ForwardingRule("1588", false, "승인", "01000000003"),
+            new ForwardingRule("01012345678", true, "", "01000000004"),
+            new ForwardingRule("+821098765432", true, "LATE", "01000000005"),
+            new ForwardingRule("", false, "본인확인", "01000000006"),
+            new ForwardingRule("5551234567", false, "approved", "01000000007"),
+            new ForwardingRule("", false, "택배", "01000000008")
+        };
+        foldedKeywords = new String[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            foldedKeywords[i] = CaseFolding.fold(rules[i].messageContent);
+        }
+        // Once per message, before the per-rule loop
+        canonicalSenders = new String[SENDERS.length];
+        for (int i = 0; i < SENDERS.length; i++) {
+            canonicalSenders[i] = PhoneNumberNormalizer.DEFAULT.canonicalize(SENDERS[i]);
+        }
+    }
+    
+    @Test
+    public void matchesSmsDoesNotAllocate() {
+        createRules();
+        // Two rules for the first message, one for each other message
+        assertEquals(6, matchAll());
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            matchAll();
+        }
+        
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        int matched = 0;
+        for (int i = 0; i < MEASURED_PASSES; i++) {
+            matched += matchAll();
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        
+        assertEquals(6L * MEASURED_PASSES, matched);
+        assertNoAllocation(allocated, MEASURED_PASSES * SENDERS.length * rules.length);
+    }
+    
+    @Test
+    public void containsFoldedDoesNotAllocate() {
+        createRules();
+        // The empty keyword is in all 5 bodies, 5 keywords are in one each
+        assertEquals(10, containsAll());
+        for (int i = 0; i < WARMUP_PASSES; i++) {
+            containsAll();
+        }
+        
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        int matched = 0;
+        for (int i = 0; i < MEASURED_PASSES; i++) {
+            matched += containsAll();
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        
+        assertEquals(10L * MEASURED_PASSES, matched);
+        assertNoAllocation(allocated, MEASURED_PASSES * BODIES.length * foldedKeywords.length);
+    }
+    
+    // One message from every sender against every rule
+    private int matchAll() {
+        int matched = 0;
+        for (int m = 0; m < SENDERS.length; m++) {
+            for (ForwardingRule rule : rules) {
+                if (rule.matchesSms(SENDERS[m], canonicalSenders[m], BODIES[m])) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+    
+    private int containsAll() {
+        int matched = 0;
+        for (String body : BODIES) {
+            for (String keyword : foldedKeywords) {
+                if (CaseFolding.containsFolded(body, keyword)) {
+                    matched++;
+                }
+            }
+        }
+        return matched;
+    }
+    
+    // The smallest object is 16 bytes, so any allocation per call would show
+    // up as megabytes; the slack is for the counter reads themselves
+    private static void assertNoAllocation(long allocatedBytes, long calls) {
+        assertTrue(allocatedBytes + " bytes allocated over " + calls + " calls",
+                allocatedBytes < 4096);
+    }
+}
\ No newline at end of file
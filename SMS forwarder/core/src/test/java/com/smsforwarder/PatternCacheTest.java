@@ -0,0 +1,71 @@
+package com.smsforwarder;
+
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PatternCacheTest {
+    
+    // A long multipart SMS is a few thousand characters; this is far past it
+    private static final int LONG_BODY = 100_000;
+    
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+    
+    // Each of these takes exponential time in a backtracking engine on a run
+    // of a's with no match at the end; java.util.regex would not finish
+    @Test(timeout = 5000)
+    public void pathologicalPatternsGiveUpQuickly() {
+        PatternCache cache = new PatternCache(16);
+        String body = repeat('a', LONG_BODY) + "!";
+        for (String regex : new String[] {"(a+)+$", "(a|aa)+$", "(a*)*b", "(x+x+)+y", "^(a|a?)+$"}) {
+            Pattern pattern = cache.get(regex);
+            assertFalse(regex, cache.find(pattern, body));
+        }
+    }
+    
+    @Test
+    public void matchesCaseInsensitively() {
+        PatternCache cache = new PatternCache(16);
+        assertTrue(cache.find(cache.get("verification code:? \\d{6}"), "Your Verification CODE 482913"));
+        assertTrue(cache.find(cache.get("인증번호\\s*\\[?\\d{6}"), "[Web발신] 인증번호 [482913]"));
+        assertTrue(cache.find(cache.get("école"), "ÉCOLE"));
+        assertFalse(cache.find(cache.get("(?-i)code"), "CODE"));
+    }
+    
+    @Test
+    public void backtrackingOnlySyntaxDoesNotCompile() {
+        for (String regex : new String[] {"(a)\\1", "code(?=\\d)", "(?<!no)code", "(a"}) {
+            try {
+                PatternCache.compile(regex);
+                fail("Compiled " + regex);
+            } catch (PatternSyntaxException e) {
+                // Shown to the user when the rule is saved
+            }
+            assertNull(regex, new PatternCache(16).get(regex));
+        }
+    }
+    
+    @Test
+    public void compilesEachPatternOnce() {
+        PatternCache cache = new PatternCache(16);
+        Pattern pattern = cache.get("\\d{6}");
+        assertSame(pattern, cache.get("\\d{6}"));
+        assertNull(cache.get("(a"));
+        assertNull(cache.get("(a"));
+        assertTrue(cache.getStats(), cache.getStats().contains("compiles=1"));
+        assertTrue(cache.getStats(), cache.getStats().contains("invalid=1"));
+    }
+}
\ No newline at end of file
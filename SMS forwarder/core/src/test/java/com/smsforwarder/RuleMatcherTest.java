@@ -0,0 +1,140 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+// RuleMatcher must fire exactly the rules the per-rule matchesSms loop fires.
+// Rule sets and messages are random but drawn from small pools, so senders,
+// keywords and bodies overlap far more often than they would by chance.
+public class RuleMatcherTest {
+    
+    private static final long SEED = 20261017L;
+    private static final int RULE_SETS = 300;
+    private static final int MESSAGES_PER_SET = 200;
+    
+    // The same numbers written several ways, short codes and a name
+    private static final String[] SENDERS = {
+        "010-1234-5678", "01012345678", "+821012345678", "+82 10 1234 5678", "+82010-1234-5678",
+        "010-9876-5432", "+821098765432", "1588-1234", "15881234", "+15551234567", "5551234567",
+        "KBCard", "kbcard"
+    };
+    // Partial sender patterns, matched case-sensitively as substrings
+    private static final String[] SENDER_PARTS = {"1588", "010", "+82", "1234", "5678", "KB", "kb", "-", "5"};
+    // Folds to the same thing in pairs, plus text that overlaps the keywords
+    private static final String[] PIECES = {
+        "code", "CODE", "Code", "cod", "de", "e", "인증번호", "인증", "번호", "승인", "[Web발신]", "ÉCOLE", "école",
+        "ΣΟΦΊΑ", "σοφία", "Straße", "STRASSE", "ǅ", "ǆ", "Ǆ", " ", "  ", "482913", "4829", "-", "원", "$", "\n"
+    };
+    private static final String[] PATTERNS = {"\\d{6}", "code\\s*\\d+", "인증번호.*\\d", "^\\[web", "(?-i)CODE"};
+    
+    @Test
+    public void matchesLikeThePerRuleLoop() {
+        Random random = new Random(SEED);
+        for (int set = 0; set < RULE_SETS; set++) {
+            List<ForwardingRule> rules = randomRules(random, 1 + random.nextInt(40));
+            RuleMatcher matcher = RuleMatcher.compile(rules);
+            for (int m = 0; m < MESSAGES_PER_SET; m++) {
+                String from = random.nextInt(8) == 0 ? pick(random, SENDER_PARTS) : pick(random, SENDERS);
+                String body = randomText(random, random.nextInt(8));
+                
+                List<ForwardingRule> expected = new ArrayList<>();
+                for (ForwardingRule rule : rules) {
+                    if (rule.matchesSms(from, body)) {
+                        expected.add(rule);
+                    }
+                }
+                assertEquals("rule set " + set + ", from " + from + ", body \"" + body + "\", rules " + describe(rules),
+                        expected, matcher.match(from, body));
+            }
+        }
+    }
+    
+    @Test
+    public void keepsOneRulePerDestination() {
+        Random random = new Random(SEED + 1);
+        for (int set = 0; set < RULE_SETS; set++) {
+            List<ForwardingRule> rules = randomRules(random, 1 + random.nextInt(20));
+            RuleMatcher matcher = RuleMatcher.compile(rules);
+            for (int m = 0; m < MESSAGES_PER_SET; m++) {
+                String from = pick(random, SENDERS);
+                String body = randomText(random, random.nextInt(8));
+                
+                List<ForwardingRule> expected = new ArrayList<>();
+                List<String> destinations = new ArrayList<>();
+                for (ForwardingRule rule : rules) {
+                    String destination = rule.destinationKey(PhoneNumberNormalizer.DEFAULT);
+                    if (rule.matchesSms(from, body) && !destinations.contains(destination)) {
+                        destinations.add(destination);
+                        expected.add(rule);
+                    }
+                }
+                assertEquals(expected, matcher.matchDistinctDestinations(from, body));
+            }
+        }
+    }
+    
+    private static List<ForwardingRule> randomRules(Random random, int count) {
+        List<ForwardingRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String sender;
+            boolean exact = random.nextBoolean();
+            switch (random.nextInt(4)) {
+                case 0:
+                    sender = random.nextBoolean() ? "" : " ";
+                    break;
+                case 1:
+                    sender = pick(random, SENDER_PARTS);
+                    break;
+                default:
+                    sender = pick(random, SENDERS);
+                    break;
+            }
+            
+            String content;
+            boolean regex = random.nextInt(8) == 0;
+            if (regex) {
+                content = pick(random, PATTERNS);
+            } else if (random.nextInt(4) == 0) {
+                content = random.nextBoolean() ? "" : "  ";
+            } else {
+                content = randomText(random, 1 + random.nextInt(2));
+            }
+            
+            // Destinations repeat in different formats across rules
+            ForwardingRule rule = new ForwardingRule(sender, exact, content, pick(random, SENDERS));
+            rule.id = i + 1;
+            if (regex) {
+                rule.matchMode = ForwardingRule.MATCH_MODE_REGEX;
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+    
+    private static String randomText(Random random, int pieces) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            text.append(pick(random, PIECES));
+        }
+        return text.toString();
+    }
+    
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+    
+    private static String describe(List<ForwardingRule> rules) {
+        List<String> described = new ArrayList<>();
+        for (ForwardingRule rule : rules) {
+            described.add(rule.id + ":" + (rule.senderExactMatch ? "=" : "~") + rule.senderNumber
+                    + "/" + (rule.isRegex() ? "re:" : "") + rule.messageContent);
+        }
+        return Arrays.toString(described.toArray());
+    }
+}
\ No newline at end of file
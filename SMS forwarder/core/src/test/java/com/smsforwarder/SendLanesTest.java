@@ -0,0 +1,150 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Drives SendLanes with fake subscriptions and a hand-moved clock
+public class SendLanesTest {
+    
+    private static final long SECOND = 1_000_000_000L;
+    private static final int SIM1_SUBSCRIPTION = 11;
+    private static final int SIM2_SUBSCRIPTION = 22;
+    
+    // Two SIMs in slots 0 and 1, 2 segments of burst each, 1 segment per second
+    private static SendLanes twoSims() {
+        SendLanes lanes = new SendLanes(2, 1.0, 0);
+        lanes.setSubscriptions(new int[] {0, 1}, new int[] {SIM1_SUBSCRIPTION, SIM2_SUBSCRIPTION}, 0);
+        return lanes;
+    }
+    
+    @Test
+    public void startsWithTheDefaultLane() {
+        SendLanes lanes = new SendLanes(2, 1.0, 0);
+        assertEquals(1, lanes.getLaneCount());
+        SendLanes.Lane lane = lanes.acquire(SendLanes.ANY_SLOT, 1, 0);
+        assertEquals(SendLanes.DEFAULT_SUBSCRIPTION, lane.subscriptionId);
+    }
+    
+    @Test
+    public void spreadsUnpinnedMessagesOverTheLanes() {
+        SendLanes lanes = twoSims();
+        SendLanes.Lane first = lanes.acquire(SendLanes.ANY_SLOT, 1, 0);
+        SendLanes.Lane second = lanes.acquire(SendLanes.ANY_SLOT, 1, 0);
+        assertEquals(0, first.slot);
+        assertEquals(1, second.slot);
+    }
+    
+    @Test
+    public void rateLimitsEachLaneInSegments() {
+        SendLanes lanes = twoSims();
+        // 4 segments of burst over both lanes, then nothing for a second
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(lanes.acquire(SendLanes.ANY_SLOT, 1, 0));
+        }
+        assertNull(lanes.acquire(SendLanes.ANY_SLOT, 1, 0));
+        assertEquals(SECOND, lanes.nanosUntilAvailable(SendLanes.ANY_SLOT, 1, 0));
+        assertNotNull(lanes.acquire(SendLanes.ANY_SLOT, 1, SECOND));
+        
+        // A 2-segment message costs 2 tokens
+        SendLanes fresh = twoSims();
+        assertNotNull(fresh.acquire(0, 2, 0));
+        assertNull(fresh.acquire(0, 1, 0));
+    }
+    
+    @Test
+    public void pinnedMessagesWaitForTheirSlot() {
+        SendLanes lanes = twoSims();
+        assertEquals(1, lanes.acquire(1, 1, 0).slot);
+        assertEquals(1, lanes.acquire(1, 1, 0).slot);
+        // Slot 1 is out of tokens; the idle slot 0 does not take its traffic
+        assertNull(lanes.acquire(1, 1, 0));
+        assertEquals(SECOND, lanes.nanosUntilAvailable(1, 1, 0));
+        assertEquals(0, lanes.acquire(SendLanes.ANY_SLOT, 1, 0).slot);
+        assertEquals(1, lanes.acquire(1, 1, SECOND).slot);
+    }
+    
+    @Test
+    public void failsOverAfterRepeatedLaneFaults() {
+        SendLanes lanes = new SendLanes(100, 100.0, 0);
+        lanes.setSubscriptions(new int[] {0, 1}, new int[] {SIM1_SUBSCRIPTION, SIM2_SUBSCRIPTION}, 0);
+        SendLanes.Lane sim2 = lanes.acquire(1, 1, 0);
+        assertFalse(lanes.onResult(sim2, false, true, 0));
+        assertFalse(lanes.onResult(sim2, false, true, 0));
+        assertTrue(lanes.onResult(sim2, false, true, 0));
+        assertEquals(1, lanes.getFailoverCount());
+        
+        // Traffic pinned to the failed SIM goes to the other one during the cooldown
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, lanes.acquire(1, 1, SECOND).slot);
+            assertEquals(0, lanes.acquire(SendLanes.ANY_SLOT, 1, SECOND).slot);
+        }
+        // and back once the 30 s cooldown is over
+        assertEquals(1, lanes.acquire(1, 1, 31 * SECOND).slot);
+    }
+    
+    @Test
+    public void cooldownDoublesEachTimeTheLaneTrips() {
+        SendLanes lanes = new SendLanes(100, 100.0, 0);
+        lanes.setSubscriptions(new int[] {0, 1}, new int[] {SIM1_SUBSCRIPTION, SIM2_SUBSCRIPTION}, 0);
+        SendLanes.Lane sim2 = lanes.acquire(1, 1, 0);
+        trip(lanes, sim2, 0);
+        trip(lanes, sim2, 31 * SECOND);
+        // Down for 60 s from the second trip
+        assertEquals(0, lanes.acquire(1, 1, 61 * SECOND).slot);
+        assertEquals(1, lanes.acquire(1, 1, 92 * SECOND).slot);
+    }
+    
+    @Test
+    public void messageFaultsAndSuccessesDoNotTrip() {
+        SendLanes lanes = twoSims();
+        SendLanes.Lane sim1 = lanes.acquire(0, 1, 0);
+        for (int i = 0; i < 5; i++) {
+            // e.g. a PDU no SIM can encode
+            assertFalse(lanes.onResult(sim1, false, false, 0));
+        }
+        assertFalse(lanes.onResult(sim1, false, true, 0));
+        assertFalse(lanes.onResult(sim1, false, true, 0));
+        assertFalse(lanes.onResult(sim1, true, false, 0));
+        assertFalse(lanes.onResult(sim1, false, true, 0));
+        assertFalse(lanes.onResult(sim1, false, true, 0));
+        assertEquals(0, lanes.getFailoverCount());
+    }
+    
+    @Test
+    public void keepsSendingWhenEveryLaneIsDown() {
+        SendLanes lanes = new SendLanes(100, 100.0, 0);
+        lanes.setSubscriptions(new int[] {0, 1}, new int[] {SIM1_SUBSCRIPTION, SIM2_SUBSCRIPTION}, 0);
+        trip(lanes, lanes.acquire(0, 1, 0), 0);
+        trip(lanes, lanes.acquire(1, 1, 0), 0);
+        assertNotNull(lanes.acquire(SendLanes.ANY_SLOT, 1, SECOND));
+        assertNotNull(lanes.acquire(1, 1, SECOND));
+    }
+    
+    @Test
+    public void keepsLaneStateAcrossSubscriptionRefresh() {
+        SendLanes lanes = twoSims();
+        SendLanes.Lane sim1 = lanes.acquire(0, 2, 0);
+        lanes.setSubscriptions(new int[] {0, 1}, new int[] {SIM1_SUBSCRIPTION, SIM2_SUBSCRIPTION}, 0);
+        // Still out of tokens after the refresh
+        assertNull(lanes.acquire(0, 1, 0));
+        assertSame(sim1, lanes.acquire(0, 1, SECOND));
+        
+        // A SIM swapped out takes its lane with it; no SIM left means the default lane
+        lanes.setSubscriptions(new int[] {1}, new int[] {SIM2_SUBSCRIPTION}, SECOND);
+        assertEquals(1, lanes.getLaneCount());
+        lanes.setSubscriptions(new int[0], new int[0], SECOND);
+        assertEquals(SendLanes.DEFAULT_SUBSCRIPTION, lanes.acquire(0, 1, SECOND).subscriptionId);
+    }
+    
+    private static void trip(SendLanes lanes, SendLanes.Lane lane, long nowNanos) {
+        lanes.onResult(lane, false, true, nowNanos);
+        lanes.onResult(lane, false, true, nowNanos);
+        assertTrue(lanes.onResult(lane, false, true, nowNanos));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SmsSegmentsTest {
+    
+    private static final String EMOJI = "😀";
+    
+    private static String repeat(String text, int times) {
+        char[] chars = new char[text.length() * times];
+        for (int i = 0; i < times; i++) {
+            text.getChars(0, text.length(), chars, i * text.length());
+        }
+        return new String(chars);
+    }
+    
+    @Test
+    public void emptyTextIsOneSegment() {
+        assertEquals(1, SmsSegments.count(""));
+    }
+    
+    @Test
+    public void gsm7FitsSingleAndConcatenatedLimits() {
+        assertEquals(1, SmsSegments.count(repeat("a", 160)));
+        assertEquals(2, SmsSegments.count(repeat("a", 161)));
+        // Concatenated segments carry 153 septets after the 6-byte header
+        assertEquals(2, SmsSegments.count(repeat("a", 306)));
+        assertEquals(3, SmsSegments.count(repeat("a", 307)));
+    }
+    
+    @Test
+    public void extensionCharactersTakeTwoSeptets() {
+        for (char c : "\f^{}\\[~]|€".toCharArray()) {
+            assertEquals(String.valueOf(c), 2, SmsSegments.septets(c));
+        }
+        assertEquals(1, SmsSegments.count(repeat("€", 80)));
+        assertEquals(2, SmsSegments.count(repeat("€", 81)));
+        assertEquals(1, SmsSegments.count(repeat("a", 158) + "["));
+        assertEquals(2, SmsSegments.count(repeat("a", 159) + "["));
+    }
+    
+    @Test
+    public void escapeSequenceIsNotSplitAcrossSegments() {
+        // 306 septets would fill two segments exactly, but the escape and its
+        // character cannot straddle the boundary after 152 septets
+        assertEquals(3, SmsSegments.count(repeat("a", 152) + "^" + repeat("a", 152)));
+        assertEquals(2, SmsSegments.count(repeat("a", 151) + "^" + repeat("a", 153)));
+    }
+    
+    @Test
+    public void classifiesGsm7Alphabet() {
+        assertTrue(SmsSegments.isGsm7("Héllo @ £5 ΔΣΩ Ñ ü"));
+        assertEquals(1, SmsSegments.septets('Δ'));
+        assertEquals(1, SmsSegments.septets('é'));
+        // Only the capital is in the basic table
+        assertEquals(1, SmsSegments.septets('Ç'));
+        assertEquals(0, SmsSegments.septets('ç'));
+        assertFalse(SmsSegments.isGsm7("인증번호"));
+        assertFalse(SmsSegments.isGsm7("it’s"));
+    }
+    
+    @Test
+    public void ucs2FitsSingleAndConcatenatedLimits() {
+        assertEquals(1, SmsSegments.count(repeat("가", 70)));
+        assertEquals(2, SmsSegments.count(repeat("가", 71)));
+        assertEquals(2, SmsSegments.count(repeat("가", 134)));
+        assertEquals(3, SmsSegments.count(repeat("가", 135)));
+    }
+    
+    @Test
+    public void oneNonGsmCharacterMakesTheWholeTextUcs2() {
+        assertEquals(1, SmsSegments.count(repeat("a", 100)));
+        assertEquals(2, SmsSegments.count(repeat("a", 100) + "가"));
+    }
+    
+    @Test
+    public void surrogatePairIsNotSplitAcrossSegments() {
+        assertEquals(1, SmsSegments.count(repeat("가", 68) + EMOJI));
+        // 134 units would fill two segments, but the pair cannot start at unit 67
+        assertEquals(3, SmsSegments.count(repeat("가", 66) + EMOJI + repeat("가", 66)));
+        assertEquals(2, SmsSegments.count(repeat("가", 65) + EMOJI + repeat("가", 67)));
+    }
+    
+    @Test
+    public void countTakesAnyCharSequence() {
+        char[] chars = new char[161];
+        Arrays.fill(chars, 'x');
+        assertEquals(2, SmsSegments.count(new StringBuilder().append(chars)));
+    }
+}
\ No newline at end of file
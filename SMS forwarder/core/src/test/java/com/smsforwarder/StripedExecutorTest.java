@@ -0,0 +1,131 @@
+package com.smsforwarder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StripedExecutorTest {
+    
+    private static final String KEY = "+821012345678";
+    private static final long TIMEOUT_MS = 5000;
+    
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService waiter = Executors.newSingleThreadExecutor();
+    private StripedExecutor executor;
+    
+    @After
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        waiter.shutdownNow();
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(TIMEOUT_MS);
+        }
+    }
+    
+    @Test
+    public void dropOldestEvictsTasksButNotTheDrainMarker() throws Exception {
+        executor = new StripedExecutor("test", 1, 2, StripedExecutor.OverflowPolicy.DROP_OLDEST, 0);
+        List<String> ran = new CopyOnWriteArrayList<>();
+        occupyLane();
+        // The marker is the oldest entry in the lane queue
+        Future<Boolean> idle = waiter.submit(() -> executor.awaitIdle(TIMEOUT_MS));
+        awaitQueueDepth(1);
+        
+        assertTrue(executor.execute(KEY, () -> ran.add("a")));
+        assertTrue(executor.execute(KEY, () -> ran.add("b")));
+        assertTrue(executor.execute(KEY, () -> ran.add("c")));
+        assertEquals(2, executor.getDroppedCount());
+        assertEquals(2, executor.getQueueDepth());
+        
+        release.countDown();
+        assertTrue(idle.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT_MS));
+        assertEquals(1, ran.size());
+        assertEquals("c", ran.get(0));
+    }
+    
+    @Test
+    public void dropOldestDropsTheNewTaskWhenOnlyMarkersAreQueued() throws Exception {
+        executor = new StripedExecutor("test", 1, 1, StripedExecutor.OverflowPolicy.DROP_OLDEST, 0);
+        AtomicInteger ran = new AtomicInteger();
+        occupyLane();
+        Future<Boolean> idle = waiter.submit(() -> executor.awaitIdle(TIMEOUT_MS));
+        awaitQueueDepth(1);
+        
+        assertFalse(executor.execute(KEY, ran::incrementAndGet));
+        assertEquals(1, executor.getDroppedCount());
+        
+        release.countDown();
+        assertTrue(idle.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(0, ran.get());
+    }
+    
+    @Test
+    public void evictedTaskStillRunsItsCallback() throws Exception {
+        executor = new StripedExecutor("test", 1, 1, StripedExecutor.OverflowPolicy.DROP_OLDEST, 0);
+        AtomicInteger ran = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(2);
+        occupyLane();
+        
+        assertTrue(executor.execute(KEY, ran::incrementAndGet, done::countDown));
+        assertTrue(executor.execute(KEY, ran::incrementAndGet, done::countDown));
+        // The first one was evicted, its callback ran on this thread
+        assertEquals(1, done.getCount());
+        assertEquals(1, executor.getDroppedCount());
+        
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(executor.awaitIdle(TIMEOUT_MS));
+        assertEquals(1, ran.get());
+    }
+    
+    @Test
+    public void callbackRunsAfterAFailedTask() throws Exception {
+        executor = new StripedExecutor("test", 2, 4, StripedExecutor.OverflowPolicy.BLOCK, TIMEOUT_MS);
+        CountDownLatch done = new CountDownLatch(1);
+        
+        assertTrue(executor.execute(KEY, () -> {
+            throw new IllegalStateException("boom");
+        }, done::countDown));
+        assertTrue(done.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(executor.awaitIdle(TIMEOUT_MS));
+        assertEquals(1, executor.getFailedCount());
+        assertEquals(0, executor.getCompletedCount());
+    }
+    
+    // Keeps the lane thread busy until release, so later tasks stay queued
+    private void occupyLane() throws InterruptedException {
+        assertTrue(executor.execute(KEY, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+    
+    private void awaitQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (executor.getQueueDepth() < depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(depth, executor.getQueueDepth());
+    }
+}
\ No newline at end of file
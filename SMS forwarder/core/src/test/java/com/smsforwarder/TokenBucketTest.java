@@ -0,0 +1,52 @@
+package com.smsforwarder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+    
+    private static final long SECOND = 1_000_000_000L;
+    
+    @Test
+    public void startsFullAndRefillsAtTheRate() {
+        TokenBucket bucket = new TokenBucket(3, 1.0, 0);
+        assertEquals(0, bucket.tryAcquire(1, 0));
+        assertEquals(0, bucket.tryAcquire(2, 0));
+        
+        // Empty: one token is a second away
+        assertEquals(SECOND, bucket.tryAcquire(1, 0));
+        assertEquals(SECOND / 2, bucket.tryAcquire(1, SECOND / 2));
+        assertEquals(0, bucket.tryAcquire(1, SECOND));
+    }
+    
+    @Test
+    public void refillStopsAtCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 10.0, 0);
+        assertEquals(0, bucket.tryAcquire(2, 0));
+        assertEquals(2.0, bucket.getAvailable(60 * SECOND), 1e-9);
+    }
+    
+    @Test
+    public void waitingTakesNothing() {
+        TokenBucket bucket = new TokenBucket(4, 2.0, 0);
+        assertEquals(0, bucket.tryAcquire(3, 0));
+        assertTrue(bucket.tryAcquire(2, 0) > 0);
+        assertEquals(1.0, bucket.getAvailable(0), 1e-9);
+    }
+    
+    @Test
+    public void requestAboveCapacityPassesWhenFullAndLeavesDebt() {
+        TokenBucket bucket = new TokenBucket(2, 1.0, 0);
+        assertEquals(0, bucket.tryAcquire(5, 0));
+        assertEquals(-3.0, bucket.getAvailable(0), 1e-9);
+        // Paid back before the next message: 3 tokens of debt plus 1
+        assertEquals(4 * SECOND, bucket.tryAcquire(1, 0));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroRate() {
+        new TokenBucket(1, 0, 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.smsforwarder;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// One message per batch and one POST at a time, with posts run inline
+public class WebhookBatcherTest {
+    
+    private static final String URL = "https://example.com/hook";
+    
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+    private final AtomicInteger posts = new AtomicInteger();
+    
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+    
+    @Test
+    public void rejectedPostGivesBackItsPermit() {
+        AtomicInteger rejections = new AtomicInteger(1);
+        Executor flaky = task -> {
+            if (rejections.getAndDecrement() > 0) {
+                throw new RejectedExecutionException("busy");
+            }
+            task.run();
+        };
+        WebhookBatcher batcher = batcher(flaky);
+        
+        batcher.submit(URL, 1, "+8215881234", "first", "first", 0);
+        assertEquals(0, posts.get());
+        assertEquals(1, failed.size());
+        assertTrue(failed.get(0).contains("busy"));
+        
+        // With the permit leaked this one would wait forever
+        batcher.submit(URL, 1, "+8215881234", "second", "second", 0);
+        assertEquals(1, posts.get());
+        assertEquals(1, delivered.size());
+        assertEquals(0, batcher.getPendingCount());
+    }
+    
+    @Test
+    public void shutDownExecutorFailsEveryBatch() {
+        WebhookBatcher batcher = batcher(task -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        
+        for (int i = 0; i < 3; i++) {
+            batcher.submit(URL, 1, "+8215881234", "message " + i, "message " + i, 0);
+        }
+        batcher.flushAll();
+        assertEquals(0, posts.get());
+        assertEquals(3, failed.size());
+        assertEquals(0, batcher.getPendingCount());
+    }
+    
+    private WebhookBatcher batcher(Executor postExecutor) {
+        WebhookBatcher.Transport transport = (url, gzippedJson) -> {
+            posts.incrementAndGet();
+            return 200;
+        };
+        WebhookBatcher.Listener listener = new WebhookBatcher.Listener() {
+            @Override
+            public void onDelivered(String url, int messages) {
+                delivered.add(url);
+            }
+            
+            @Override
+            public void onFailed(String url, int messages, String reason) {
+                failed.add(reason);
+            }
+        };
+        return new WebhookBatcher(60000, 1, 64 * 1024, 1, transport, listener, scheduler, postExecutor,
+                new ForwardingMetrics());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,512 @@
+package com.smsforwarder.loadgen;
+
+import com.smsforwarder.ForwardCoalescer;
+import com.smsforwarder.ForwardingEngine;
+import com.smsforwarder.ForwardingMetrics;
+import com.smsforwarder.ForwardingRule;
+import com.smsforwarder.LatencyHistogram;
+import com.smsforwarder.RuleMatcher;
+import com.smsforwarder.SendLanes;
+import com.smsforwarder.SmsConcatHeader;
+import com.smsforwarder.SmsReassembler;
+import com.smsforwarder.SmsSegments;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives synthetic SMS_RECEIVED traffic through the forwarding pipeline on a
+// plain JVM to reproduce alert storms. Generated PDUs go through the same
+// steps as SmsReceiver (decode, concatenation header, reassembly), then into
+// ForwardingEngine as ForwardingPipeline runs it, then through an optional
+// ForwardCoalescer to a single outbound thread like OutboundQueue's, which
+// ends in a recording stand-in for SmsManager. Reports sustained throughput,
+// queue depths and tail latency. SmsReceiver itself needs Android and is not
+// called; SmsReceiverLoadTest drives it under Robolectric.
+//
+// With --sims or --sim-rate the outbound thread sends through SendLanes as
+// OutboundQueue does, over that many fake SIMs limited to --sim-rate segments
+// a minute each (unlimited if 0). Every send on --failing-sim fails, to watch
+// the lanes fail over; a failed send is retried at once, up to 6 attempts.
+//
+//   loadgen [--rate N] [--duration S] [--burst-rate N] [--burst-every S] [--burst-length S]
+//           [--mix bank:70,otp:15,carrier:5,personal:10] [--senders N] [--rules N]
+//           [--lanes N] [--lane-capacity N] [--send-delay-us N] [--coalesce-ms N] [--seed N]
+//           [--sims N] [--sim-rate N] [--sim-burst N] [--failing-sim SLOT]
+public final class LoadGenerator {
+    
+    // Same defaults as ForwardingPipeline and SmsReceiver
+    private static final int DEFAULT_LANES = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int DEFAULT_LANE_CAPACITY = 256;
+    private static final long ENQUEUE_TIMEOUT_MS = 500;
+    private static final long SEGMENT_TIMEOUT_MS = 30000;
+    private static final int MAX_PENDING_MESSAGES = 32;
+    private static final int COALESCE_MAX_BYTES = 600;
+    private static final int MAX_SEND_ATTEMPTS = 6;
+    
+    private static final long SAMPLE_INTERVAL_MS = 10;
+    private static final long DRAIN_TIMEOUT_MS = 60000;
+    private static final long ORIGIN_RETENTION_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private final ForwardingMetrics metrics = new ForwardingMetrics();
+    private final RecordingSender smsManager;
+    private final ThreadPoolExecutor outbound = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), r -> new Thread(r, "sms-outbound"));
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "loadgen-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ForwardingEngine engine;
+    private final ForwardCoalescer coalescer;
+    private final SmsReassembler reassembler;
+    // Null without --sims or --sim-rate
+    private final SendLanes simLanes;
+    private final int failingSim;
+    private final AtomicLong failedSends = new AtomicLong();
+    private final AtomicLong abandonedSends = new AtomicLong();
+    
+    // When each message body was broadcast, for end-to-end latency
+    private final Map<String, Long> origins = new ConcurrentHashMap<>();
+    // Oldest broadcast time waiting in each destination's coalescing batch
+    private final Map<String, Long> pendingBatches = new ConcurrentHashMap<>();
+    private long broadcastAtNanos;
+    
+    private final DepthSamples laneDepth = new DepthSamples();
+    private final DepthSamples outboundDepth = new DepthSamples();
+    
+    private LoadGenerator(RuleMatcher matcher, int lanes, int laneCapacity, long sendDelayMicros, long coalesceMillis,
+            SendLanes simLanes, int failingSim) {
+        this.smsManager = new RecordingSender(sendDelayMicros);
+        this.simLanes = simLanes;
+        this.failingSim = failingSim;
+        this.engine = new ForwardingEngine(() -> matcher, new RecordingOutbox(), metrics,
+                lanes, laneCapacity, ENQUEUE_TIMEOUT_MS);
+        this.coalescer = coalesceMillis > 0
+                ? new ForwardCoalescer(coalesceMillis, COALESCE_MAX_BYTES, this::sendBatch, scheduler) : null;
+        this.reassembler = new SmsReassembler(SEGMENT_TIMEOUT_MS, MAX_PENDING_MESSAGES, this::startForwarding);
+    }
+    
+    public static void main(String[] args) throws Exception {
+        double rate = 200;
+        double duration = 30;
+        double burstRate = 0;
+        double burstEvery = 20;
+        double burstLength = 5;
+        String mix = "bank:70,otp:15,carrier:5,personal:10";
+        int senders = 20;
+        int fillerRules = 1000;
+        int lanes = DEFAULT_LANES;
+        int laneCapacity = DEFAULT_LANE_CAPACITY;
+        long sendDelayMicros = 0;
+        long coalesceMillis = 0;
+        long seed = 1;
+        int sims = 0;
+        double simRate = 0;
+        int simBurst = 30;
+        int failingSim = -1;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+                return;
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--duration":
+                    duration = Double.parseDouble(value);
+                    break;
+                case "--burst-rate":
+                    burstRate = Double.parseDouble(value);
+                    break;
+                case "--burst-every":
+                    burstEvery = Double.parseDouble(value);
+                    break;
+                case "--burst-length":
+                    burstLength = Double.parseDouble(value);
+                    break;
+                case "--mix":
+                    mix = value;
+                    break;
+                case "--senders":
+                    senders = Integer.parseInt(value);
+                    break;
+                case "--rules":
+                    fillerRules = Integer.parseInt(value);
+                    break;
+                case "--lanes":
+                    lanes = Integer.parseInt(value);
+                    break;
+                case "--lane-capacity":
+                    laneCapacity = Integer.parseInt(value);
+                    break;
+                case "--send-delay-us":
+                    sendDelayMicros = Long.parseLong(value);
+                    break;
+                case "--coalesce-ms":
+                    coalesceMillis = Long.parseLong(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--sims":
+                    sims = Integer.parseInt(value);
+                    break;
+                case "--sim-rate":
+                    simRate = Double.parseDouble(value);
+                    break;
+                case "--sim-burst":
+                    simBurst = Integer.parseInt(value);
+                    break;
+                case "--failing-sim":
+                    failingSim = Integer.parseInt(value);
+                    break;
+                default:
+                    usage("Unknown argument: " + arg);
+                    return;
+            }
+        }
+        if (rate <= 0 || duration <= 0) {
+            usage("--rate and --duration must be positive");
+            return;
+        }
+        if (sims < 0 || simRate < 0 || simBurst <= 0) {
+            usage("--sims and --sim-rate must not be negative, --sim-burst must be positive");
+            return;
+        }
+        
+        SendLanes simLanes = null;
+        if (sims > 0 || simRate > 0) {
+            // A rate of 0 is unlimited; one refilling faster than anything can be sent
+            simLanes = new SendLanes(simBurst, simRate > 0 ? simRate / 60 : 1e12, System.nanoTime());
+            int count = Math.max(1, sims);
+            int[] slots = new int[count];
+            int[] subscriptionIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                slots[i] = i;
+                subscriptionIds[i] = i + 1;
+            }
+            simLanes.setSubscriptions(slots, subscriptionIds, System.nanoTime());
+        }
+        
+        TrafficMix traffic = TrafficMix.parse(mix, senders, seed);
+        List<ForwardingRule> rules = traffic.rules(fillerRules);
+        RuleMatcher matcher = RuleMatcher.compile(rules);
+        System.err.printf(Locale.ROOT, "%d rules, mix %s, %d lanes of %d%n", rules.size(), mix, lanes, laneCapacity);
+        
+        LoadGenerator generator = new LoadGenerator(matcher, lanes, laneCapacity, sendDelayMicros, coalesceMillis,
+                simLanes, failingSim);
+        Load load = new Load(rate, duration, burstRate, burstEvery, burstLength);
+        generator.run(traffic, load).print(load, lanes * laneCapacity);
+    }
+    
+    private Report run(TrafficMix traffic, Load load) throws InterruptedException {
+        Report report = new Report();
+        long start = System.nanoTime();
+        long end = start + (long) (load.durationSeconds * 1e9);
+        report.start = start;
+        
+        scheduler.scheduleAtFixedRate(() -> {
+            laneDepth.add(engine.getQueueDepth());
+            outboundDepth.add(outbound.getQueue().size());
+        }, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(new ProgressPrinter(start), 1, 1, TimeUnit.SECONDS);
+        
+        long next = start;
+        int reference = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                break;
+            }
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            report.maxLagNanos = Math.max(report.maxLagNanos, now - next);
+            
+            String[] message = traffic.next();
+            List<byte[]> pdus = Pdus.encode(message[0], message[1], ++reference);
+            onBroadcast(pdus);
+            report.injected++;
+            report.pdus += pdus.size();
+            
+            next += (long) (1e9 / load.rateAt((next - start) / 1e9));
+        }
+        report.injectEnd = System.nanoTime();
+        
+        // Let everything queued finish before reading the results
+        if (!engine.shutdown(DRAIN_TIMEOUT_MS)) {
+            System.err.println("Forwarding lanes did not drain in time: " + engine.getStats());
+        }
+        if (coalescer != null) {
+            coalescer.flushAll();
+        }
+        outbound.shutdown();
+        outbound.awaitTermination(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        report.end = System.nanoTime();
+        scheduler.shutdownNow();
+        return report;
+    }
+    
+    // What SmsReceiver.onReceive does with one broadcast
+    private void onBroadcast(List<byte[]> pdus) {
+        long receiveStart = System.nanoTime();
+        broadcastAtNanos = receiveStart;
+        long parseStart = System.nanoTime();
+        metrics.add(ForwardingMetrics.Counter.PDUS_PARSED, pdus.size());
+        
+        Map<String, StringBuilder> bodies = new LinkedHashMap<>();
+        for (byte[] pdu : pdus) {
+            Pdus.Decoded sms = Pdus.decode(pdu);
+            SmsConcatHeader header = SmsConcatHeader.parse(pdu);
+            if (header != null) {
+                reassembler.addSegment(sms.sender, header, sms.body, System.currentTimeMillis());
+            } else {
+                StringBuilder body = bodies.get(sms.sender);
+                if (body == null) {
+                    body = new StringBuilder();
+                    bodies.put(sms.sender, body);
+                }
+                body.append(sms.body);
+            }
+        }
+        metrics.recordSince(ForwardingMetrics.Stage.PARSE, parseStart);
+        
+        for (Map.Entry<String, StringBuilder> entry : bodies.entrySet()) {
+            startForwarding(entry.getKey(), entry.getValue().toString());
+        }
+        metrics.recordSince(ForwardingMetrics.Stage.RECEIVE, receiveStart);
+    }
+    
+    // Runs on the injecting thread, directly or from the reassembler
+    private void startForwarding(String sender, String body) {
+        metrics.increment(ForwardingMetrics.Counter.SMS_RECEIVED);
+        origins.put(body, broadcastAtNanos);
+        engine.submit(sender, body, broadcastAtNanos, null);
+    }
+    
+    private void sendBatch(String destination, String text) {
+        Long oldest = pendingBatches.remove(destination);
+        enqueueSend(destination, text, oldest != null ? oldest : -1);
+    }
+    
+    private void enqueueSend(final String destination, final String text, final long receivedAtNanos) {
+        metrics.increment(ForwardingMetrics.Counter.FORWARDS_QUEUED);
+        outbound.execute(() -> {
+            if (simLanes != null && !acquireWorkingLane(text)) {
+                abandonedSends.incrementAndGet();
+                metrics.increment(ForwardingMetrics.Counter.SEND_FAILED);
+                return;
+            }
+            long sendStart = System.nanoTime();
+            smsManager.send(destination, text, receivedAtNanos);
+            metrics.recordSince(ForwardingMetrics.Stage.SEND, sendStart);
+            metrics.increment(ForwardingMetrics.Counter.SEND_OK);
+        });
+    }
+    
+    // Waits out the rate limit like OutboundQueue's drain rescheduling does;
+    // false if every attempt landed on the failing SIM
+    private boolean acquireWorkingLane(String text) {
+        int segments = SmsSegments.count(text);
+        int attempts = 0;
+        while (attempts < MAX_SEND_ATTEMPTS) {
+            long now = System.nanoTime();
+            SendLanes.Lane lane = simLanes.acquire(SendLanes.ANY_SLOT, segments, now);
+            if (lane == null) {
+                LockSupport.parkNanos(Math.max(1, simLanes.nanosUntilAvailable(SendLanes.ANY_SLOT, segments, now)));
+                continue;
+            }
+            attempts++;
+            boolean ok = lane.slot != failingSim;
+            if (simLanes.onResult(lane, ok, true, System.nanoTime())) {
+                System.err.println("SIM " + lane.slot + " taken out of rotation: " + simLanes.getStats());
+            }
+            if (ok) {
+                return true;
+            }
+            failedSends.incrementAndGet();
+        }
+        return false;
+    }
+    
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: loadgen [--rate N] [--duration S] [--burst-rate N] [--burst-every S]"
+                + " [--burst-length S] [--mix bank:70,otp:15,carrier:5,personal:10] [--senders N] [--rules N]"
+                + " [--lanes N] [--lane-capacity N] [--send-delay-us N] [--coalesce-ms N] [--seed N]"
+                + " [--sims N] [--sim-rate N] [--sim-burst N] [--failing-sim SLOT]");
+        System.exit(2);
+    }
+    
+    private final class RecordingOutbox implements ForwardingEngine.Outbox {
+        @Override
+        public void forward(ForwardingRule rule, String sender, String message, String forwardedText) {
+            Long origin = origins.get(message);
+            long receivedAt = origin != null ? origin : -1;
+            if (coalescer != null) {
+                if (origin != null) {
+                    pendingBatches.putIfAbsent(rule.forwardToNumber, origin);
+                }
+                coalescer.submit(rule.forwardToNumber, forwardedText);
+            } else {
+                enqueueSend(rule.forwardToNumber, forwardedText, receivedAt);
+            }
+        }
+        
+        @Override
+        public void onError(String sender, RuntimeException e) {
+            System.err.println("Error forwarding SMS from " + sender + ": " + e);
+        }
+    }
+    
+    private final class ProgressPrinter implements Runnable {
+        private final long start;
+        private long lastReceived;
+        private long lastSent;
+        
+        ProgressPrinter(long start) {
+            this.start = start;
+        }
+        
+        @Override
+        public void run() {
+            long received = metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED);
+            long sent = smsManager.getMessageCount();
+            System.err.printf(Locale.ROOT, "t=%3.0fs  received %,6d/s  sent %,6d/s  lane depth %,5d  outbound depth %,6d%n",
+                    (System.nanoTime() - start) / 1e9, received - lastReceived, sent - lastSent,
+                    engine.getQueueDepth(), outbound.getQueue().size());
+            lastReceived = received;
+            lastSent = sent;
+            
+            long cutoff = System.nanoTime() - ORIGIN_RETENTION_NANOS;
+            origins.values().removeIf(at -> at < cutoff);
+        }
+    }
+    
+    // Offered rate over time: a base rate with optional periodic bursts
+    private static final class Load {
+        final double rate;
+        final double durationSeconds;
+        final double burstRate;
+        final double burstEvery;
+        final double burstLength;
+        
+        Load(double rate, double durationSeconds, double burstRate, double burstEvery, double burstLength) {
+            this.rate = rate;
+            this.durationSeconds = durationSeconds;
+            this.burstRate = burstRate;
+            this.burstEvery = burstEvery;
+            this.burstLength = burstLength;
+        }
+        
+        double rateAt(double seconds) {
+            if (burstRate > 0 && burstEvery > 0 && seconds % burstEvery >= burstEvery - burstLength) {
+                return burstRate;
+            }
+            return rate;
+        }
+        
+        String describe() {
+            String base = String.format(Locale.ROOT, "%,.0f/s for %.0f s", rate, durationSeconds);
+            if (burstRate <= 0) {
+                return base;
+            }
+            return base + String.format(Locale.ROOT, ", bursts of %,.0f/s for %.0f s every %.0f s",
+                    burstRate, burstLength, burstEvery);
+        }
+    }
+    
+    // Periodic queue depth samples, kept whole for exact percentiles
+    private static final class DepthSamples {
+        private int[] samples = new int[1024];
+        private int count;
+        
+        synchronized void add(int depth) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = depth;
+        }
+        
+        synchronized String describe() {
+            if (count == 0) {
+                return "no samples";
+            }
+            int[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (int depth : sorted) {
+                sum += depth;
+            }
+            return String.format(Locale.ROOT, "mean %,.1f  p50 %,d  p99 %,d  max %,d",
+                    (double) sum / count, sorted[(count - 1) / 2], sorted[(int) Math.ceil(count * 0.99) - 1],
+                    sorted[count - 1]);
+        }
+    }
+    
+    private final class Report {
+        long start;
+        long injectEnd;
+        long end;
+        long injected;
+        long pdus;
+        long maxLagNanos;
+        
+        void print(Load load, int laneSlots) {
+            double injectSeconds = (injectEnd - start) / 1e9;
+            double totalSeconds = (end - start) / 1e9;
+            long received = metrics.get(ForwardingMetrics.Counter.SMS_RECEIVED);
+            long processed = engine.getCompletedCount();
+            
+            System.out.printf(Locale.ROOT, "Offered load:      %s%n", load.describe());
+            System.out.printf(Locale.ROOT, "Injected:          %,d broadcasts (%,d PDUs) in %.2f s, %,.0f/s; max injector lag %.1f ms%n",
+                    injected, pdus, injectSeconds, injected / injectSeconds, maxLagNanos / 1e6);
+            System.out.printf(Locale.ROOT, "Processed:         %,d of %,d messages in %.2f s, sustained %,.0f messages/s%n",
+                    processed, received, totalSeconds, processed / totalSeconds);
+            System.out.printf(Locale.ROOT, "Matched:           %,d messages, %,d forwards queued, %,d duplicates skipped%n",
+                    metrics.get(ForwardingMetrics.Counter.MESSAGES_MATCHED),
+                    metrics.get(ForwardingMetrics.Counter.FORWARDS_QUEUED),
+                    metrics.get(ForwardingMetrics.Counter.DUPLICATES_SKIPPED));
+            System.out.printf(Locale.ROOT, "Sent:              %,d messages, %,d segments%n",
+                    smsManager.getMessageCount(), smsManager.getSegmentCount());
+            System.out.printf(Locale.ROOT, "Dropped:           %,d (lane full for over %d ms)%n",
+                    metrics.get(ForwardingMetrics.Counter.MESSAGES_DROPPED), ENQUEUE_TIMEOUT_MS);
+            if (simLanes != null) {
+                System.out.printf(Locale.ROOT, "SIM lanes:         %s%n", simLanes.getStats());
+                System.out.printf(Locale.ROOT, "Failed sends:      %,d retried, %,d given up after %d attempts%n",
+                        failedSends.get(), abandonedSends.get(), MAX_SEND_ATTEMPTS);
+            }
+            System.out.printf(Locale.ROOT, "Lane queue depth:  %s (of %,d slots)%n", laneDepth.describe(), laneSlots);
+            System.out.printf(Locale.ROOT, "Outbound depth:    %s%n", outboundDepth.describe());
+            
+            LatencyHistogram e2e = smsManager.getEndToEnd();
+            System.out.printf(Locale.ROOT, "Broadcast to send: p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms (%,d sends)%n",
+                    e2e.getPercentileMicros(50) / 1e3, e2e.getPercentileMicros(90) / 1e3,
+                    e2e.getPercentileMicros(99) / 1e3, e2e.getPercentileMicros(99.9) / 1e3,
+                    e2e.getMaxMicros() / 1e3, e2e.getCount());
+            System.out.println();
+            
+            PrintWriter pw = new PrintWriter(System.out);
+            metrics.dump(pw);
+            pw.flush();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.smsforwarder.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds and reads 3GPP SMS-DELIVER PDUs (TS 23.040), the payload of an
+// SMS_RECEIVED broadcast. Text that fits the GSM 7-bit default alphabet is
+// packed as septets, anything else is sent as UCS-2; long text is split into
+// segments with an 8-bit concatenation header, as a network would deliver it.
+// The decoder stands in for SmsMessage.createFromPdu off-device and only
+// understands what the encoder produces plus numeric sender addresses.
+final class Pdus {
+    
+    // Basic GSM 7-bit alphabet (TS 23.038); escape 0x1B is never produced
+    private static final String GSM_ALPHABET =
+            "@£$¥èéùìòÇ\nØø\rÅå"
+            + "Δ_ΦΓΛΩΠΨΣΘΞ\u001bÆæßÉ"
+            + " !\"#¤%&'()*+,-./0123456789:;<=>?"
+            + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§"
+            + "¿abcdefghijklmnopqrstuvwxyzäöñüà";
+    
+    private static final int DCS_GSM7 = 0x00;
+    private static final int DCS_UCS2 = 0x08;
+    private static final int TOA_INTERNATIONAL = 0x91;
+    private static final int TOA_UNKNOWN = 0x81;
+    private static final int FIRST_OCTET_DELIVER = 0x04;  // SMS-DELIVER, no more messages to send
+    private static final int FIRST_OCTET_UDHI = 0x40;
+    private static final int CONCAT_HEADER_OCTETS = 6;    // UDHL, IEI 0x00, length 3, ref, total, seq
+    
+    private static final int GSM7_SINGLE = 160;
+    private static final int GSM7_SEGMENT = 153;
+    private static final int UCS2_SINGLE = 70;
+    private static final int UCS2_SEGMENT = 67;
+    
+    private static final byte[] TIMESTAMP = {0x62, 0x10, 0x71, 0x21, 0x43, 0x65, 0x23};
+    
+    private Pdus() {
+    }
+    
+    static final class Decoded {
+        final String sender;
+        final String body;
+        
+        Decoded(String sender, String body) {
+            this.sender = sender;
+            this.body = body;
+        }
+    }
+    
+    // All PDUs of one message; reference is only used when it needs more than one
+    static List<byte[]> encode(String sender, String body, int reference) {
+        boolean gsm = isGsm7(body);
+        int single = gsm ? GSM7_SINGLE : UCS2_SINGLE;
+        int segment = gsm ? GSM7_SEGMENT : UCS2_SEGMENT;
+        
+        List<byte[]> pdus = new ArrayList<>();
+        if (body.length() <= single) {
+            pdus.add(encodeSegment(sender, body, gsm, -1, 0, 0));
+            return pdus;
+        }
+        int total = (body.length() + segment - 1) / segment;
+        for (int i = 0; i < total; i++) {
+            String part = body.substring(i * segment, Math.min(body.length(), (i + 1) * segment));
+            pdus.add(encodeSegment(sender, part, gsm, reference & 0xff, total, i + 1));
+        }
+        return pdus;
+    }
+    
+    static boolean isGsm7(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == 0x1b || GSM_ALPHABET.indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static byte[] encodeSegment(String sender, String text, boolean gsm,
+                                        int reference, int total, int sequence) {
+        boolean concatenated = reference >= 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(176);
+        out.write(0);  // no SMSC address
+        out.write(FIRST_OCTET_DELIVER | (concatenated ? FIRST_OCTET_UDHI : 0));
+        writeAddress(out, sender);
+        out.write(0);  // protocol identifier
+        out.write(gsm ? DCS_GSM7 : DCS_UCS2);
+        out.write(TIMESTAMP, 0, TIMESTAMP.length);
+        
+        byte[] header = concatenated
+                ? new byte[] {CONCAT_HEADER_OCTETS - 1, 0x00, 0x03, (byte) reference, (byte) total, (byte) sequence}
+                : new byte[0];
+        if (gsm) {
+            // Septets start on the first septet boundary after the header
+            int headerSeptets = (header.length * 8 + 6) / 7;
+            int septets = headerSeptets + text.length();
+            byte[] userData = new byte[(septets * 7 + 7) / 8];
+            System.arraycopy(header, 0, userData, 0, header.length);
+            for (int i = 0; i < text.length(); i++) {
+                putSeptet(userData, (headerSeptets + i) * 7, GSM_ALPHABET.indexOf(text.charAt(i)));
+            }
+            out.write(septets);
+            out.write(userData, 0, userData.length);
+        } else {
+            out.write(header.length + text.length() * 2);
+            out.write(header, 0, header.length);
+            for (int i = 0; i < text.length(); i++) {
+                out.write(text.charAt(i) >> 8);
+                out.write(text.charAt(i));
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    private static void writeAddress(ByteArrayOutputStream out, String address) {
+        boolean international = address.startsWith("+");
+        String digits = international ? address.substring(1) : address;
+        out.write(digits.length());
+        out.write(international ? TOA_INTERNATIONAL : TOA_UNKNOWN);
+        for (int i = 0; i < digits.length(); i += 2) {
+            int low = digits.charAt(i) - '0';
+            int high = i + 1 < digits.length() ? digits.charAt(i + 1) - '0' : 0x0f;
+            out.write((high << 4) | low);
+        }
+    }
+    
+    private static void putSeptet(byte[] data, int bit, int septet) {
+        int index = bit / 8;
+        int shift = bit % 8;
+        data[index] |= (byte) (septet << shift);
+        if (shift > 1) {
+            data[index + 1] |= (byte) (septet >> (8 - shift));
+        }
+    }
+    
+    private static int getSeptet(byte[] data, int offset, int bit) {
+        int index = offset + bit / 8;
+        int shift = bit % 8;
+        int value = (data[index] & 0xff) >> shift;
+        if (shift > 1) {
+            value |= (data[index + 1] & 0xff) << (8 - shift);
+        }
+        return value & 0x7f;
+    }
+    
+    static Decoded decode(byte[] pdu) {
+        int i = 1 + (pdu[0] & 0xff);
+        int firstOctet = pdu[i++] & 0xff;
+        boolean hasHeader = (firstOctet & FIRST_OCTET_UDHI) != 0;
+        
+        int addressDigits = pdu[i++] & 0xff;
+        int typeOfAddress = pdu[i++] & 0xff;
+        StringBuilder sender = new StringBuilder(addressDigits + 1);
+        if (typeOfAddress == TOA_INTERNATIONAL) {
+            sender.append('+');
+        }
+        for (int d = 0; d < addressDigits; d++) {
+            int octet = pdu[i + d / 2] & 0xff;
+            sender.append((char) ('0' + ((d % 2 == 0) ? octet & 0x0f : octet >> 4)));
+        }
+        i += (addressDigits + 1) / 2;
+        
+        i++;  // protocol identifier
+        int dcs = pdu[i++] & 0xff;
+        i += TIMESTAMP.length;
+        int userDataLength = pdu[i++] & 0xff;
+        int headerOctets = hasHeader ? 1 + (pdu[i] & 0xff) : 0;
+        
+        StringBuilder body = new StringBuilder(userDataLength);
+        if (dcs == DCS_UCS2) {
+            for (int b = headerOctets; b + 1 < userDataLength; b += 2) {
+                body.append((char) (((pdu[i + b] & 0xff) << 8) | (pdu[i + b + 1] & 0xff)));
+            }
+        } else {
+            int headerSeptets = (headerOctets * 8 + 6) / 7;
+            for (int s = headerSeptets; s < userDataLength; s++) {
+                body.append(GSM_ALPHABET.charAt(getSeptet(pdu, i, s * 7)));
+            }
+        }
+        return new Decoded(sender.toString(), body.toString());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package com.smsforwarder.loadgen;
+
+import com.smsforwarder.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Stands in for SmsManager at the end of the pipeline. Every send is counted
+// and optionally held for a fixed time, like the modem hand-off on a device;
+// the latency from the message's broadcast to the send is recorded.
+final class RecordingSender {
+    
+    private final long sendDelayNanos;
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong segments = new AtomicLong();
+    private final AtomicLong unknownOrigin = new AtomicLong();
+    
+    RecordingSender(long sendDelayMicros) {
+        this.sendDelayNanos = TimeUnit.MICROSECONDS.toNanos(sendDelayMicros);
+    }
+    
+    // receivedAtNanos is when the original broadcast arrived, or -1 if unknown
+    void send(String destination, String text, long receivedAtNanos) {
+        if (sendDelayNanos > 0) {
+            LockSupport.parkNanos(sendDelayNanos);
+        }
+        messages.incrementAndGet();
+        segments.addAndGet(Pdus.encode(destination, text, 0).size());
+        if (receivedAtNanos >= 0) {
+            endToEnd.recordNanos(System.nanoTime() - receivedAtNanos);
+        } else {
+            unknownOrigin.incrementAndGet();
+        }
+    }
+    
+    LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+    
+    long getMessageCount() {
+        return messages.get();
+    }
+    
+    long getSegmentCount() {
+        return segments.get();
+    }
+    
+    long getUnknownOriginCount() {
+        return unknownOrigin.get();
+    }
+}
\ No newline at end of file
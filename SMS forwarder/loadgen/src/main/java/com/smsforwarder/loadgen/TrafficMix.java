@@ -0,0 +1,159 @@
+package com.smsforwarder.loadgen;
+
+import com.smsforwarder.ForwardingRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Synthetic senders, message bodies and rules modelled on what a relay phone
+// sees: bursts of bank and card alerts from a few short codes (Korean, often
+// long enough to be split), carrier notices, one-time passwords and personal
+// messages. The mix is given as weights, e.g. "bank:70,otp:20,personal:10".
+final class TrafficMix {
+    
+    enum Profile {
+        BANK, CARRIER, OTP, PERSONAL
+    }
+    
+    private static final String[] BANKS = {"국민", "신한", "우리", "하나", "농협", "기업"};
+    private static final String[] STORES = {"GS25", "스타벅스", "이마트", "쿠팡", "배달의민족", "CU편의점"};
+    private static final String[] CARRIER_NOTICES = {
+        "Your data usage has reached 90%% of your monthly allowance. Visit the app to add more data or change your plan.",
+        "Roaming is now active. Calls, texts and data abroad are charged at the roaming rates listed on our website.",
+        "Your bill of %d won is due on the 25th. Pay in the app or at any store to avoid a late fee. Thank you."
+    };
+    
+    private final Profile[] profiles;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+    private final String[][] senders;
+    private final Random random;
+    private long sequence;
+    
+    private TrafficMix(Profile[] profiles, int[] weights, int sendersPerProfile, long seed) {
+        this.profiles = profiles;
+        this.cumulativeWeights = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulativeWeights[i] = sum;
+        }
+        this.totalWeight = sum;
+        this.random = new Random(seed);
+        
+        senders = new String[Profile.values().length][];
+        for (Profile profile : Profile.values()) {
+            String[] list = new String[profile == Profile.CARRIER ? Math.min(3, sendersPerProfile) : sendersPerProfile];
+            for (int i = 0; i < list.length; i++) {
+                list[i] = senderNumber(profile, i);
+            }
+            senders[profile.ordinal()] = list;
+        }
+    }
+    
+    static TrafficMix parse(String mix, int sendersPerProfile, long seed) {
+        String[] entries = mix.split(",");
+        Profile[] profiles = new Profile[entries.length];
+        int[] weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":");
+            profiles[i] = Profile.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            weights[i] = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Negative weight in mix: " + entries[i]);
+            }
+        }
+        return new TrafficMix(profiles, weights, Math.max(1, sendersPerProfile), seed);
+    }
+    
+    private static String senderNumber(Profile profile, int index) {
+        switch (profile) {
+            case BANK:
+                return String.format(Locale.ROOT, "1588%04d", 1000 + index);
+            case CARRIER:
+                return new String[] {"114", "080011400", "15990011"}[index];
+            case OTP:
+                return String.format(Locale.ROOT, "1600%04d", 2000 + index);
+            case PERSONAL:
+            default:
+                return String.format(Locale.ROOT, "010%08d", 20000000 + index * 7919);
+        }
+    }
+    
+    // Rules a relay for this traffic would have: every bank and OTP short code
+    // forwarded by exact sender, keyword and regex rules for card approvals
+    // and codes, plus filler rules that never fire to reach the requested size
+    List<ForwardingRule> rules(int fillerRules) {
+        List<ForwardingRule> rules = new ArrayList<>();
+        for (String sender : senders[Profile.BANK.ordinal()]) {
+            rules.add(rule(sender, true, null, ForwardingRule.MATCH_MODE_KEYWORD, "01090000001"));
+        }
+        for (String sender : senders[Profile.OTP.ordinal()]) {
+            rules.add(rule(sender, true, null, ForwardingRule.MATCH_MODE_KEYWORD, "01090000002"));
+        }
+        rules.add(rule(null, false, "승인", ForwardingRule.MATCH_MODE_KEYWORD, "01090000003"));
+        rules.add(rule(null, false, "인증번호\\s*\\[?\\d{6}", ForwardingRule.MATCH_MODE_REGEX, "01090000004"));
+        rules.add(rule("114", true, "bill", ForwardingRule.MATCH_MODE_KEYWORD, "01090000005"));
+        for (int i = 0; i < fillerRules; i++) {
+            rules.add(rule(String.format(Locale.ROOT, "0507%06d", i), i % 2 == 0,
+                    i % 3 == 0 ? "keyword" + i : null, ForwardingRule.MATCH_MODE_KEYWORD,
+                    String.format(Locale.ROOT, "0108%07d", i % 5000)));
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            rules.get(i).id = i + 1;
+        }
+        return rules;
+    }
+    
+    private static ForwardingRule rule(String sender, boolean exact, String content, int matchMode, String forwardTo) {
+        ForwardingRule rule = new ForwardingRule(sender, exact, content, forwardTo);
+        rule.matchMode = matchMode;
+        return rule;
+    }
+    
+    // Returns {sender, body}; bodies are unique so duplicate suppression does
+    // not hide load
+    synchronized String[] next() {
+        int pick = random.nextInt(totalWeight);
+        Profile profile = profiles[profiles.length - 1];
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                profile = profiles[i];
+                break;
+            }
+        }
+        String[] list = senders[profile.ordinal()];
+        String sender = list[random.nextInt(list.length)];
+        return new String[] {sender, body(profile, ++sequence)};
+    }
+    
+    private String body(Profile profile, long seq) {
+        switch (profile) {
+            case BANK: {
+                String bank = BANKS[random.nextInt(BANKS.length)];
+                String store = STORES[random.nextInt(STORES.length)];
+                int amount = (1 + random.nextInt(5000)) * 100;
+                String body = String.format(Locale.ROOT,
+                        "[Web발신]\n[%s카드] 승인 홍*동님 %,d원 일시불 %02d/%02d %02d:%02d %s 누적 %,d원 (%d)",
+                        bank, amount, 1 + random.nextInt(12), 1 + random.nextInt(28),
+                        random.nextInt(24), random.nextInt(60), store, amount * (2 + random.nextInt(20)), seq);
+                // About a third carry a notice that pushes them past one segment
+                if (random.nextInt(3) == 0) {
+                    body += " 해외 결제 및 부정사용이 의심되는 경우 고객센터로 즉시 연락 주시기 바랍니다. 본 문자는 발신전용입니다.";
+                }
+                return body;
+            }
+            case CARRIER:
+                return String.format(Locale.ROOT, CARRIER_NOTICES[random.nextInt(CARRIER_NOTICES.length)],
+                        (10 + random.nextInt(90)) * 1000) + " Ref " + seq;
+            case OTP:
+                return String.format(Locale.ROOT, "[Web발신]\n인증번호 [%06d]를 입력해 주세요. (%d)",
+                        random.nextInt(1000000), seq);
+            case PERSONAL:
+            default:
+                return "Running ten minutes late, see you at the station " + seq;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,323 @@
+package com.smsforwarder.loadgen;
+
+import com.smsforwarder.ForwardingMetrics;
+import com.smsforwarder.HttpWebhookTransport;
+import com.smsforwarder.LatencyHistogram;
+import com.smsforwarder.WebhookBatcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+// Drives WebhookBatcher and HttpWebhookTransport, as ForwardingPipeline sets
+// them up, against a local stand-in endpoint on com.sun.net.httpserver.
+// Messages from TrafficMix are submitted at a fixed rate; the server inflates
+// every batch, counts its messages and the distinct client connections, and
+// can answer slowly or with 503s. Reports delivered throughput, latency from
+// submit to the server reading the message, batch sizes, compression, the
+// connections used and the most requests the server saw at once.
+//
+// Each message's sequence number travels in its "rule" field so the server
+// can match it to the submit time.
+//
+//   webhookload [--rate N] [--duration S] [--window-ms N] [--max-messages N] [--max-bytes N]
+//               [--in-flight N] [--server-delay-ms N] [--fail-every N] [--no-keep-alive] [--seed N]
+//
+// --max-messages 1 --window-ms 0 posts every message on its own, for comparison.
+public final class WebhookLoad {
+    
+    // Same defaults as ForwardingPipeline
+    private static final long DEFAULT_WINDOW_MS = 2000;
+    private static final int DEFAULT_MAX_MESSAGES = 50;
+    private static final int DEFAULT_MAX_BYTES = 64 * 1024;
+    private static final int DEFAULT_IN_FLIGHT = 2;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    
+    private static final long DRAIN_TIMEOUT_MS = 60000;
+    private static final byte[] RULE_KEY = "{\"rule\":".getBytes(StandardCharsets.US_ASCII);
+    
+    private final long[] submittedAt;
+    private final AtomicLongArray seen;
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final long serverDelayMillis;
+    private final int failEvery;
+    
+    private WebhookLoad(int capacity, long serverDelayMillis, int failEvery) {
+        this.submittedAt = new long[capacity];
+        this.seen = new AtomicLongArray(capacity);
+        this.serverDelayMillis = serverDelayMillis;
+        this.failEvery = failEvery;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        double rate = 2000;
+        double duration = 10;
+        long windowMillis = DEFAULT_WINDOW_MS;
+        int maxMessages = DEFAULT_MAX_MESSAGES;
+        int maxBytes = DEFAULT_MAX_BYTES;
+        int inFlight = DEFAULT_IN_FLIGHT;
+        long serverDelayMillis = 0;
+        int failEvery = 0;
+        boolean keepAlive = true;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--no-keep-alive")) {
+                keepAlive = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+                return;
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--duration":
+                    duration = Double.parseDouble(value);
+                    break;
+                case "--window-ms":
+                    windowMillis = Long.parseLong(value);
+                    break;
+                case "--max-messages":
+                    maxMessages = Integer.parseInt(value);
+                    break;
+                case "--max-bytes":
+                    maxBytes = Integer.parseInt(value);
+                    break;
+                case "--in-flight":
+                    inFlight = Integer.parseInt(value);
+                    break;
+                case "--server-delay-ms":
+                    serverDelayMillis = Long.parseLong(value);
+                    break;
+                case "--fail-every":
+                    failEvery = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    usage("Unknown argument: " + arg);
+                    return;
+            }
+        }
+        if (rate <= 0 || duration <= 0 || maxMessages <= 0 || inFlight <= 0) {
+            usage("--rate, --duration, --max-messages and --in-flight must be positive");
+            return;
+        }
+        // Read by HttpURLConnection when it decides whether to pool the connection
+        System.setProperty("http.keepAlive", String.valueOf(keepAlive));
+        System.setProperty("http.maxConnections", String.valueOf(inFlight));
+        
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(rate * duration) + 1);
+        WebhookLoad load = new WebhookLoad(capacity, serverDelayMillis, failEvery);
+        load.run(TrafficMix.parse("bank:70,otp:15,carrier:5,personal:10", 20, seed), rate, duration,
+                windowMillis, maxMessages, maxBytes, inFlight, keepAlive);
+    }
+    
+    private void run(TrafficMix traffic, double rate, double duration, long windowMillis, int maxMessages,
+                     int maxBytes, int inFlight, boolean keepAlive) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        ExecutorService serverThreads = Executors.newFixedThreadPool(Math.max(4, inFlight * 2));
+        server.setExecutor(serverThreads);
+        server.createContext("/hook", this::handle);
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+        
+        ForwardingMetrics metrics = new ForwardingMetrics();
+        AtomicLong delivered = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "webhook-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ExecutorService posters = Executors.newFixedThreadPool(inFlight, r -> new Thread(r, "webhook-post"));
+        WebhookBatcher batcher = new WebhookBatcher(windowMillis, maxMessages, maxBytes, inFlight,
+                new HttpWebhookTransport(CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS),
+                new WebhookBatcher.Listener() {
+                    @Override
+                    public void onDelivered(String target, int messages) {
+                        delivered.addAndGet(messages);
+                    }
+                    
+                    @Override
+                    public void onFailed(String target, int messages, String reason) {
+                        failed.addAndGet(messages);
+                        System.err.println("Gave up on " + messages + " messages: " + reason);
+                    }
+                }, scheduler, posters, metrics);
+        System.err.printf(Locale.ROOT, "Posting to %s: window %d ms, up to %d messages / %,d bytes per batch,"
+                + " %d in flight, keep-alive %s%n", url, windowMillis, maxMessages, maxBytes, inFlight, keepAlive);
+        
+        long start = System.nanoTime();
+        long end = start + (long) (duration * 1e9);
+        long next = start;
+        int sequence = 0;
+        long lastProgress = start;
+        while (sequence < submittedAt.length) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                break;
+            }
+            if (now < next) {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+            String[] message = traffic.next();
+            submittedAt[sequence] = System.nanoTime();
+            batcher.submit(url, sequence, message[0], message[1], message[0] + ": " + message[1],
+                    System.currentTimeMillis());
+            sequence++;
+            next += (long) (1e9 / rate);
+            
+            if (now - lastProgress >= 1_000_000_000L) {
+                lastProgress = now;
+                System.err.printf(Locale.ROOT, "t=%3.0fs  submitted %,8d  received %,8d  pending %,6d%n",
+                        (now - start) / 1e9, sequence, received.get(), batcher.getPendingCount());
+            }
+        }
+        long injectEnd = System.nanoTime();
+        
+        batcher.flushAll();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+        while (batcher.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        long finish = System.nanoTime();
+        posters.shutdown();
+        server.stop(0);
+        serverThreads.shutdown();
+        
+        double injectSeconds = (injectEnd - start) / 1e9;
+        double totalSeconds = (finish - start) / 1e9;
+        long batches = metrics.get(ForwardingMetrics.Counter.WEBHOOK_BATCHES);
+        System.out.printf(Locale.ROOT, "Submitted:         %,d messages in %.2f s, %,.0f/s%n",
+                sequence, injectSeconds, sequence / injectSeconds);
+        System.out.printf(Locale.ROOT, "Delivered:         %,d messages (%,d failed, %,d still pending) in %.2f s, %,.0f/s%n",
+                delivered.get(), failed.get(), batcher.getPendingCount(), totalSeconds, delivered.get() / totalSeconds);
+        System.out.printf(Locale.ROOT, "Server:            %,d requests, %,d messages (%,d duplicates from retries), %,d bytes%n",
+                requests.get(), received.get(), duplicates.get(), requestBytes.get());
+        System.out.printf(Locale.ROOT, "Batches:           %,d posted, %.1f messages per request%n",
+                batches, requests.get() == 0 ? 0.0 : (double) received.get() / requests.get());
+        System.out.printf(Locale.ROOT, "Connections:       %,d used, at most %d requests at once (limit %d)%n",
+                clientPorts.size(), maxConcurrent.get(), inFlight);
+        System.out.println("Batcher:           " + batcher.getStats());
+        System.out.printf(Locale.ROOT, "Submit to server:  p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms (%,d messages)%n",
+                endToEnd.getPercentileMicros(50) / 1e3, endToEnd.getPercentileMicros(90) / 1e3,
+                endToEnd.getPercentileMicros(99) / 1e3, endToEnd.getPercentileMicros(99.9) / 1e3,
+                endToEnd.getMaxMicros() / 1e3, endToEnd.getCount());
+        System.out.println();
+        
+        PrintWriter pw = new PrintWriter(System.out);
+        metrics.dump(pw);
+        pw.flush();
+        System.exit(0);
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        int now = concurrent.incrementAndGet();
+        int status = 500;
+        try {
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            long request = requests.incrementAndGet();
+            
+            byte[] raw = readAll(exchange.getRequestBody());
+            requestBytes.addAndGet(raw.length);
+            byte[] json = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                    ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw;
+            
+            if (serverDelayMillis > 0) {
+                Thread.sleep(serverDelayMillis);
+            }
+            if (failEvery > 0 && request % failEvery == 0) {
+                status = 503;
+                return;
+            }
+            
+            long receivedAt = System.nanoTime();
+            for (int i = indexOf(json, 0); i >= 0; i = indexOf(json, i)) {
+                int sequence = 0;
+                for (i += RULE_KEY.length; i < json.length && json[i] >= '0' && json[i] <= '9'; i++) {
+                    sequence = sequence * 10 + (json[i] - '0');
+                }
+                if (sequence < submittedAt.length && seen.compareAndSet(sequence, 0, 1)) {
+                    received.incrementAndGet();
+                    endToEnd.recordNanos(receivedAt - submittedAt[sequence]);
+                } else {
+                    duplicates.incrementAndGet();
+                }
+            }
+            status = 200;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Before responding: the client may start its next request as soon as it has the answer
+            concurrent.decrementAndGet();
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        }
+    }
+    
+    private static int indexOf(byte[] data, int from) {
+        outer:
+        for (int i = from; i <= data.length - RULE_KEY.length; i++) {
+            for (int j = 0; j < RULE_KEY.length; j++) {
+                if (data[i + j] != RULE_KEY[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+    
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: webhookload [--rate N] [--duration S] [--window-ms N] [--max-messages N]"
+                + " [--max-bytes N] [--in-flight N] [--server-delay-ms N] [--fail-every N] [--no-keep-alive] [--seed N]");
+        System.exit(2);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.smsforwarder.replay;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.smsforwarder.CsvParser;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+
+// Streams messages out of an SMS export one at a time. CSV files need a header
+// row naming the sender and body columns; JSONL files have one object per
+// line. Common export names (address/from/sender, body/text/message) are
+// accepted for both.
+abstract class MessageSource implements Closeable {
+    
+    private static final String[] SENDER_NAMES = {"sender", "address", "from", "number", "originatingaddress"};
+    private static final String[] BODY_NAMES = {"body", "message", "text", "content"};
+    
+    // Returns {sender, body}, or null at the end of the input
+    abstract String[] next() throws IOException;
+    
+    static MessageSource open(BufferedReader reader, String fileName) throws IOException {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return new JsonLines(reader);
+        }
+        return new Csv(reader);
+    }
+    
+    static boolean isSenderName(String name) {
+        return indexOf(SENDER_NAMES, name) >= 0;
+    }
+    
+    static boolean isBodyName(String name) {
+        return indexOf(BODY_NAMES, name) >= 0;
+    }
+    
+    private static int indexOf(String[] names, String name) {
+        String lower = name.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(lower)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static final class Csv extends MessageSource {
+        private final BufferedReader reader;
+        private final CsvParser parser;
+        private final int senderColumn;
+        private final int bodyColumn;
+        
+        Csv(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            this.parser = new CsvParser(reader);
+            List<String> header = parser.next();
+            int sender = -1;
+            int body = -1;
+            if (header != null) {
+                for (int i = 0; i < header.size(); i++) {
+                    if (sender < 0 && isSenderName(header.get(i))) {
+                        sender = i;
+                    } else if (body < 0 && isBodyName(header.get(i))) {
+                        body = i;
+                    }
+                }
+            }
+            if (sender < 0 || body < 0) {
+                throw new IOException("CSV header must name a sender column and a body column, got " + header);
+            }
+            this.senderColumn = sender;
+            this.bodyColumn = body;
+        }
+        
+        @Override
+        String[] next() throws IOException {
+            List<String> record;
+            while ((record = parser.next()) != null) {
+                if (record.size() > senderColumn && record.size() > bodyColumn) {
+                    return new String[] {record.get(senderColumn), record.get(bodyColumn)};
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+    
+    // Each line is parsed on its own, so one bad line does not end the replay
+    private static final class JsonLines extends MessageSource {
+        private final BufferedReader reader;
+        private long lineNumber;
+        private long badLines;
+        
+        JsonLines(BufferedReader reader) {
+            this.reader = reader;
+        }
+        
+        @Override
+        String[] next() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    String[] message = parse(line);
+                    if (message != null) {
+                        return message;
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    if (badLines++ < 10) {
+                        System.err.println("Skipping line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+            return null;
+        }
+        
+        private static String[] parse(String line) throws IOException {
+            JsonReader json = new JsonReader(new StringReader(line));
+            String sender = null;
+            String body = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.STRING || json.peek() == JsonToken.NUMBER) {
+                    if (sender == null && isSenderName(name)) {
+                        sender = json.nextString();
+                        continue;
+                    }
+                    if (body == null && isBodyName(name)) {
+                        body = json.nextString();
+                        continue;
+                    }
+                }
+                json.skipValue();
+            }
+            json.endObject();
+            return sender != null && body != null ? new String[] {sender, body} : null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
\ No newline at end of file
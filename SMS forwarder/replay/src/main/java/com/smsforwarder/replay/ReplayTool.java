@@ -0,0 +1,322 @@
+package com.smsforwarder.replay;
+
+import com.smsforwarder.ForwardTemplate;
+import com.smsforwarder.ForwardingRule;
+import com.smsforwarder.PhoneNumberNormalizer;
+import com.smsforwarder.RuleMatcher;
+import com.smsforwarder.SmsSegments;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Replays an SMS export through a rule set off-device and reports which rules
+// fire, how often, and how fast. One thread streams the export in batches,
+// the rest match in parallel against a single compiled RuleMatcher and keep
+// their own counters, which are merged at the end. With --segments it also
+// formats every forward and counts the SMS segments it would be billed as:
+// with the default header, with each rule's own template and compaction, and
+// with every compaction mode on.
+//
+//   replay --rules rules.csv --messages sms.jsonl [--threads N] [--top N] [--country CC] [--segments]
+public final class ReplayTool {
+    
+    private static final int BATCH_SIZE = 512;
+    private static final int PROGRESS_INTERVAL = 1000000;
+    private static final List<String[]> END = Collections.emptyList();
+    
+    private ReplayTool() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        String rulesFile = null;
+        String messagesFile = null;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int top = 20;
+        String country = PhoneNumberNormalizer.DEFAULT_COUNTRY_CODE;
+        boolean segments = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--rules") && i + 1 < args.length) {
+                rulesFile = args[++i];
+            } else if (arg.equals("--messages") && i + 1 < args.length) {
+                messagesFile = args[++i];
+            } else if (arg.equals("--threads") && i + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (arg.equals("--top") && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--country") && i + 1 < args.length) {
+                country = args[++i];
+            } else if (arg.equals("--segments")) {
+                segments = true;
+            } else {
+                usage("Unknown argument: " + arg);
+                return;
+            }
+        }
+        if (rulesFile == null || messagesFile == null) {
+            usage(null);
+            return;
+        }
+        
+        List<ForwardingRule> allRules = RuleFile.load(Paths.get(rulesFile));
+        List<ForwardingRule> enabled = new ArrayList<>();
+        for (ForwardingRule rule : allRules) {
+            if (rule.isEnabled) {
+                enabled.add(rule);
+            }
+        }
+        long compileStart = System.nanoTime();
+        RuleMatcher matcher = RuleMatcher.compile(enabled, new PhoneNumberNormalizer(country));
+        System.err.printf(Locale.ROOT, "Compiled %d enabled rules (of %d) in %.1f ms%n",
+                enabled.size(), allRules.size(), (System.nanoTime() - compileStart) / 1e6);
+        
+        ForwardTemplate[] compacted = null;
+        if (segments) {
+            compacted = new ForwardTemplate[allRules.size() + 1];
+            for (ForwardingRule rule : allRules) {
+                compacted[rule.id] = ForwardTemplate.compile(
+                        ForwardTemplate.isValid(rule.template) ? rule.template : null, ForwardTemplate.COMPACT_ALL);
+            }
+        }
+        
+        Report report = replay(Paths.get(messagesFile), matcher, allRules.size(), threads, compacted);
+        report.print(allRules, top);
+    }
+    
+    // compacted, indexed by rule id, turns on segment counting
+    static Report replay(Path messages, RuleMatcher matcher, int ruleCount, int threads,
+                         ForwardTemplate[] compacted) throws Exception {
+        BlockingQueue<List<String[]>> queue = new ArrayBlockingQueue<>(threads * 4);
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(matcher, ruleCount, queue, compacted);
+            workers[i].setName("replay-" + i);
+            workers[i].start();
+        }
+        
+        long start = System.nanoTime();
+        long read = 0;
+        try (MessageSource source = MessageSource.open(
+                new BufferedReader(new InputStreamReader(Files.newInputStream(messages), StandardCharsets.UTF_8), 1 << 16),
+                messages.getFileName().toString())) {
+            List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            String[] message;
+            while ((message = source.next()) != null) {
+                batch.add(message);
+                if (batch.size() == BATCH_SIZE) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+                if (++read % PROGRESS_INTERVAL == 0) {
+                    System.err.printf(Locale.ROOT, "%,d messages read%n", read);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                queue.put(END);
+            }
+        }
+        
+        Report report = new Report(ruleCount, threads);
+        for (Worker worker : workers) {
+            worker.join();
+            report.add(worker);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+    
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: replay --rules <rules.csv|rules.json> --messages <sms.csv|sms.jsonl>"
+                + " [--threads N] [--top N] [--country CC] [--segments]");
+        System.exit(2);
+    }
+    
+    private static final class Worker extends Thread {
+        private final RuleMatcher matcher;
+        private final BlockingQueue<List<String[]>> queue;
+        private final ForwardTemplate[] compacted;
+        private final long now = System.currentTimeMillis();
+        final long[] fires;
+        final SegmentCounts segments = new SegmentCounts();
+        long messages;
+        long matchedMessages;
+        long forwards;
+        
+        Worker(RuleMatcher matcher, int ruleCount, BlockingQueue<List<String[]>> queue, ForwardTemplate[] compacted) {
+            this.matcher = matcher;
+            this.queue = queue;
+            this.compacted = compacted;
+            this.fires = new long[ruleCount + 1];
+        }
+        
+        @Override
+        public void run() {
+            Set<String> destinations = new HashSet<>();
+            try {
+                List<String[]> batch;
+                while ((batch = queue.take()) != END) {
+                    for (String[] message : batch) {
+                        List<ForwardingRule> matched = matcher.match(message[0], message[1]);
+                        messages++;
+                        if (matched.isEmpty()) {
+                            continue;
+                        }
+                        matchedMessages++;
+                        for (ForwardingRule rule : matched) {
+                            fires[rule.id]++;
+                        }
+                        // The app forwards once per destination
+                        if (matched.size() == 1) {
+                            forwards++;
+                        } else {
+                            destinations.clear();
+                            for (ForwardingRule rule : matched) {
+                                destinations.add(rule.destinationKey(matcher.getNormalizer()));
+                            }
+                            forwards += destinations.size();
+                        }
+                        if (compacted != null) {
+                            countSegments(message[0], message[1]);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        // Once per destination, as the app forwards
+        private void countSegments(String sender, String body) {
+            for (ForwardingRule rule : matcher.matchDistinctDestinations(sender, body)) {
+                segments.add(ForwardTemplate.DEFAULT.format(sender, body, rule.id, now),
+                        rule.getForwardTemplate().format(sender, body, rule.id, now),
+                        compacted[rule.id].format(sender, body, rule.id, now));
+            }
+        }
+    }
+    
+    // Segments and UCS-2 forwards with the default header, with the rules'
+    // own templates, and with every compaction mode on
+    static final class SegmentCounts {
+        long forwards;
+        final long[] segments = new long[3];
+        final long[] ucs2 = new long[3];
+        
+        void add(String... texts) {
+            forwards++;
+            for (int i = 0; i < texts.length; i++) {
+                segments[i] += SmsSegments.count(texts[i]);
+                if (!SmsSegments.isGsm7(texts[i])) {
+                    ucs2[i]++;
+                }
+            }
+        }
+        
+        void add(SegmentCounts other) {
+            forwards += other.forwards;
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] += other.segments[i];
+                ucs2[i] += other.ucs2[i];
+            }
+        }
+        
+        void print() {
+            String[] names = {"default header", "rule templates", "all compaction"};
+            System.out.printf(Locale.ROOT, "%nSegments for %,d forwards:%n", forwards);
+            System.out.printf(Locale.ROOT, "%-16s %12s %10s %10s %10s%n", "", "segments", "per fwd", "UCS-2", "saved");
+            for (int i = 0; i < names.length; i++) {
+                System.out.printf(Locale.ROOT, "%-16s %,12d %10.2f %9.1f%% %9.1f%%%n", names[i], segments[i],
+                        forwards > 0 ? (double) segments[i] / forwards : 0,
+                        forwards > 0 ? 100.0 * ucs2[i] / forwards : 0,
+                        segments[0] > 0 ? 100.0 * (segments[0] - segments[i]) / segments[0] : 0);
+            }
+        }
+    }
+    
+    static final class Report {
+        final long[] fires;
+        final int threads;
+        final SegmentCounts segments = new SegmentCounts();
+        long messages;
+        long matchedMessages;
+        long forwards;
+        long elapsedNanos;
+        
+        Report(int ruleCount, int threads) {
+            this.fires = new long[ruleCount + 1];
+            this.threads = threads;
+        }
+        
+        void add(Worker worker) {
+            messages += worker.messages;
+            matchedMessages += worker.matchedMessages;
+            forwards += worker.forwards;
+            segments.add(worker.segments);
+            for (int i = 0; i < fires.length; i++) {
+                fires[i] += worker.fires[i];
+            }
+        }
+        
+        void print(List<ForwardingRule> rules, int top) {
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf(Locale.ROOT, "Messages:          %,d%n", messages);
+            System.out.printf(Locale.ROOT, "Matched messages:  %,d (%.2f%%)%n", matchedMessages, percent(matchedMessages));
+            System.out.printf(Locale.ROOT, "Forwards:          %,d%n", forwards);
+            System.out.printf(Locale.ROOT, "Elapsed:           %.2f s on %d matcher threads%n", seconds, threads);
+            System.out.printf(Locale.ROOT, "Throughput:        %,.0f messages/s%n", seconds > 0 ? messages / seconds : 0);
+            if (segments.forwards > 0) {
+                segments.print();
+                System.out.println();
+            }
+            
+            Integer[] order = new Integer[rules.size()];
+            int neverFired = 0;
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i + 1;
+                if (fires[i + 1] == 0 && rules.get(i).isEnabled) {
+                    neverFired++;
+                }
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(fires[b], fires[a]));
+            System.out.printf(Locale.ROOT, "Enabled rules that never fired: %,d%n%n", neverFired);
+            
+            System.out.printf(Locale.ROOT, "%6s %12s %8s  %s%n", "rule", "fires", "share", "sender / content -> forward to");
+            for (int i = 0; i < Math.min(top, order.length) && fires[order[i]] > 0; i++) {
+                int id = order[i];
+                ForwardingRule rule = rules.get(id - 1);
+                System.out.printf(Locale.ROOT, "%6d %,12d %7.2f%%  %s%s / %s -> %s%n", id, fires[id], percent(fires[id]),
+                        describe(rule.senderNumber), rule.senderExactMatch ? " (exact)" : "",
+                        describe(rule.messageContent), rule.getDestination());
+            }
+        }
+        
+        private double percent(long count) {
+            return messages > 0 ? 100.0 * count / messages : 0;
+        }
+        
+        private static String describe(String condition) {
+            return condition == null || condition.trim().isEmpty() ? "*" : condition;
+        }
+    }
+}
\ No newline at end of file
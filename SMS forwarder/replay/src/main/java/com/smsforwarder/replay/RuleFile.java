@@ -0,0 +1,155 @@
+package com.smsforwarder.replay;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.smsforwarder.CsvParser;
+import com.smsforwarder.ForwardTemplate;
+import com.smsforwarder.ForwardingRule;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Reads a rule set in the format the app exports (CSV with a header row, or a
+// JSON array of rule objects). Rules get ids in file order, starting at 1, and
+// disabled rules are kept so the report lines up with the file.
+final class RuleFile {
+    
+    private static final String[] COLUMNS = {
+        "senderNumber", "senderExactMatch", "messageContent", "forwardToNumber", "isEnabled", "matchMode",
+        "template", "compaction", "sim", "target", "webhookUrl"
+    };
+    
+    private RuleFile() {
+    }
+    
+    static List<ForwardingRule> load(Path path) throws IOException {
+        List<ForwardingRule> rules = new ArrayList<>();
+        try (Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+            if (path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")) {
+                readJson(reader, rules);
+            } else {
+                readCsv(reader, rules);
+            }
+        }
+        for (int i = 0; i < rules.size(); i++) {
+            rules.get(i).id = i + 1;
+        }
+        return rules;
+    }
+    
+    private static void readCsv(Reader reader, List<ForwardingRule> rules) throws IOException {
+        CsvParser parser = new CsvParser(reader);
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns.put(COLUMNS[i], i);
+        }
+        
+        List<String> record = parser.next();
+        if (record != null && COLUMNS[0].equalsIgnoreCase(record.get(0).trim())) {
+            columns.clear();
+            for (int i = 0; i < record.size(); i++) {
+                columns.put(record.get(i).trim(), i);
+            }
+            record = parser.next();
+        }
+        
+        for (; record != null; record = parser.next()) {
+            ForwardingRule rule = new ForwardingRule();
+            rule.senderNumber = field(record, columns, COLUMNS[0]);
+            rule.senderExactMatch = parseBoolean(field(record, columns, COLUMNS[1]), false);
+            rule.messageContent = field(record, columns, COLUMNS[2]);
+            rule.forwardToNumber = field(record, columns, COLUMNS[3]);
+            rule.isEnabled = parseBoolean(field(record, columns, COLUMNS[4]), true);
+            rule.matchMode = ForwardingRule.parseMatchMode(field(record, columns, COLUMNS[5]));
+            rule.template = template(rawField(record, columns, COLUMNS[6]));
+            rule.compaction = ForwardTemplate.parseCompaction(field(record, columns, COLUMNS[7]));
+            rule.simSlot = ForwardingRule.parseSimSlot(field(record, columns, COLUMNS[8]));
+            rule.targetType = ForwardingRule.parseTargetType(field(record, columns, COLUMNS[9]));
+            rule.webhookUrl = field(record, columns, COLUMNS[10]);
+            rules.add(rule);
+        }
+    }
+    
+    private static void readJson(Reader reader, List<ForwardingRule> rules) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            ForwardingRule rule = new ForwardingRule();
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (json.peek() == JsonToken.NULL) {
+                    json.nextNull();
+                } else if (name.equals(COLUMNS[0])) {
+                    rule.senderNumber = json.nextString().trim();
+                } else if (name.equals(COLUMNS[1])) {
+                    rule.senderExactMatch = nextBoolean(json, false);
+                } else if (name.equals(COLUMNS[2])) {
+                    rule.messageContent = json.nextString().trim();
+                } else if (name.equals(COLUMNS[3])) {
+                    rule.forwardToNumber = json.nextString().trim();
+                } else if (name.equals(COLUMNS[4])) {
+                    rule.isEnabled = nextBoolean(json, true);
+                } else if (name.equals(COLUMNS[5])) {
+                    rule.matchMode = ForwardingRule.parseMatchMode(json.nextString());
+                } else if (name.equals(COLUMNS[6])) {
+                    rule.template = template(json.nextString());
+                } else if (name.equals(COLUMNS[7])) {
+                    rule.compaction = ForwardTemplate.parseCompaction(json.nextString());
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            rules.add(rule);
+        }
+        json.endArray();
+    }
+    
+    private static boolean nextBoolean(JsonReader json, boolean defaultValue) throws IOException {
+        if (json.peek() == JsonToken.BOOLEAN) {
+            return json.nextBoolean();
+        }
+        return parseBoolean(json.nextString(), defaultValue);
+    }
+    
+    private static String field(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index).trim() : null;
+    }
+    
+    // Templates keep their whitespace; one that does not compile is reported
+    // and the rule uses the default header, as on the device
+    private static String rawField(List<String> record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        return index != null && index < record.size() ? record.get(index) : null;
+    }
+    
+    private static String template(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (!ForwardTemplate.isValid(value)) {
+            System.err.println("Ignoring invalid template: " + value);
+        }
+        return value;
+    }
+    
+    private static boolean parseBoolean(String value, boolean defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        String v = value.toLowerCase(Locale.ROOT);
+        return v.equals("true") || v.equals("1") || v.equals("yes") || v.equals("y");
+    }
+}
\ No newline at end of file